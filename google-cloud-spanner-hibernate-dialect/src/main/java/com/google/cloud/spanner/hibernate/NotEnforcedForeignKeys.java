@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate;
+
+import jakarta.persistence.Entity;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation can be used to annotate an {@link Entity} class whose foreign keys should be
+ * created as informational foreign keys. Cloud Spanner does not enforce informational foreign
+ * keys, which removes the referential integrity checks from writes to the table, but the query
+ * optimizer can still use them. This annotation is Cloud Spanner specific and is only used when
+ * automatic schema generation is used.
+ *
+ * <p>To generate the following schema:
+ *
+ * <pre>
+ * ALTER TABLE Tracks ADD CONSTRAINT fk_track_album FOREIGN KEY (AlbumId)
+ *                    REFERENCES Albums (AlbumId) NOT ENFORCED
+ * </pre>
+ *
+ * <p>The following Java definition should be used:
+ *
+ * <pre>
+ * &#64;Entity
+ * &#64;Table(name = "Tracks")
+ * &#64;NotEnforcedForeignKeys("fk_track_album")
+ * public class Track {
+ *   &#64;ManyToOne
+ *   &#64;JoinColumn(foreignKey = &#64;ForeignKey(name = "fk_track_album"))
+ *   private Album album;
+ *   ...
+ * }
+ * </pre>
+ *
+ * <p>All foreign keys can be created as informational foreign keys by setting the {@link
+ * com.google.cloud.spanner.hibernate.schema.SpannerSchemaManagementTool#FOREIGN_KEYS_NOT_ENFORCED}
+ * property to {@code true}. Informational foreign keys cannot use {@code ON DELETE CASCADE}.
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface NotEnforcedForeignKeys {
+
+  /**
+   * The names of the foreign keys of the table that should not be enforced. All foreign keys of
+   * the table are not enforced if no names are given.
+   *
+   * @return the names of the foreign keys that should not be enforced
+   */
+  String[] value() default {};
+}
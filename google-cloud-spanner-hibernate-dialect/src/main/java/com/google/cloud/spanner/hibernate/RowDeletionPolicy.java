@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate;
+
+import jakarta.persistence.Entity;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation can be used to annotate an {@link Entity} class whose rows should automatically
+ * be deleted by Cloud Spanner when they reach a certain age. This annotation is Cloud Spanner
+ * specific and is only used when automatic schema generation is used. If you create your schema
+ * manually, you may leave this annotation out.
+ *
+ * <p>To generate the following schema:
+ *
+ * <pre>
+ * CREATE TABLE Events (EventId INT64, CreatedAt TIMESTAMP) PRIMARY KEY (EventId),
+ *              ROW DELETION POLICY (OLDER_THAN(CreatedAt, INTERVAL 30 DAY))
+ * </pre>
+ *
+ * <p>The following Java definition should be used:
+ *
+ * <pre>
+ * &#64;Entity
+ * &#64;Table(name = "Events")
+ * &#64;RowDeletionPolicy(column = "CreatedAt", olderThanDays = 30)
+ * public class Event {
+ *   &#64;Id
+ *   private Long eventId;
+ *
+ *   &#64;Column
+ *   private Instant createdAt;
+ *   ...
+ * }
+ * </pre>
+ *
+ * <p>If the table already exists and hbm2ddl is set to {@code update}, then the row deletion
+ * policy is added to the table, or replaced if the table has a different policy.
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RowDeletionPolicy {
+
+  /**
+   * The name of the TIMESTAMP column that is used to determine the age of a row.
+   *
+   * @return the name of the timestamp column
+   */
+  String column();
+
+  /**
+   * The number of days after the timestamp in {@link #column()} that a row is deleted.
+   *
+   * @return the number of days that a row is kept
+   */
+  int olderThanDays();
+}
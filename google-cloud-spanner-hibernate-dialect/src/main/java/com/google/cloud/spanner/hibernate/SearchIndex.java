@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate;
+
+import jakarta.persistence.Entity;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation can be used to annotate an {@link Entity} class that should have a Cloud Spanner
+ * full-text search index. A hidden TOKENLIST column is generated for each column in the index, and
+ * the search index is created on those TOKENLIST columns. This annotation is Cloud Spanner
+ * specific and is only used when automatic schema generation is used.
+ *
+ * <p>To generate the following schema:
+ *
+ * <pre>
+ * CREATE TABLE Products (Id INT64, Name STRING(MAX),
+ *              Name_Tokens TOKENLIST AS (TOKENIZE_FULLTEXT(Name)) HIDDEN) PRIMARY KEY (Id);
+ * CREATE SEARCH INDEX idx_products_name ON Products (Name_Tokens)
+ * </pre>
+ *
+ * <p>The following Java definition should be used:
+ *
+ * <pre>
+ * &#64;Entity
+ * &#64;Table(name = "Products")
+ * &#64;SearchIndex(name = "idx_products_name", columns = "Name")
+ * public class Product {
+ *   &#64;Id
+ *   private Long id;
+ *
+ *   &#64;Column
+ *   private String name;
+ *   ...
+ * }
+ * </pre>
+ *
+ * <p>The search index can be used in HQL queries with the {@code search} and {@code score}
+ * functions, which take the indexed attribute and a search query as arguments:
+ *
+ * <pre>
+ * select p from Product p where search(p.name, :query) order by score(p.name, :query) desc
+ * </pre>
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(SearchIndexes.class)
+public @interface SearchIndex {
+
+  /** The suffix that is added to the name of a column to get the name of its TOKENLIST column. */
+  String TOKEN_LIST_COLUMN_SUFFIX = "_Tokens";
+
+  /**
+   * The name of the search index.
+   *
+   * @return the name of the search index
+   */
+  String name();
+
+  /**
+   * The names of the STRING columns that should be tokenized and included in the search index.
+   *
+   * @return the names of the indexed columns
+   */
+  String[] columns();
+}
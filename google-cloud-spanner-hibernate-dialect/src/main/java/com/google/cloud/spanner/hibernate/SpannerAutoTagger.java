@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package com.google.cloud.spanner.hibernate;
+
+import com.google.cloud.spanner.connection.TransactionMode;
+import com.google.cloud.spanner.jdbc.CloudSpannerJdbcConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.AbstractPreDatabaseOperationEvent;
+import org.hibernate.event.spi.PreDeleteEvent;
+import org.hibernate.event.spi.PreDeleteEventListener;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreInsertEventListener;
+import org.hibernate.event.spi.PreUpdateEvent;
+import org.hibernate.event.spi.PreUpdateEventListener;
+import org.hibernate.internal.util.StringHelper;
+import org.hibernate.sql.exec.spi.ExecutionContext;
+import org.hibernate.sql.exec.spi.JdbcParameterBinder;
+import org.hibernate.sql.exec.spi.JdbcParameterBindings;
+
+/**
+ * Adds statement and transaction tags to the statements that are executed by Hibernate when
+ * {@link SpannerDialect#SPANNER_AUTO_TAGS_PROPERTY} is enabled. The tags show up in the query,
+ * read, lock and transaction statistics tables of Cloud Spanner, and make it possible to find the
+ * Hibernate operation that executed a statement.
+ *
+ * <p>Entity inserts, updates and deletes are tagged with the operation and the entity name, for
+ * example {@code insert_Singer}. The tag is set by an event listener that is invoked directly
+ * before the statement is executed or added to a JDBC batch. Queries are tagged with a hash of
+ * their SQL string, for example {@code query_1a2b3c4d}, by the last parameter binder of the query.
+ * A read/write transaction is tagged with the tag of its first statement.
+ *
+ * <p>Statement tags are only kept by the connection until the next statement has been executed.
+ * The tags are set on the connection itself, and setting them does not need a round-trip to
+ * Cloud Spanner.
+ */
+class SpannerAutoTagger
+    implements PreInsertEventListener, PreUpdateEventListener, PreDeleteEventListener {
+
+  /** Binder that sets the tag of a query after all parameters of the query have been bound. */
+  static class QueryTagBinder implements SpannerDelegatingBinder {
+
+    private final JdbcParameterBinder delegate;
+
+    private final String tag;
+
+    QueryTagBinder(JdbcParameterBinder delegate, String sql) {
+      this.delegate = delegate;
+      this.tag = createTag("query", Integer.toHexString(sql.hashCode()));
+    }
+
+    @Override
+    public JdbcParameterBinder getDelegate() {
+      return delegate;
+    }
+
+    @Override
+    public void bindParameterValue(
+        PreparedStatement statement,
+        int startPosition,
+        JdbcParameterBindings jdbcParameterBindings,
+        ExecutionContext executionContext) throws SQLException {
+      if (delegate != null) {
+        delegate.bindParameterValue(
+            statement, startPosition, jdbcParameterBindings, executionContext);
+      }
+      Connection connection = statement.getConnection();
+      if (connection.isWrapperFor(CloudSpannerJdbcConnection.class)) {
+        applyTag(connection.unwrap(CloudSpannerJdbcConnection.class), tag);
+      }
+    }
+  }
+
+  /** The maximum length of the tags that are generated. */
+  private static final int MAX_TAG_LENGTH = 50;
+
+  @Override
+  public boolean onPreInsert(PreInsertEvent event) {
+    return tagEntityOperation(event, "insert");
+  }
+
+  @Override
+  public boolean onPreUpdate(PreUpdateEvent event) {
+    return tagEntityOperation(event, "update");
+  }
+
+  @Override
+  public boolean onPreDelete(PreDeleteEvent event) {
+    return tagEntityOperation(event, "delete");
+  }
+
+  private boolean tagEntityOperation(AbstractPreDatabaseOperationEvent event, String operation) {
+    SharedSessionContractImplementor session = event.getSession();
+    String tag =
+        createTag(operation, StringHelper.unqualify(event.getPersister().getEntityName()));
+    Connection connection =
+        session.getJdbcCoordinator().getLogicalConnection().getPhysicalConnection();
+    try {
+      if (connection.isWrapperFor(CloudSpannerJdbcConnection.class)) {
+        CloudSpannerJdbcConnection spannerConnection =
+            connection.unwrap(CloudSpannerJdbcConnection.class);
+        String pendingTag = spannerConnection.getStatementTag();
+        if (pendingTag != null && !pendingTag.equals(tag)) {
+          // The JDBC batch that is waiting to be executed belongs to a different operation, and
+          // must be executed with its own tag. Hibernate would otherwise execute it as soon as the
+          // statement of this operation is added to a new batch.
+          session.getJdbcCoordinator().executeBatch();
+        }
+        applyTag(spannerConnection, tag);
+      }
+    } catch (SQLException exception) {
+      throw session.getJdbcServices().getSqlExceptionHelper()
+          .convert(exception, "Failed to set statement tag", tag);
+    }
+    // Never veto the operation.
+    return false;
+  }
+
+  /**
+   * Sets the statement tag of the connection, and also the transaction tag if the statement will
+   * start a new read/write transaction that has no tag yet.
+   */
+  static void applyTag(CloudSpannerJdbcConnection connection, String tag) throws SQLException {
+    connection.setStatementTag(tag);
+    if (!connection.getAutoCommit()
+        && !connection.isTransactionStarted()
+        && connection.getTransactionMode() == TransactionMode.READ_WRITE_TRANSACTION
+        && connection.getTransactionTag() == null) {
+      connection.setTransactionTag(tag);
+    }
+  }
+
+  /** Creates a tag that only contains characters that are allowed in Cloud Spanner tags. */
+  static String createTag(String operation, String name) {
+    String tag = operation + "_" + name.replaceAll("[^A-Za-z0-9_]", "_");
+    return tag.length() > MAX_TAG_LENGTH ? tag.substring(0, MAX_TAG_LENGTH) : tag;
+  }
+}
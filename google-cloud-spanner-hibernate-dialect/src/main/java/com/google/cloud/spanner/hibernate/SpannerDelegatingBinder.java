@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package com.google.cloud.spanner.hibernate;
+
+import org.hibernate.sql.exec.spi.JdbcParameterBinder;
+
+/**
+ * A binder that wraps the last parameter binder of a query to change the settings of the
+ * connection after all parameters have been bound. The original binders can be recovered with
+ * {@link #unwrap(JdbcParameterBinder)} to bind the parameters of the query without changing the
+ * connection.
+ */
+interface SpannerDelegatingBinder extends JdbcParameterBinder {
+
+  /** Returns the wrapped binder, or null if the query has no parameters. */
+  JdbcParameterBinder getDelegate();
+
+  /** Returns the original binder of the given binder, or null if there is none. */
+  static JdbcParameterBinder unwrap(JdbcParameterBinder binder) {
+    while (binder instanceof SpannerDelegatingBinder) {
+      binder = ((SpannerDelegatingBinder) binder).getDelegate();
+    }
+    return binder;
+  }
+}
@@ -22,43 +22,38 @@ import static org.hibernate.type.SqlTypes.DECIMAL;
 import static org.hibernate.type.SqlTypes.NUMERIC;
 
 import com.google.cloud.spanner.hibernate.schema.SpannerForeignKeyExporter;
-import org.hibernate.HibernateException;
+import com.google.cloud.spanner.hibernate.schema.SpannerIndexExporter;
+import com.google.cloud.spanner.hibernate.schema.SpannerTableMigrator;
+import org.hibernate.boot.model.FunctionContributions;
 import org.hibernate.boot.model.relational.Sequence;
 import org.hibernate.dialect.unique.UniqueDelegate;
+import org.hibernate.engine.config.spi.ConfigurationService;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.internal.util.config.ConfigurationHelper;
 import org.hibernate.mapping.Constraint;
 import org.hibernate.mapping.ForeignKey;
+import org.hibernate.mapping.Index;
 import org.hibernate.mapping.Table;
 import org.hibernate.metamodel.mapping.EntityMappingType;
 import org.hibernate.metamodel.spi.RuntimeModelCreationContext;
-import org.hibernate.query.spi.DomainQueryExecutionContext;
-import org.hibernate.query.sqm.internal.DomainParameterXref;
+import org.hibernate.persister.entity.mutation.EntityMutationTarget;
 import org.hibernate.query.sqm.mutation.spi.SqmMultiTableInsertStrategy;
-import org.hibernate.query.sqm.tree.insert.SqmInsertStatement;
+import org.hibernate.query.sqm.mutation.spi.SqmMultiTableMutationStrategy;
 import org.hibernate.sql.ast.SqlAstTranslator;
 import org.hibernate.sql.ast.SqlAstTranslatorFactory;
 import org.hibernate.sql.ast.spi.StandardSqlAstTranslatorFactory;
 import org.hibernate.sql.ast.tree.Statement;
 import org.hibernate.sql.exec.spi.JdbcOperation;
+import org.hibernate.sql.model.MutationOperation;
+import org.hibernate.sql.model.internal.OptionalTableUpdate;
 import org.hibernate.tool.schema.internal.StandardSequenceExporter;
 import org.hibernate.tool.schema.internal.StandardUniqueKeyExporter;
 import org.hibernate.tool.schema.spi.Exporter;
+import org.hibernate.type.BasicTypeRegistry;
+import org.hibernate.type.StandardBasicTypes;
 
 /** Hibernate 6.x dialect for Cloud Spanner. */
 public class SpannerDialect extends org.hibernate.dialect.SpannerDialect {
-  private static class NoOpSqmMultiTableInsertStrategy implements SqmMultiTableInsertStrategy {
-    private static final NoOpSqmMultiTableInsertStrategy INSTANCE =
-        new NoOpSqmMultiTableInsertStrategy();
-
-    @Override
-    public int executeInsert(
-        SqmInsertStatement<?> sqmInsertStatement,
-        DomainParameterXref domainParameterXref,
-        DomainQueryExecutionContext context) {
-      throw new HibernateException("Multi-table inserts are not supported for Cloud Spanner");
-    }
-  }
-  
   /**
    * Property name that can be used to disable sequence support in the Cloud Spanner dialect. You
    * can use this temporarily if you have an existing database that already uses table-backed
@@ -68,6 +63,42 @@ public class SpannerDialect extends org.hibernate.dialect.SpannerDialect {
    */
   public static String SPANNER_DISABLE_SEQUENCES_PROPERTY = "hibernate.spanner.disable_sequences";
 
+  /**
+   * Property name that can be used to render IN lists of parameters as {@code in unnest(@p1)}
+   * with a single ARRAY parameter. This gives the same SQL string for any number of values, which
+   * again allows Cloud Spanner to reuse the query plan. This is disabled by default.
+   */
+  public static final String SPANNER_IN_LIST_AS_ARRAY_PROPERTY =
+      "hibernate.spanner.in_list_as_array";
+
+  /**
+   * Property name that can be used to disable the version check of upserts of versioned entities.
+   * Upserts, like {@link org.hibernate.StatelessSession#upsert(Object)}, are executed as one
+   * {@code insert or update} statement. This statement cannot check the version of an existing
+   * row, and upserts of versioned entities are therefore by default executed as an update that
+   * checks the version, followed by an insert if the row does not exist. Set this property to
+   * false to execute these upserts as blind writes with {@code insert or update}.
+   */
+  public static final String SPANNER_UPSERT_VERSION_CHECK_PROPERTY =
+      "hibernate.spanner.upsert_version_check";
+
+  /**
+   * Property name that can be used to automatically add statement and transaction tags to the
+   * statements that are executed by Hibernate. Entity inserts, updates and deletes are tagged with
+   * the operation and the entity name, and queries with a hash of their SQL string. A read/write
+   * transaction is tagged with the tag of its first statement. This is disabled by default.
+   */
+  public static final String SPANNER_AUTO_TAGS_PROPERTY = "hibernate.spanner.auto_tags";
+
+  /**
+   * Property name that can be used to set the RPC priority ({@code HIGH}, {@code MEDIUM} or {@code
+   * LOW}) of all requests of a session factory. The priority is added to the properties of the JDBC
+   * connections that Hibernate creates. Add {@code rpcPriority} to the JDBC URL of an externally
+   * configured data source instead. See {@link SpannerRpcPriority} for session, transaction and
+   * query priorities.
+   */
+  public static final String SPANNER_RPC_PRIORITY_PROPERTY = "hibernate.spanner.rpc_priority";
+
   /**
    * Disables support for sequences for the {@link SpannerDialect}.
    */
@@ -88,6 +119,10 @@ public class SpannerDialect extends org.hibernate.dialect.SpannerDialect {
   private final SpannerForeignKeyExporter spannerForeignKeyExporter =
       new SpannerForeignKeyExporter(this);
 
+  private final SpannerIndexExporter spannerIndexExporter = new SpannerIndexExporter(this);
+
+  private final SpannerTableMigrator spannerTableMigrator = new SpannerTableMigrator(this);
+
   private final StandardUniqueKeyExporter spannerUniqueKeyExporter =
       new StandardUniqueKeyExporter(this);
   private final SpannerSequenceSupport sequenceSupport = new SpannerSequenceSupport();
@@ -98,14 +133,44 @@ public class SpannerDialect extends org.hibernate.dialect.SpannerDialect {
   @Override
   public SqlAstTranslatorFactory getSqlAstTranslatorFactory() {
     return new StandardSqlAstTranslatorFactory() {
+      private volatile SpannerSqlAstTranslator.Settings settings;
+
       @Override
       protected <T extends JdbcOperation> SqlAstTranslator<T> buildTranslator(
           SessionFactoryImplementor sessionFactory, Statement statement) {
-        return new SpannerSqlAstTranslator<>(sessionFactory, statement);
+        // Read the settings once per session factory instead of for every statement.
+        SpannerSqlAstTranslator.Settings current = settings;
+        if (current == null || !current.isFor(sessionFactory)) {
+          current = new SpannerSqlAstTranslator.Settings(sessionFactory);
+          settings = current;
+        }
+        return new SpannerSqlAstTranslator<>(sessionFactory, statement, current);
       }
     };
   }
 
+  @Override
+  public void initializeFunctionRegistry(FunctionContributions functionContributions) {
+    super.initializeFunctionRegistry(functionContributions);
+
+    // Full-text search functions. These take the indexed attribute as the first argument, and
+    // are rendered with the corresponding hidden TOKENLIST column of a @SearchIndex.
+    BasicTypeRegistry basicTypeRegistry =
+        functionContributions.getTypeConfiguration().getBasicTypeRegistry();
+    functionContributions
+        .getFunctionRegistry()
+        .register(
+            "search",
+            new SpannerSearchFunction(
+                "search", basicTypeRegistry.resolve(StandardBasicTypes.BOOLEAN)));
+    functionContributions
+        .getFunctionRegistry()
+        .register(
+            "score",
+            new SpannerSearchFunction(
+                "score", basicTypeRegistry.resolve(StandardBasicTypes.DOUBLE)));
+  }
+
   // TODO: Remove when the override in the super class has been fixed.
   @Override
   protected String columnType(int sqlTypeCode) {
@@ -120,11 +185,21 @@ public class SpannerDialect extends org.hibernate.dialect.SpannerDialect {
     return this.spannerTableExporter;
   }
 
+  @Override
+  public SpannerTableMigrator getTableMigrator() {
+    return this.spannerTableMigrator;
+  }
+
   @Override
   public Exporter<ForeignKey> getForeignKeyExporter() {
     return this.spannerForeignKeyExporter;
   }
 
+  @Override
+  public Exporter<Index> getIndexExporter() {
+    return this.spannerIndexExporter;
+  }
+
   @Override
   public Exporter<Sequence> getSequenceExporter() {
     return this.sequenceExporter;
@@ -205,6 +280,13 @@ public class SpannerDialect extends org.hibernate.dialect.SpannerDialect {
     return " add constraint " + quote(constraintName) + " " + foreignKeyDefinition;
   }
 
+  @Override
+  public String generatedAs(String generatedAs) {
+    // Cloud Spanner only supports stored generated columns, and does not use the 'generated always'
+    // keywords.
+    return " as (" + generatedAs + ") stored";
+  }
+
   @Override
   public boolean supportsCascadeDelete() {
     return true;
@@ -215,9 +297,35 @@ public class SpannerDialect extends org.hibernate.dialect.SpannerDialect {
     return spannerUniqueDelegate;
   }
 
+  @Override
+  public MutationOperation createOptionalTableUpdateOperation(
+      EntityMutationTarget mutationTarget,
+      OptionalTableUpdate optionalTableUpdate,
+      SessionFactoryImplementor factory) {
+    // An optional table row must be deleted if all its values are null, and a version check must
+    // compare the version of the existing row. Both need the default update-then-insert operation.
+    if (optionalTableUpdate.getMutatingTable().isOptional()
+        || !optionalTableUpdate.getOptimisticLockBindings().isEmpty()
+            && ConfigurationHelper.getBoolean(
+                SPANNER_UPSERT_VERSION_CHECK_PROPERTY,
+                factory.getServiceRegistry().getService(ConfigurationService.class).getSettings(),
+                true)) {
+      return super.createOptionalTableUpdateOperation(
+          mutationTarget, optionalTableUpdate, factory);
+    }
+    return new SpannerSqlAstTranslator<>(factory, optionalTableUpdate)
+        .createInsertOrUpdateOperation(optionalTableUpdate);
+  }
+
+  @Override
+  public SqmMultiTableMutationStrategy getFallbackSqmMutationStrategy(
+      EntityMappingType entityDescriptor, RuntimeModelCreationContext runtimeModelCreationContext) {
+    return new SpannerMultiTableMutationStrategy();
+  }
+
   @Override
   public SqmMultiTableInsertStrategy getFallbackSqmInsertStrategy(
       EntityMappingType entityDescriptor, RuntimeModelCreationContext runtimeModelCreationContext) {
-    return NoOpSqmMultiTableInsertStrategy.INSTANCE;
+    return new SpannerMultiTableInsertStrategy();
   }
 }
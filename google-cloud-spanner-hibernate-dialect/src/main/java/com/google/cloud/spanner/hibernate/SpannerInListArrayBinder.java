@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package com.google.cloud.spanner.hibernate;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.metamodel.mapping.JdbcMapping;
+import org.hibernate.query.sqm.sql.internal.SqmParameterInterpretation;
+import org.hibernate.sql.ast.tree.expression.Expression;
+import org.hibernate.sql.ast.tree.expression.JdbcParameter;
+import org.hibernate.sql.exec.spi.ExecutionContext;
+import org.hibernate.sql.exec.spi.JdbcParameterBinder;
+import org.hibernate.sql.exec.spi.JdbcParameterBinding;
+import org.hibernate.sql.exec.spi.JdbcParameterBindings;
+import org.hibernate.type.SqlTypes;
+import org.hibernate.type.descriptor.java.JavaType;
+
+/**
+ * Binds the values of all parameters of an IN list as one ARRAY parameter. This allows the IN list
+ * to be rendered as {@code in unnest(@p1)}, which gives the same SQL string for any number of
+ * values. Cloud Spanner can then use the same cached query plan for all these queries.
+ */
+class SpannerInListArrayBinder implements JdbcParameterBinder {
+
+  private final List<JdbcParameter> parameters;
+
+  private final List<?> values;
+
+  private final JdbcMapping jdbcMapping;
+
+  private final String typeName;
+
+  private final Class<?> elementClass;
+
+  private SpannerInListArrayBinder(
+      List<JdbcParameter> parameters,
+      List<?> values,
+      JdbcMapping jdbcMapping,
+      String typeName,
+      Class<?> elementClass) {
+    this.parameters = parameters;
+    this.values = values;
+    this.jdbcMapping = jdbcMapping;
+    this.typeName = typeName;
+    this.elementClass = elementClass;
+  }
+
+  /**
+   * Creates a binder for the given IN list, or returns null if the list cannot be bound as an
+   * array. This is the case if the list contains anything else than parameters, or if the
+   * parameters do not all have the same type, or if the type is not supported.
+   */
+  static SpannerInListArrayBinder create(List<Expression> listExpressions) {
+    if (listExpressions.isEmpty()) {
+      return null;
+    }
+    List<JdbcParameter> parameters = new ArrayList<>(listExpressions.size());
+    JdbcMapping jdbcMapping = null;
+    for (Expression listExpression : listExpressions) {
+      Expression expression = listExpression instanceof SqmParameterInterpretation
+          ? ((SqmParameterInterpretation) listExpression).getResolvedExpression()
+          : listExpression;
+      if (!(expression instanceof JdbcParameter)
+          || expression.getExpressionType() == null
+          || expression.getExpressionType().getJdbcTypeCount() != 1) {
+        return null;
+      }
+      JdbcMapping parameterMapping = expression.getExpressionType().getSingleJdbcMapping();
+      if (jdbcMapping == null) {
+        jdbcMapping = parameterMapping;
+      } else if (!jdbcMapping.equals(parameterMapping)) {
+        return null;
+      }
+      parameters.add((JdbcParameter) expression);
+    }
+    return create(parameters, null, jdbcMapping);
+  }
+
+  /**
+   * Creates a binder that binds the given fixed values as one array, or returns null if the type
+   * is not supported. This is used for values that are known when the statement is created, like
+   * the ids that match a bulk delete on an entity that spans multiple tables.
+   */
+  static SpannerInListArrayBinder create(JdbcMapping jdbcMapping, List<?> values) {
+    return create(null, values, jdbcMapping);
+  }
+
+  private static SpannerInListArrayBinder create(
+      List<JdbcParameter> parameters, List<?> values, JdbcMapping jdbcMapping) {
+    switch (jdbcMapping.getJdbcType().getDefaultSqlTypeCode()) {
+      case SqlTypes.BIGINT:
+      case SqlTypes.INTEGER:
+      case SqlTypes.SMALLINT:
+      case SqlTypes.TINYINT:
+        return new SpannerInListArrayBinder(
+            parameters, values, jdbcMapping, "INT64", Long.class);
+      case SqlTypes.CHAR:
+      case SqlTypes.VARCHAR:
+      case SqlTypes.LONGVARCHAR:
+      case SqlTypes.NCHAR:
+      case SqlTypes.NVARCHAR:
+      case SqlTypes.LONGNVARCHAR:
+        return new SpannerInListArrayBinder(
+            parameters, values, jdbcMapping, "STRING", String.class);
+      case SqlTypes.BOOLEAN:
+      case SqlTypes.BIT:
+        return new SpannerInListArrayBinder(
+            parameters, values, jdbcMapping, "BOOL", Boolean.class);
+      case SqlTypes.DOUBLE:
+      case SqlTypes.FLOAT:
+      case SqlTypes.REAL:
+        return new SpannerInListArrayBinder(
+            parameters, values, jdbcMapping, "FLOAT64", Double.class);
+      case SqlTypes.NUMERIC:
+      case SqlTypes.DECIMAL:
+        return new SpannerInListArrayBinder(
+            parameters, values, jdbcMapping, "NUMERIC", BigDecimal.class);
+      default:
+        return null;
+    }
+  }
+
+  /** Returns the first parameter of the IN list, which is used to render the parameter marker. */
+  JdbcParameter getFirstParameter() {
+    return parameters.get(0);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void bindParameterValue(
+      PreparedStatement statement,
+      int startPosition,
+      JdbcParameterBindings jdbcParameterBindings,
+      ExecutionContext executionContext) throws SQLException {
+    JavaType<Object> javaType = (JavaType<Object>) jdbcMapping.getJdbcJavaType();
+    int size = parameters == null ? values.size() : parameters.size();
+    Object[] array = (Object[]) Array.newInstance(elementClass, size);
+    for (int i = 0; i < size; i++) {
+      Object value;
+      if (parameters == null) {
+        value = values.get(i);
+      } else {
+        JdbcParameterBinding binding = jdbcParameterBindings.getBinding(parameters.get(i));
+        value = binding == null ? null : binding.getBindValue();
+      }
+      array[i] = value == null
+          ? null
+          : javaType.unwrap(
+              jdbcMapping.convertToRelationalValue(value),
+              elementClass,
+              executionContext.getSession());
+    }
+    statement.setArray(startPosition, statement.getConnection().createArrayOf(typeName, array));
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate;
+
+import jakarta.persistence.Entity;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation can be used to add Cloud Spanner specific options to an index that is defined
+ * for an {@link Entity} class with {@code @Table(indexes = ...)} or {@code
+ * @Table(uniqueConstraints = ...)}. The annotation refers to the index by name. This annotation is
+ * Cloud Spanner specific and is only used when automatic schema generation is used.
+ *
+ * <p>To generate the following schema:
+ *
+ * <pre>
+ * CREATE NULL_FILTERED INDEX idx_tracks_title ON Tracks (AlbumId, Title) STORING (Duration),
+ *              INTERLEAVE IN Albums
+ * </pre>
+ *
+ * <p>The following Java definition should be used:
+ *
+ * <pre>
+ * &#64;Entity
+ * &#64;Table(name = "Tracks",
+ *     indexes = &#64;Index(name = "idx_tracks_title", columnList = "AlbumId, Title"))
+ * &#64;Interleaved(parentEntity = Album.class)
+ * &#64;SpannerIndex(
+ *     name = "idx_tracks_title",
+ *     storing = "Duration",
+ *     nullFiltered = true,
+ *     interleaveIn = Album.class)
+ * public class Track {
+ *   ...
+ * }
+ * </pre>
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(SpannerIndexes.class)
+public @interface SpannerIndex {
+
+  /**
+   * The name of the index that these options apply to. This must be the name of an index or unique
+   * constraint of the table of the entity.
+   *
+   * @return the name of the index
+   */
+  String name();
+
+  /**
+   * The names of the columns that should be stored in the index. Queries that only need the
+   * indexed and stored columns can be served by the index without a join back to the base table.
+   *
+   * @return the names of the columns that are added to the STORING clause of the index
+   */
+  String[] storing() default {};
+
+  /**
+   * Indicates whether rows that contain a null value in any of the indexed columns should be left
+   * out of the index. (default = false)
+   *
+   * @return <code>true</code> if NULL_FILTERED should be added to the CREATE INDEX string.
+   */
+  boolean nullFiltered() default false;
+
+  /**
+   * The entity class of the parent table that the index should be interleaved in. The index is not
+   * interleaved if this is not set.
+   *
+   * @return the entity class of the table that the index is interleaved in
+   */
+  Class<?> interleaveIn() default void.class;
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package com.google.cloud.spanner.hibernate;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * An implementation of a Hibernate {@link Integrator} that runs the {@link SpannerQueryWarmup}
+ * when a session factory for the Spanner Hibernate dialect has been created. It also registers the
+ * {@link SpannerAutoTagger} if {@link SpannerDialect#SPANNER_AUTO_TAGS_PROPERTY} is enabled.
+ */
+public class SpannerIntegrator implements Integrator {
+
+  @Override
+  public void integrate(
+      Metadata metadata,
+      BootstrapContext bootstrapContext,
+      SessionFactoryImplementor sessionFactory) {
+    if (sessionFactory.getJdbcServices().getDialect() instanceof SpannerDialect) {
+      sessionFactory.addObserver(
+          new SessionFactoryObserver() {
+            @Override
+            public void sessionFactoryCreated(SessionFactory factory) {
+              SpannerQueryWarmup.warmupNamedQueriesIfEnabled(
+                  factory.unwrap(SessionFactoryImplementor.class));
+            }
+          });
+      if (ConfigurationHelper.getBoolean(
+          SpannerDialect.SPANNER_AUTO_TAGS_PROPERTY,
+          sessionFactory.getServiceRegistry().getService(ConfigurationService.class).getSettings(),
+          false)) {
+        SpannerAutoTagger tagger = new SpannerAutoTagger();
+        EventListenerRegistry registry =
+            sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.PRE_INSERT, tagger);
+        registry.appendListeners(EventType.PRE_UPDATE, tagger);
+        registry.appendListeners(EventType.PRE_DELETE, tagger);
+      }
+    }
+  }
+
+  @Override
+  public void disintegrate(
+      SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+  }
+}
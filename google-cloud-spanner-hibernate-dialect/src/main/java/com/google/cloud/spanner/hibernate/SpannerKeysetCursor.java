@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The position of the last entity of a page that is returned by {@link
+ * SpannerQueries#keysetPage(org.hibernate.Session, Class, List, boolean, SpannerKeysetCursor,
+ * int)}. The next page starts directly after this position. The cursor contains the values of the
+ * sort attributes and the id of the last entity.
+ */
+public final class SpannerKeysetCursor implements Serializable {
+
+  private static final long serialVersionUID = 2L;
+
+  private final List<Serializable> sortValues;
+
+  private final Serializable id;
+
+  /**
+   * Creates a cursor for the given sort value and id. Use this to re-create a cursor from values
+   * that have been sent to a client.
+   *
+   * @param sortValue the value of the sort attribute of the last entity of the previous page, or
+   *     null if the page is only sorted by id
+   * @param id the id of the last entity of the previous page
+   */
+  public static SpannerKeysetCursor of(Serializable sortValue, Serializable id) {
+    return ofSortValues(
+        sortValue == null ? Collections.emptyList() : Collections.singletonList(sortValue), id);
+  }
+
+  /**
+   * Creates a cursor for the given sort values and id. Use this to re-create a cursor from values
+   * that have been sent to a client.
+   *
+   * @param sortValues the values of the sort attributes of the last entity of the previous page,
+   *     in the order of the sort attributes. The list is empty if the page is only sorted by id.
+   * @param id the id of the last entity of the previous page
+   */
+  public static SpannerKeysetCursor ofSortValues(
+      List<? extends Serializable> sortValues, Serializable id) {
+    return new SpannerKeysetCursor(
+        Collections.unmodifiableList(new ArrayList<>(sortValues)), Objects.requireNonNull(id));
+  }
+
+  private SpannerKeysetCursor(List<Serializable> sortValues, Serializable id) {
+    this.sortValues = sortValues;
+    this.id = id;
+  }
+
+  /**
+   * Returns the value of the first sort attribute, or null if the page is only sorted by id.
+   */
+  public Serializable getSortValue() {
+    return sortValues.isEmpty() ? null : sortValues.get(0);
+  }
+
+  /** Returns the values of the sort attributes in the order of the sort attributes. */
+  public List<Serializable> getSortValues() {
+    return sortValues;
+  }
+
+  public Serializable getId() {
+    return id;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof SpannerKeysetCursor)) {
+      return false;
+    }
+    SpannerKeysetCursor other = (SpannerKeysetCursor) o;
+    return sortValues.equals(other.sortValues) && Objects.equals(id, other.id);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(sortValues, id);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder("(");
+    for (Serializable sortValue : sortValues) {
+      result.append(sortValue).append(", ");
+    }
+    return result.append(id).append(")").toString();
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of entities that is returned by {@link SpannerQueries#keysetPage(org.hibernate.Session,
+ * Class, List, boolean, SpannerKeysetCursor, int)}.
+ */
+public final class SpannerKeysetPage<T> {
+
+  private final List<T> content;
+
+  private final SpannerKeysetCursor nextCursor;
+
+  SpannerKeysetPage(List<T> content, SpannerKeysetCursor nextCursor) {
+    this.content = Collections.unmodifiableList(content);
+    this.nextCursor = nextCursor;
+  }
+
+  /** Returns the entities of this page. */
+  public List<T> getContent() {
+    return content;
+  }
+
+  /** Returns true if there is at least one more page after this page. */
+  public boolean hasNext() {
+    return nextCursor != null;
+  }
+
+  /**
+   * Returns the cursor that should be used to fetch the next page, or null if this is the last
+   * page.
+   */
+  public SpannerKeysetCursor getNextCursor() {
+    return nextCursor;
+  }
+}
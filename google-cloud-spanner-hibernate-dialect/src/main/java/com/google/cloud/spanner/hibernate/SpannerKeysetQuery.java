@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.metamodel.mapping.BasicEntityIdentifierMapping;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.SelectionQuery;
+
+/**
+ * Query that reads the entities of a given type in the order of optional sort attributes and the
+ * id of the entity, starting after a {@link SpannerKeysetCursor}. Cloud Spanner does not support
+ * comparing tuples, so the keyset predicate {@code (a, b, id) > (:a, :b, :id)} is written out as
+ * {@code a > :a or (a = :a and (b > :b or (b = :b and id > :id)))}. This allows Cloud Spanner to
+ * seek directly to the start of the page, instead of reading and skipping all rows before the page
+ * like {@code OFFSET} does. The sort attributes must not contain null values.
+ */
+class SpannerKeysetQuery<T> {
+
+  private final Session session;
+
+  private final Class<T> entityClass;
+
+  private final EntityPersister persister;
+
+  private final List<String> sortAttributes;
+
+  private final String firstQuery;
+
+  private final String nextQuery;
+
+  SpannerKeysetQuery(
+      Session session,
+      Class<T> entityClass,
+      String restriction,
+      List<String> sortAttributes,
+      boolean descending) {
+    this.session = session;
+    this.entityClass = entityClass;
+    this.persister =
+        session.unwrap(SharedSessionContractImplementor.class)
+            .getFactory()
+            .getMappingMetamodel()
+            .getEntityDescriptor(entityClass);
+    if (!(persister.getIdentifierMapping() instanceof BasicEntityIdentifierMapping)) {
+      throw new HibernateException(
+          "Keyset queries are only supported for entities with a single id attribute: "
+              + persister.getEntityName());
+    }
+    this.sortAttributes =
+        sortAttributes == null ? Collections.emptyList() : new ArrayList<>(sortAttributes);
+    for (String sortAttribute : this.sortAttributes) {
+      if (sortAttribute == null || sortAttribute.isEmpty()) {
+        throw new IllegalArgumentException("Sort attributes must not be empty");
+      }
+    }
+
+    String id =
+        "e." + ((BasicEntityIdentifierMapping) persister.getIdentifierMapping()).getAttributeName();
+    String direction = descending ? " desc" : "";
+    String comparison = descending ? " < " : " > ";
+    final String select = "select e from " + persister.getEntityName() + " e";
+    final String where =
+        restriction == null || restriction.isEmpty() ? "" : "(" + restriction + ")";
+    StringBuilder orderBy = new StringBuilder(" order by ");
+    for (String sortAttribute : this.sortAttributes) {
+      orderBy.append("e.").append(sortAttribute).append(direction).append(", ");
+    }
+    orderBy.append(id).append(direction);
+    // Build the keyset predicate from the last key to the first.
+    String keyset = id + comparison + ":lastId";
+    for (int i = this.sortAttributes.size() - 1; i >= 0; i--) {
+      String sort = "e." + this.sortAttributes.get(i);
+      String value = ":lastValue" + i;
+      keyset =
+          "(" + sort + comparison + value + " or (" + sort + " = " + value + " and " + keyset
+              + "))";
+    }
+    this.firstQuery = select + (where.isEmpty() ? "" : " where " + where) + orderBy;
+    this.nextQuery =
+        select + " where " + (where.isEmpty() ? "" : where + " and ") + keyset + orderBy;
+  }
+
+  /**
+   * Reads at most {@code maxResults} entities that follow the given cursor, or the first entities
+   * if the cursor is null.
+   */
+  List<T> fetch(SpannerKeysetCursor after, int maxResults, boolean readOnly) {
+    SelectionQuery<T> query;
+    if (after == null) {
+      query = session.createSelectionQuery(firstQuery, entityClass);
+    } else {
+      if (after.getSortValues().size() != sortAttributes.size()) {
+        throw new IllegalArgumentException(
+            "The cursor contains "
+                + after.getSortValues().size()
+                + " sort value(s), but the query is sorted on "
+                + sortAttributes.size()
+                + " attribute(s)");
+      }
+      query = session.createSelectionQuery(nextQuery, entityClass)
+          .setParameter("lastId", after.getId());
+      for (int i = 0; i < sortAttributes.size(); i++) {
+        query.setParameter("lastValue" + i, after.getSortValues().get(i));
+      }
+    }
+    return query.setMaxResults(maxResults).setReadOnly(readOnly).getResultList();
+  }
+
+  /** Returns the cursor that points to the given entity. */
+  SpannerKeysetCursor cursorOf(T entity) {
+    SharedSessionContractImplementor sessionImplementor =
+        session.unwrap(SharedSessionContractImplementor.class);
+    Serializable id = (Serializable) persister.getIdentifier(entity, sessionImplementor);
+    List<Serializable> sortValues = new ArrayList<>(sortAttributes.size());
+    for (String sortAttribute : sortAttributes) {
+      sortValues.add((Serializable) persister.getPropertyValue(entity, sortAttribute));
+    }
+    return SpannerKeysetCursor.ofSortValues(sortValues, id);
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package com.google.cloud.spanner.hibernate;
+
+import com.google.cloud.spanner.hibernate.SpannerMultiTableMutationStrategy.DmlBatch;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.internal.util.MutableInteger;
+import org.hibernate.metamodel.mapping.EntityMappingType;
+import org.hibernate.metamodel.mapping.ModelPart;
+import org.hibernate.metamodel.mapping.SelectableConsumer;
+import org.hibernate.query.spi.DomainQueryExecutionContext;
+import org.hibernate.query.sqm.internal.DomainParameterXref;
+import org.hibernate.query.sqm.internal.SqmJdbcExecutionContextAdapter;
+import org.hibernate.query.sqm.mutation.internal.DeleteHandler;
+import org.hibernate.query.sqm.mutation.internal.MatchingIdSelectionHelper;
+import org.hibernate.query.sqm.mutation.internal.SqmMutationStrategyHelper;
+import org.hibernate.query.sqm.mutation.internal.inline.MatchingIdRestrictionProducer;
+import org.hibernate.query.sqm.tree.delete.SqmDeleteStatement;
+import org.hibernate.sql.ast.tree.delete.DeleteStatement;
+import org.hibernate.sql.ast.tree.from.NamedTableReference;
+import org.hibernate.sql.ast.tree.predicate.Predicate;
+import org.hibernate.sql.exec.internal.JdbcParameterBindingsImpl;
+import org.hibernate.sql.exec.spi.JdbcOperationQueryDelete;
+import org.hibernate.sql.exec.spi.JdbcParameterBindings;
+
+/**
+ * Bulk delete handler for entities that span multiple tables. This handler first selects the ids
+ * of the rows that match the statement, and then executes one delete statement per table. The
+ * deletes are executed in one DML batch that is started after the ids have been selected.
+ */
+class SpannerMultiTableDeleteHandler implements DeleteHandler {
+
+  private final MatchingIdRestrictionProducer matchingIdsPredicateProducer;
+
+  private final SqmDeleteStatement<?> sqmDelete;
+
+  private final DomainParameterXref domainParameterXref;
+
+  SpannerMultiTableDeleteHandler(
+      MatchingIdRestrictionProducer matchingIdsPredicateProducer,
+      SqmDeleteStatement<?> sqmDelete,
+      DomainParameterXref domainParameterXref) {
+    this.matchingIdsPredicateProducer = matchingIdsPredicateProducer;
+    this.sqmDelete = sqmDelete;
+    this.domainParameterXref = domainParameterXref;
+  }
+
+  @Override
+  public int execute(DomainQueryExecutionContext executionContext) {
+    List<Object> idsAndFks =
+        MatchingIdSelectionHelper.selectMatchingIds(
+            sqmDelete, domainParameterXref, executionContext);
+    if (idsAndFks == null || idsAndFks.isEmpty()) {
+      return 0;
+    }
+
+    SharedSessionContractImplementor session = executionContext.getSession();
+    EntityMappingType entityDescriptor =
+        session.getFactory().getRuntimeMetamodels().getEntityMappingType(
+            sqmDelete.getTarget().getModel().getHibernateEntityName());
+    JdbcParameterBindings jdbcParameterBindings =
+        new JdbcParameterBindingsImpl(domainParameterXref.getQueryParameterCount());
+
+    // All ids have been selected, so the following statements only modify data.
+    DmlBatch batch = DmlBatch.start(session);
+    try {
+      deleteFromCollectionTables(
+          entityDescriptor, idsAndFks, jdbcParameterBindings, executionContext);
+      entityDescriptor.visitConstraintOrderedTables(
+          (tableExpression, tableKeyColumnsVisitationSupplier) ->
+              executeDelete(
+                  tableExpression,
+                  entityDescriptor,
+                  tableKeyColumnsVisitationSupplier,
+                  idsAndFks,
+                  0,
+                  null,
+                  jdbcParameterBindings,
+                  executionContext));
+    } catch (RuntimeException exception) {
+      batch.abort(exception);
+      throw exception;
+    }
+    batch.run();
+    return idsAndFks.size();
+  }
+
+  /**
+   * Deletes the rows of element collections, many-to-many associations and one-to-many join
+   * tables that belong to the matching entities.
+   */
+  private void deleteFromCollectionTables(
+      EntityMappingType entityDescriptor,
+      List<Object> idsAndFks,
+      JdbcParameterBindings jdbcParameterBindings,
+      DomainQueryExecutionContext executionContext) {
+    MutableInteger valueIndexCounter = new MutableInteger();
+    SqmMutationStrategyHelper.visitCollectionTables(
+        entityDescriptor,
+        pluralAttribute -> {
+          if (pluralAttribute.getSeparateCollectionTable() == null) {
+            return;
+          }
+          ModelPart fkTargetPart = pluralAttribute.getKeyDescriptor().getTargetPart();
+          int valueIndex;
+          if (fkTargetPart.isEntityIdentifierMapping()) {
+            valueIndex = 0;
+          } else {
+            if (valueIndexCounter.get() == 0) {
+              valueIndexCounter.set(entityDescriptor.getIdentifierMapping().getJdbcTypeCount());
+            }
+            valueIndex = valueIndexCounter.get();
+            valueIndexCounter.plus(fkTargetPart.getJdbcTypeCount());
+          }
+          executeDelete(
+              pluralAttribute.getSeparateCollectionTable(),
+              entityDescriptor,
+              () -> fkTargetPart::forEachSelectable,
+              idsAndFks,
+              valueIndex,
+              fkTargetPart,
+              jdbcParameterBindings,
+              executionContext);
+        });
+  }
+
+  private void executeDelete(
+      String targetTableExpression,
+      EntityMappingType entityDescriptor,
+      Supplier<Consumer<SelectableConsumer>> tableKeyColumnsVisitationSupplier,
+      List<Object> ids,
+      int valueIndex,
+      ModelPart valueModelPart,
+      JdbcParameterBindings jdbcParameterBindings,
+      DomainQueryExecutionContext executionContext) {
+    SessionFactoryImplementor factory = executionContext.getSession().getFactory();
+    NamedTableReference targetTableReference =
+        new NamedTableReference(targetTableExpression, DeleteStatement.DEFAULT_ALIAS);
+    SqmJdbcExecutionContextAdapter executionContextAdapter =
+        SqmJdbcExecutionContextAdapter.omittingLockingAndPaging(executionContext);
+    Predicate matchingIdsPredicate =
+        matchingIdsPredicateProducer.produceRestriction(
+            ids,
+            entityDescriptor,
+            valueIndex,
+            valueModelPart,
+            targetTableReference,
+            tableKeyColumnsVisitationSupplier,
+            executionContextAdapter);
+    JdbcOperationQueryDelete jdbcOperation =
+        factory.getJdbcServices().getJdbcEnvironment().getSqlAstTranslatorFactory()
+            .buildDeleteTranslator(
+                factory, new DeleteStatement(targetTableReference, matchingIdsPredicate))
+            .translate(jdbcParameterBindings, executionContext.getQueryOptions());
+    factory.getJdbcServices().getJdbcMutationExecutor().execute(
+        jdbcOperation,
+        jdbcParameterBindings,
+        sql -> executionContext.getSession().getJdbcCoordinator().getStatementPreparer()
+            .prepareStatement(sql),
+        (integer, preparedStatement) -> {},
+        executionContextAdapter);
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package com.google.cloud.spanner.hibernate;
+
+import static org.hibernate.generator.EventType.INSERT;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.HibernateException;
+import org.hibernate.engine.internal.Versioning;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.Generator;
+import org.hibernate.metamodel.mapping.AttributeMapping;
+import org.hibernate.metamodel.mapping.ModelPart;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.BindableType;
+import org.hibernate.query.QueryParameter;
+import org.hibernate.query.spi.DomainQueryExecutionContext;
+import org.hibernate.query.spi.QueryImplementor;
+import org.hibernate.query.spi.QueryParameterBinding;
+import org.hibernate.query.spi.QueryParameterBindings;
+import org.hibernate.query.spi.QueryParameterImplementor;
+import org.hibernate.query.sqm.SqmQuerySource;
+import org.hibernate.query.sqm.internal.DomainParameterXref;
+import org.hibernate.query.sqm.mutation.spi.SqmMultiTableInsertStrategy;
+import org.hibernate.query.sqm.tree.SqmCopyContext;
+import org.hibernate.query.sqm.tree.domain.SqmPath;
+import org.hibernate.query.sqm.tree.expression.SqmExpression;
+import org.hibernate.query.sqm.tree.expression.SqmLiteral;
+import org.hibernate.query.sqm.tree.expression.SqmParameter;
+import org.hibernate.query.sqm.tree.insert.SqmInsertSelectStatement;
+import org.hibernate.query.sqm.tree.insert.SqmInsertStatement;
+import org.hibernate.query.sqm.tree.insert.SqmInsertValuesStatement;
+import org.hibernate.query.sqm.tree.insert.SqmValues;
+import org.hibernate.query.sqm.tree.select.SqmQueryPart;
+import org.hibernate.query.sqm.tree.select.SqmSelectStatement;
+
+/**
+ * Multi-table insert strategy for bulk inserts into entities that span multiple tables, like
+ * entities that use {@link jakarta.persistence.InheritanceType#JOINED} inheritance. The default
+ * strategy of Hibernate uses a temporary table, which Cloud Spanner does not support.
+ *
+ * <p>This strategy first evaluates the rows that should be inserted, either from the values clause
+ * or by executing the select query of the statement. It then assigns an id to each row, and
+ * inserts the rows with the insert statements of the entity. The inserts are executed as one JDBC
+ * batch per table, which Cloud Spanner executes as one batch of DML statements.
+ *
+ * <p>Values clauses can only contain literals and parameters, and entities with ids that are
+ * generated by the database during the insert are not supported, as each insert would need to
+ * return its id.
+ */
+class SpannerMultiTableInsertStrategy implements SqmMultiTableInsertStrategy {
+
+  @Override
+  public int executeInsert(
+      SqmInsertStatement<?> sqmInsert,
+      DomainParameterXref domainParameterXref,
+      DomainQueryExecutionContext context) {
+    SharedSessionContractImplementor session = context.getSession();
+    EntityPersister entityDescriptor =
+        session.getFactory().getRuntimeMetamodels().getMappingMetamodel().getEntityDescriptor(
+            sqmInsert.getTarget().getModel().getHibernateEntityName());
+    List<ModelPart> targets = getTargets(sqmInsert, entityDescriptor);
+    List<Object[]> rows =
+        sqmInsert instanceof SqmInsertSelectStatement
+            ? selectRows((SqmInsertSelectStatement<?>) sqmInsert, context)
+            : getRows((SqmInsertValuesStatement<?>) sqmInsert, domainParameterXref, context);
+    if (rows.isEmpty()) {
+      return 0;
+    }
+
+    // Use a JDBC batch that contains all rows, so the inserts are sent once per table.
+    Integer jdbcBatchSize = session.getJdbcBatchSize();
+    session.setJdbcBatchSize(rows.size());
+    try {
+      for (Object[] row : rows) {
+        insert(entityDescriptor, targets, row, session);
+      }
+      session.getJdbcCoordinator().executeBatch();
+    } catch (RuntimeException exception) {
+      session.getJdbcCoordinator().abortBatch();
+      throw exception;
+    } finally {
+      session.setJdbcBatchSize(jdbcBatchSize);
+    }
+    return rows.size();
+  }
+
+  /** Returns the id or attribute mappings of the insertion target paths of the statement. */
+  private static List<ModelPart> getTargets(
+      SqmInsertStatement<?> sqmInsert, EntityPersister entityDescriptor) {
+    List<ModelPart> targets = new ArrayList<>(sqmInsert.getInsertionTargetPaths().size());
+    for (SqmPath<?> path : sqmInsert.getInsertionTargetPaths()) {
+      String name = path.getReferencedPathSource().getPathName();
+      ModelPart target =
+          name.equals(entityDescriptor.getIdentifierPropertyName())
+              ? entityDescriptor.getIdentifierMapping()
+              : entityDescriptor.findAttributeMapping(name);
+      if (path.getLhs() != sqmInsert.getTarget() || target == null) {
+        throw new HibernateException(
+            "Multi-table inserts only support attributes of the inserted entity: "
+                + path.getNavigablePath().getFullPath());
+      }
+      targets.add(target);
+    }
+    return targets;
+  }
+
+  /** Returns the rows of a values clause. The values must be literals or parameters. */
+  private static List<Object[]> getRows(
+      SqmInsertValuesStatement<?> sqmInsert,
+      DomainParameterXref domainParameterXref,
+      DomainQueryExecutionContext context) {
+    List<Object[]> rows = new ArrayList<>(sqmInsert.getValuesList().size());
+    for (SqmValues values : sqmInsert.getValuesList()) {
+      List<SqmExpression<?>> expressions = values.getExpressions();
+      Object[] row = new Object[expressions.size()];
+      for (int i = 0; i < row.length; i++) {
+        SqmExpression<?> expression = expressions.get(i);
+        if (expression instanceof SqmLiteral) {
+          row[i] = ((SqmLiteral<?>) expression).getLiteralValue();
+        } else if (expression instanceof SqmParameter) {
+          QueryParameterImplementor<?> parameter =
+              domainParameterXref.getQueryParameter((SqmParameter<?>) expression);
+          row[i] = context.getQueryParameterBindings().getBinding(parameter).getBindValue();
+        } else {
+          throw new HibernateException(
+              "Multi-table inserts only support literals and parameters in the values clause");
+        }
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  /** Executes the select query of an insert statement and returns the selected rows. */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static List<Object[]> selectRows(
+      SqmInsertSelectStatement<?> sqmInsert, DomainQueryExecutionContext context) {
+    SqmQueryPart<Object[]> queryPart =
+        (SqmQueryPart<Object[]>) sqmInsert.getSelectQueryPart().copy(
+            SqmCopyContext.simpleContext());
+    SqmSelectStatement<Object[]> select =
+        new SqmSelectStatement<>(
+            queryPart, Object[].class, SqmQuerySource.CRITERIA, sqmInsert.nodeBuilder());
+    QueryImplementor<Object[]> query = context.getSession().createQuery(select);
+    QueryParameterBindings bindings = context.getQueryParameterBindings();
+    for (QueryParameter<?> parameter : query.getParameterMetadata().getRegistrations()) {
+      QueryParameterBinding<?> binding =
+          parameter.getName() != null
+              ? bindings.getBinding(parameter.getName())
+              : bindings.getBinding(parameter.getPosition());
+      if (binding.isMultiValued()) {
+        query.setParameterList(
+            (QueryParameter) parameter,
+            binding.getBindValues(),
+            (BindableType) binding.getBindType());
+      } else {
+        query.setParameter(
+            (QueryParameter) parameter,
+            binding.getBindValue(),
+            (BindableType) binding.getBindType());
+      }
+    }
+    return query.getResultList();
+  }
+
+  private static void insert(
+      EntityPersister entityDescriptor,
+      List<ModelPart> targets,
+      Object[] row,
+      SharedSessionContractImplementor session) {
+    Object id = null;
+    Object[] state = new Object[entityDescriptor.getNumberOfAttributeMappings()];
+    for (int i = 0; i < targets.size(); i++) {
+      ModelPart target = targets.get(i);
+      Object value =
+          target.getJavaType().coerce(row[i], session.getFactory()::getTypeConfiguration);
+      if (target.isEntityIdentifierMapping()) {
+        id = value;
+      } else {
+        state[((AttributeMapping) target).getStateArrayPosition()] = value;
+      }
+    }
+
+    Object entity = entityDescriptor.instantiate(id, session);
+    for (int i = 0; i < state.length; i++) {
+      if (state[i] != null) {
+        entityDescriptor.setValue(entity, i, state[i]);
+      }
+    }
+    if (id == null) {
+      Generator generator = entityDescriptor.getGenerator();
+      if (generator.generatedOnExecution()) {
+        throw new HibernateException(
+            "Multi-table inserts are not supported for entities with ids that are generated by "
+                + "the database: "
+                + entityDescriptor.getEntityName());
+      }
+      id = ((BeforeExecutionGenerator) generator).generate(session, entity, null, INSERT);
+      entityDescriptor.setIdentifier(entity, id, session);
+    }
+    if (entityDescriptor.isVersioned()) {
+      Versioning.seedVersion(entity, state, entityDescriptor, session);
+    }
+    entityDescriptor.insert(id, state, entity, session);
+  }
+}
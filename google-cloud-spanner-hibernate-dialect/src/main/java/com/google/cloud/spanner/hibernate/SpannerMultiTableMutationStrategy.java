@@ -0,0 +1,238 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package com.google.cloud.spanner.hibernate;
+
+import com.google.cloud.spanner.jdbc.CloudSpannerJdbcConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.metamodel.mapping.EntityMappingType;
+import org.hibernate.metamodel.mapping.JdbcMapping;
+import org.hibernate.metamodel.mapping.ModelPart;
+import org.hibernate.metamodel.mapping.SelectableConsumer;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.query.spi.DomainQueryExecutionContext;
+import org.hibernate.query.sqm.internal.DomainParameterXref;
+import org.hibernate.query.sqm.mutation.internal.inline.InPredicateRestrictionProducer;
+import org.hibernate.query.sqm.mutation.internal.inline.InlineMutationStrategy;
+import org.hibernate.query.sqm.mutation.internal.inline.MatchingIdRestrictionProducer;
+import org.hibernate.query.sqm.tree.delete.SqmDeleteStatement;
+import org.hibernate.query.sqm.tree.update.SqmUpdateStatement;
+import org.hibernate.sql.ast.tree.expression.ColumnReference;
+import org.hibernate.sql.ast.tree.from.TableReference;
+import org.hibernate.sql.ast.tree.predicate.InArrayPredicate;
+import org.hibernate.sql.ast.tree.predicate.Predicate;
+import org.hibernate.sql.exec.internal.AbstractJdbcParameter;
+import org.hibernate.sql.exec.spi.ExecutionContext;
+import org.hibernate.sql.exec.spi.JdbcParameterBindings;
+
+/**
+ * Multi-table mutation strategy for bulk updates and deletes on entities that span multiple tables,
+ * like entities that use {@link jakarta.persistence.InheritanceType#JOINED} inheritance. The
+ * default strategy of Hibernate uses a temporary id table, which Cloud Spanner does not support.
+ * This strategy first selects the ids of the rows that match the statement, and then executes one
+ * set-based statement per table.
+ *
+ * <p>The matching ids are bound as one ARRAY parameter, and each table is restricted with {@code id
+ * in unnest(@p1)}, which gives the same SQL string for any number of ids. A DML batch is started
+ * on the connection once the ids have been selected, so all the statements per table are sent to
+ * Cloud Spanner as one batch. Bulk updates of entities with an optional table, or with an id that
+ * cannot be bound as an array, use the standard inline update handler of Hibernate, as those
+ * updates need the update count of each statement.
+ */
+class SpannerMultiTableMutationStrategy extends InlineMutationStrategy {
+
+  SpannerMultiTableMutationStrategy() {
+    super(statement -> new ArrayRestrictionProducer());
+  }
+
+  @Override
+  public int executeUpdate(
+      SqmUpdateStatement<?> sqmUpdate,
+      DomainParameterXref domainParameterXref,
+      DomainQueryExecutionContext context) {
+    AbstractEntityPersister entityDescriptor =
+        (AbstractEntityPersister)
+            context.getSession().getFactory().getRuntimeMetamodels().getMappingMetamodel()
+                .getEntityDescriptor(sqmUpdate.getTarget().getModel().getHibernateEntityName());
+    if (!SpannerMultiTableUpdateHandler.supports(entityDescriptor)) {
+      return super.executeUpdate(sqmUpdate, domainParameterXref, context);
+    }
+    return new SpannerMultiTableUpdateHandler(
+            new ArrayRestrictionProducer(), sqmUpdate, domainParameterXref)
+        .execute(context);
+  }
+
+  @Override
+  public int executeDelete(
+      SqmDeleteStatement<?> sqmDelete,
+      DomainParameterXref domainParameterXref,
+      DomainQueryExecutionContext context) {
+    return new SpannerMultiTableDeleteHandler(
+            new ArrayRestrictionProducer(), sqmDelete, domainParameterXref)
+        .execute(context);
+  }
+
+  /**
+   * Restricts a table of a bulk mutation with {@code id in unnest(@p1)}. Restrictions that cannot
+   * be bound as one array, like restrictions on multiple key columns, use an IN list instead.
+   */
+  static class ArrayRestrictionProducer implements MatchingIdRestrictionProducer {
+
+    private final InPredicateRestrictionProducer fallback = new InPredicateRestrictionProducer();
+
+    @Override
+    public Predicate produceRestriction(
+        List<?> matchingIdValues,
+        EntityMappingType entityDescriptor,
+        int valueIndex,
+        ModelPart valueModelPart,
+        TableReference mutatingTableReference,
+        Supplier<Consumer<SelectableConsumer>> columnsToMatchVisitationSupplier,
+        ExecutionContext executionContext) {
+      // The visited column mappings may be reused by the visitor, so create the column
+      // references while visiting.
+      List<ColumnReference> columns = new ArrayList<>();
+      columnsToMatchVisitationSupplier.get().accept(
+          (index, column) -> columns.add(new ColumnReference(mutatingTableReference, column)));
+      SpannerInListArrayBinder binder =
+          columns.size() == 1
+              ? SpannerInListArrayBinder.create(
+                  columns.get(0).getJdbcMapping(), getValues(matchingIdValues, valueIndex))
+              : null;
+      if (binder == null) {
+        return fallback.produceRestriction(
+            matchingIdValues,
+            entityDescriptor,
+            valueIndex,
+            valueModelPart,
+            mutatingTableReference,
+            columnsToMatchVisitationSupplier,
+            executionContext);
+      }
+      return new InArrayPredicate(
+          columns.get(0), new ArrayParameter(binder, columns.get(0).getJdbcMapping()));
+    }
+
+    /**
+     * Returns the values at the given index. The matching rows are arrays if the statement also
+     * selected foreign key values for collection tables.
+     */
+    private static List<Object> getValues(List<?> matchingIdValues, int valueIndex) {
+      List<Object> values = new ArrayList<>(matchingIdValues.size());
+      for (Object value : matchingIdValues) {
+        values.add(value instanceof Object[] ? ((Object[]) value)[valueIndex] : value);
+      }
+      return values;
+    }
+  }
+
+  /**
+   * A DML batch on the connection of a session. The statements of a bulk mutation are executed in
+   * this batch once the matching ids have been selected, as all following statements only modify
+   * data.
+   */
+  static class DmlBatch {
+
+    private final SharedSessionContractImplementor session;
+
+    private Connection connection;
+
+    private DmlBatch(SharedSessionContractImplementor session, Connection connection) {
+      this.session = session;
+      this.connection = connection;
+    }
+
+    /**
+     * Starts a DML batch on the connection of the session. The batch is a no-op if the connection
+     * is not a Cloud Spanner connection.
+     */
+    static DmlBatch start(SharedSessionContractImplementor session) {
+      Connection connection =
+          session.getJdbcCoordinator().getLogicalConnection().getPhysicalConnection();
+      try {
+        if (!connection.isWrapperFor(CloudSpannerJdbcConnection.class)) {
+          return new DmlBatch(session, null);
+        }
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("start batch dml");
+        }
+        return new DmlBatch(session, connection);
+      } catch (SQLException exception) {
+        throw session.getJdbcServices().getSqlExceptionHelper()
+            .convert(exception, "Failed to start DML batch", "start batch dml");
+      }
+    }
+
+    void run() {
+      if (connection == null) {
+        return;
+      }
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("run batch");
+      } catch (SQLException exception) {
+        throw session.getJdbcServices().getSqlExceptionHelper()
+            .convert(exception, "Failed to run DML batch", "run batch");
+      } finally {
+        connection = null;
+      }
+    }
+
+    void abort(RuntimeException cause) {
+      if (connection == null) {
+        return;
+      }
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("abort batch");
+      } catch (SQLException exception) {
+        cause.addSuppressed(exception);
+      } finally {
+        connection = null;
+      }
+    }
+  }
+
+  /** A JDBC parameter that binds the matching ids of a bulk mutation as one ARRAY value. */
+  private static class ArrayParameter extends AbstractJdbcParameter {
+
+    private final SpannerInListArrayBinder binder;
+
+    ArrayParameter(SpannerInListArrayBinder binder, JdbcMapping jdbcMapping) {
+      super(jdbcMapping);
+      this.binder = binder;
+    }
+
+    @Override
+    public void bindParameterValue(
+        PreparedStatement statement,
+        int startPosition,
+        JdbcParameterBindings jdbcParameterBindings,
+        ExecutionContext executionContext) throws SQLException {
+      binder.bindParameterValue(
+          statement, startPosition, jdbcParameterBindings, executionContext);
+    }
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package com.google.cloud.spanner.hibernate;
+
+import com.google.cloud.spanner.hibernate.SpannerMultiTableMutationStrategy.DmlBatch;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.mapping.MappingModelExpressible;
+import org.hibernate.metamodel.mapping.SelectableConsumer;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.SemanticException;
+import org.hibernate.query.spi.DomainQueryExecutionContext;
+import org.hibernate.query.sqm.internal.DomainParameterXref;
+import org.hibernate.query.sqm.internal.SqmJdbcExecutionContextAdapter;
+import org.hibernate.query.sqm.internal.SqmUtil;
+import org.hibernate.query.sqm.mutation.internal.MatchingIdSelectionHelper;
+import org.hibernate.query.sqm.mutation.internal.MultiTableSqmMutationConverter;
+import org.hibernate.query.sqm.mutation.internal.UpdateHandler;
+import org.hibernate.query.sqm.mutation.internal.inline.MatchingIdRestrictionProducer;
+import org.hibernate.query.sqm.spi.SqmParameterMappingModelResolutionAccess;
+import org.hibernate.query.sqm.tree.expression.SqmParameter;
+import org.hibernate.query.sqm.tree.predicate.SqmWhereClause;
+import org.hibernate.query.sqm.tree.update.SqmUpdateStatement;
+import org.hibernate.sql.ast.tree.expression.ColumnReference;
+import org.hibernate.sql.ast.tree.expression.JdbcParameter;
+import org.hibernate.sql.ast.tree.from.NamedTableReference;
+import org.hibernate.sql.ast.tree.from.TableGroup;
+import org.hibernate.sql.ast.tree.from.TableReference;
+import org.hibernate.sql.ast.tree.from.TableReferenceJoin;
+import org.hibernate.sql.ast.tree.from.UnionTableReference;
+import org.hibernate.sql.ast.tree.predicate.Predicate;
+import org.hibernate.sql.ast.tree.predicate.PredicateCollector;
+import org.hibernate.sql.ast.tree.update.Assignment;
+import org.hibernate.sql.ast.tree.update.UpdateStatement;
+import org.hibernate.sql.exec.spi.ExecutionContext;
+import org.hibernate.sql.exec.spi.JdbcOperationQueryUpdate;
+import org.hibernate.sql.exec.spi.JdbcParameterBindings;
+
+/**
+ * Bulk update handler for entities that span multiple tables. This handler first selects the ids
+ * of the rows that match the statement, and then executes one update statement per table that is
+ * restricted with the matching ids. The updates are executed in one DML batch that is started
+ * after the ids have been selected.
+ *
+ * <p>Hibernate inserts the missing rows of an optional table if an update statement does not
+ * update all matching rows of that table. This requires the update count of each statement, which
+ * is not available in a DML batch, so this handler does not support entities with optional tables.
+ */
+class SpannerMultiTableUpdateHandler implements UpdateHandler {
+
+  private final MatchingIdRestrictionProducer matchingIdsPredicateProducer;
+
+  private final SqmUpdateStatement<?> sqmUpdate;
+
+  private final DomainParameterXref domainParameterXref;
+
+  SpannerMultiTableUpdateHandler(
+      MatchingIdRestrictionProducer matchingIdsPredicateProducer,
+      SqmUpdateStatement<?> sqmUpdate,
+      DomainParameterXref domainParameterXref) {
+    this.matchingIdsPredicateProducer = matchingIdsPredicateProducer;
+    this.sqmUpdate = sqmUpdate;
+    this.domainParameterXref = domainParameterXref;
+  }
+
+  /** Returns true if bulk updates of the given entity can be executed by this handler. */
+  static boolean supports(AbstractEntityPersister entityDescriptor) {
+    for (int i = 0; i < entityDescriptor.getTableSpan(); i++) {
+      if (entityDescriptor.isNullableTable(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int execute(DomainQueryExecutionContext executionContext) {
+    List<Object> ids =
+        MatchingIdSelectionHelper.selectMatchingIds(
+            sqmUpdate, domainParameterXref, executionContext);
+    if (ids == null || ids.isEmpty()) {
+      return 0;
+    }
+    domainParameterXref.clearExpansions();
+
+    SessionFactoryImplementor factory = executionContext.getSession().getFactory();
+    EntityPersister entityDescriptor =
+        factory.getRuntimeMetamodels().getMappingMetamodel().getEntityDescriptor(
+            sqmUpdate.getTarget().getModel().getHibernateEntityName());
+    MultiTableSqmMutationConverter converter =
+        new MultiTableSqmMutationConverter(
+            entityDescriptor,
+            sqmUpdate,
+            sqmUpdate.getTarget(),
+            domainParameterXref,
+            executionContext.getQueryOptions(),
+            executionContext.getSession().getLoadQueryInfluencers(),
+            executionContext.getQueryParameterBindings(),
+            factory);
+    TableGroup updatingTableGroup = converter.getMutatingTableGroup();
+
+    // Convert the set-clause and the where-clause, and collect the parameters of both.
+    Map<SqmParameter<?>, List<List<JdbcParameter>>> parameterResolutions =
+        domainParameterXref.getSqmParameterCount() == 0
+            ? Collections.emptyMap()
+            : new IdentityHashMap<>();
+    Map<SqmParameter<?>, MappingModelExpressible<?>> paramTypeResolutions = new LinkedHashMap<>();
+    MultiTableSqmMutationConverter.SqmParameterResolutionConsumer parameterResolutionConsumer =
+        (sqmParameter, mappingType, jdbcParameters) -> {
+          parameterResolutions.computeIfAbsent(sqmParameter, k -> new ArrayList<>(1))
+              .add(jdbcParameters);
+          paramTypeResolutions.put(sqmParameter, mappingType);
+        };
+    List<Assignment> assignments = new ArrayList<>();
+    converter.visitSetClause(
+        sqmUpdate.getSetClause(), assignments::add, parameterResolutionConsumer);
+    converter.addVersionedAssignment(assignments::add, sqmUpdate);
+    SqmWhereClause whereClause = sqmUpdate.getWhereClause();
+    Predicate providedPredicate =
+        whereClause == null || whereClause.getPredicate() == null
+            ? null
+            : converter.visitWhereClause(
+                whereClause, columnReference -> {}, parameterResolutionConsumer);
+    PredicateCollector predicateCollector = new PredicateCollector(providedPredicate);
+    entityDescriptor.applyBaseRestrictions(
+        predicateCollector::applyPredicate,
+        updatingTableGroup,
+        true,
+        executionContext.getSession().getLoadQueryInfluencers().getEnabledFilters(),
+        null,
+        converter);
+    converter.pruneTableGroupJoins();
+
+    JdbcParameterBindings jdbcParameterBindings =
+        SqmUtil.createJdbcParameterBindings(
+            executionContext.getQueryParameterBindings(),
+            domainParameterXref,
+            SqmUtil.generateJdbcParamsXref(domainParameterXref, () -> parameterResolutions),
+            factory.getRuntimeMetamodels().getMappingMetamodel(),
+            navigablePath -> updatingTableGroup,
+            new SqmParameterMappingModelResolutionAccess() {
+              @Override
+              @SuppressWarnings("unchecked")
+              public <T> MappingModelExpressible<T> getResolvedMappingModelType(
+                  SqmParameter<T> parameter) {
+                return (MappingModelExpressible<T>) paramTypeResolutions.get(parameter);
+              }
+            },
+            executionContext.getSession());
+    Map<TableReference, List<Assignment>> assignmentsByTable =
+        getAssignmentsByTable(updatingTableGroup, assignments);
+
+    SqmJdbcExecutionContextAdapter executionContextAdapter =
+        SqmJdbcExecutionContextAdapter.omittingLockingAndPaging(executionContext);
+    // All ids have been selected, so the following statements only modify data.
+    DmlBatch batch = DmlBatch.start(executionContext.getSession());
+    try {
+      entityDescriptor.visitConstraintOrderedTables(
+          (tableExpression, tableKeyColumnVisitationSupplier) ->
+              updateTable(
+                  tableExpression,
+                  tableKeyColumnVisitationSupplier,
+                  entityDescriptor,
+                  updatingTableGroup,
+                  assignmentsByTable,
+                  ids,
+                  jdbcParameterBindings,
+                  executionContextAdapter));
+    } catch (RuntimeException exception) {
+      batch.abort(exception);
+      throw exception;
+    }
+    batch.run();
+    return ids.size();
+  }
+
+  /** Groups the assignments of the statement by the table that they update. */
+  private static Map<TableReference, List<Assignment>> getAssignmentsByTable(
+      TableGroup updatingTableGroup, List<Assignment> assignments) {
+    Map<String, TableReference> tableReferenceByAlias = new HashMap<>();
+    TableReference primaryTableReference = updatingTableGroup.getPrimaryTableReference();
+    tableReferenceByAlias.put(
+        primaryTableReference.getIdentificationVariable(), primaryTableReference);
+    for (TableReferenceJoin join : updatingTableGroup.getTableReferenceJoins()) {
+      tableReferenceByAlias.put(
+          join.getJoinedTableReference().getIdentificationVariable(),
+          join.getJoinedTableReference());
+    }
+
+    Map<TableReference, List<Assignment>> assignmentsByTable = new HashMap<>();
+    for (Assignment assignment : assignments) {
+      TableReference assignmentTableReference = null;
+      for (ColumnReference columnReference : assignment.getAssignable().getColumnReferences()) {
+        TableReference tableReference = tableReferenceByAlias.get(columnReference.getQualifier());
+        if (tableReference == null) {
+          throw new SemanticException(
+              "Assignment referred to column of a joined association: " + columnReference);
+        }
+        if (assignmentTableReference != null && assignmentTableReference != tableReference) {
+          throw new SemanticException(
+              "Assignment referred to columns from multiple tables: "
+                  + assignment.getAssignable());
+        }
+        assignmentTableReference = tableReference;
+      }
+      assignmentsByTable.computeIfAbsent(assignmentTableReference, k -> new ArrayList<>())
+          .add(assignment);
+    }
+    return assignmentsByTable;
+  }
+
+  private void updateTable(
+      String tableExpression,
+      Supplier<Consumer<SelectableConsumer>> tableKeyColumnVisitationSupplier,
+      EntityPersister entityDescriptor,
+      TableGroup updatingTableGroup,
+      Map<TableReference, List<Assignment>> assignmentsByTable,
+      List<Object> ids,
+      JdbcParameterBindings jdbcParameterBindings,
+      ExecutionContext executionContext) {
+    TableReference updatingTableReference =
+        updatingTableGroup.getTableReference(
+            updatingTableGroup.getNavigablePath(), tableExpression, true);
+    List<Assignment> assignments = assignmentsByTable.get(updatingTableReference);
+    if (assignments == null || assignments.isEmpty()) {
+      return;
+    }
+
+    NamedTableReference dmlTableReference =
+        updatingTableReference instanceof UnionTableReference
+            ? new NamedTableReference(
+                tableExpression,
+                updatingTableReference.getIdentificationVariable(),
+                updatingTableReference.isOptional())
+            : (NamedTableReference) updatingTableReference;
+    Predicate matchingIdsPredicate =
+        matchingIdsPredicateProducer.produceRestriction(
+            ids,
+            entityDescriptor,
+            0,
+            null,
+            dmlTableReference,
+            tableKeyColumnVisitationSupplier,
+            executionContext);
+    SessionFactoryImplementor factory = executionContext.getSession().getFactory();
+    JdbcOperationQueryUpdate jdbcUpdate =
+        factory.getJdbcServices().getJdbcEnvironment().getSqlAstTranslatorFactory()
+            .buildUpdateTranslator(
+                factory, new UpdateStatement(dmlTableReference, assignments, matchingIdsPredicate))
+            .translate(jdbcParameterBindings, executionContext.getQueryOptions());
+    factory.getJdbcServices().getJdbcMutationExecutor().execute(
+        jdbcUpdate,
+        jdbcParameterBindings,
+        sql -> executionContext.getSession().getJdbcCoordinator().getStatementPreparer()
+            .prepareStatement(sql),
+        (integer, preparedStatement) -> {},
+        executionContext);
+  }
+}
@@ -0,0 +1,515 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate;
+
+import com.google.cloud.spanner.connection.AutocommitDmlMode;
+import com.google.cloud.spanner.jdbc.CloudSpannerJdbcConnection;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.hibernate.FlushMode;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.metamodel.model.domain.DomainType;
+import org.hibernate.metamodel.model.domain.EntityDomainType;
+import org.hibernate.query.MutationQuery;
+import org.hibernate.query.SelectionQuery;
+import org.hibernate.query.sqm.internal.QuerySqmImpl;
+import org.hibernate.query.sqm.spi.BaseSemanticQueryWalker;
+import org.hibernate.query.sqm.tree.SqmStatement;
+import org.hibernate.query.sqm.tree.delete.SqmDeleteStatement;
+import org.hibernate.query.sqm.tree.domain.NonAggregatedCompositeSimplePath;
+import org.hibernate.query.sqm.tree.domain.SqmAnyValuedSimplePath;
+import org.hibernate.query.sqm.tree.domain.SqmBasicValuedSimplePath;
+import org.hibernate.query.sqm.tree.domain.SqmEmbeddedValuedSimplePath;
+import org.hibernate.query.sqm.tree.domain.SqmEntityValuedSimplePath;
+import org.hibernate.query.sqm.tree.domain.SqmFkExpression;
+import org.hibernate.query.sqm.tree.domain.SqmPath;
+import org.hibernate.query.sqm.tree.update.SqmAssignment;
+import org.hibernate.query.sqm.tree.update.SqmUpdateStatement;
+
+/**
+ * Helper methods for executing HQL, JPQL and Criteria queries with Cloud Spanner specific
+ * execution options.
+ */
+public final class SpannerQueries {
+
+  /**
+   * The number of times that a batch of a resumable stream is read again after a transient error.
+   */
+  private static final int RESUMABLE_STREAM_MAX_RETRIES = 3;
+
+  /** The connection settings that are used for partitioned queries. */
+  private static class PartitionSettings {
+    private final boolean dataBoostEnabled;
+    private final int maxParallelism;
+
+    PartitionSettings(boolean dataBoostEnabled, int maxParallelism) {
+      this.dataBoostEnabled = dataBoostEnabled;
+      this.maxParallelism = maxParallelism;
+    }
+
+    void apply(CloudSpannerJdbcConnection connection) throws SQLException {
+      connection.setDataBoostEnabled(dataBoostEnabled);
+      connection.setMaxPartitionedParallelism(maxParallelism);
+    }
+  }
+
+  /**
+   * Collects the attributes that are read by an expression of an update statement. Each attribute
+   * is identified by the name of the entity that owns the column and the path of the attribute in
+   * the entity, e.g. {@code Singer.address.city}. The walker visits all nested expressions,
+   * including subqueries.
+   */
+  private static class AttributeReadCollector extends BaseSemanticQueryWalker {
+    private final Set<String> attributes = new HashSet<>();
+
+    @Override
+    public Object visitBasicValuedPath(SqmBasicValuedSimplePath<?> path) {
+      attributes.add(getAttributeName(path));
+      return path;
+    }
+
+    @Override
+    public Object visitEmbeddableValuedPath(SqmEmbeddedValuedSimplePath<?> path) {
+      attributes.add(getAttributeName(path));
+      return path;
+    }
+
+    @Override
+    public Object visitAnyValuedValuedPath(SqmAnyValuedSimplePath<?> path) {
+      attributes.add(getAttributeName(path));
+      return path;
+    }
+
+    @Override
+    public Object visitNonAggregatedCompositeValuedPath(NonAggregatedCompositeSimplePath<?> path) {
+      attributes.add(getAttributeName(path));
+      return path;
+    }
+
+    @Override
+    public Object visitEntityValuedPath(SqmEntityValuedSimplePath<?> path) {
+      attributes.add(getAttributeName(path));
+      return path;
+    }
+
+    @Override
+    public Object visitFkExpression(SqmFkExpression<?> fkExpression) {
+      attributes.add(getAttributeName(fkExpression.getToOnePath()));
+      return fkExpression;
+    }
+  }
+
+  private SpannerQueries() {
+  }
+
+  /**
+   * Executes the given query as a partitioned query. See {@link #partitioned(Session,
+   * SelectionQuery, boolean, int)}.
+   */
+  public static <R> Stream<R> partitioned(Session session, SelectionQuery<R> query) {
+    return partitioned(session, query, false, 0);
+  }
+
+  /**
+   * Executes the given query as a partitioned query and returns the merged results of all
+   * partitions as a stream. Cloud Spanner divides the query into partitions that the JDBC driver
+   * executes in parallel, which is a lot faster for queries that read large amounts of data. The
+   * query must be root-partitionable, which means that it for example cannot contain an order by
+   * clause, and the session must be in autocommit mode or in a read-only transaction.
+   *
+   * <p>The query is executed before this method returns, and the Data Boost and parallelism
+   * settings are only applied to the JDBC connection of the session while the query is executed.
+   * The stream must be closed after use to release the partitions of the query.
+   *
+   * @param session the session that executes the query
+   * @param query the query to execute
+   * @param dataBoostEnabled whether the query should use Data Boost. Data Boost executes the query
+   *     on independent compute resources, and does not affect the workload of the instance.
+   * @param maxParallelism the maximum number of partitions that are executed in parallel, or 0 to
+   *     use the default of the JDBC driver, which is the number of available processors
+   * @return the merged results of all partitions
+   */
+  public static <R> Stream<R> partitioned(
+      Session session, SelectionQuery<R> query, boolean dataBoostEnabled, int maxParallelism) {
+    SharedSessionContractImplementor sessionImplementor =
+        session.unwrap(SharedSessionContractImplementor.class);
+    CloudSpannerJdbcConnection connection = session.doReturningWork(
+        jdbcConnection -> jdbcConnection.unwrap(CloudSpannerJdbcConnection.class));
+    PartitionSettings previousSettings;
+    try {
+      previousSettings = new PartitionSettings(
+          connection.isDataBoostEnabled(), connection.getMaxPartitionedParallelism());
+      new PartitionSettings(dataBoostEnabled, maxParallelism).apply(connection);
+    } catch (SQLException exception) {
+      throw sessionImplementor.getJdbcServices().getSqlExceptionHelper()
+          .convert(exception, "Failed to apply partitioned query settings");
+    }
+
+    // The hint is only added to the comment while the query is translated to SQL. Hibernate only
+    // executes the query when the first row is read, and the JDBC driver reads the settings of the
+    // connection when it partitions the query. The first row is therefore read before the comment
+    // and the settings are restored, so the settings never outlive this method.
+    String comment = query.getComment();
+    String hint = SpannerQueryHints.partitionedQuery(true);
+    query.setComment(comment == null || comment.isEmpty() ? hint : comment + " " + hint);
+    try {
+      Stream<R> stream = query.stream();
+      Iterator<R> iterator = stream.iterator();
+      try {
+        iterator.hasNext();
+      } catch (RuntimeException exception) {
+        stream.close();
+        throw exception;
+      }
+      return StreamSupport.stream(
+              Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+          .onClose(stream::close);
+    } finally {
+      query.setComment(comment);
+      try {
+        previousSettings.apply(connection);
+      } catch (SQLException exception) {
+        throw sessionImplementor.getJdbcServices().getSqlExceptionHelper()
+            .convert(exception, "Failed to restore partitioned query settings");
+      }
+    }
+  }
+
+  /**
+   * Returns all entities of the given type as a resumable stream. See {@link
+   * #resumableStream(Session, Class, String, int)}.
+   */
+  public static <T> Stream<T> resumableStream(
+      Session session, Class<T> entityClass, int batchSize) {
+    return resumableStream(session, entityClass, null, batchSize);
+  }
+
+  /**
+   * Returns the entities of the given type that match the given restriction as a stream that reads
+   * the entities in batches in primary key order. Each batch is read with a separate query that
+   * starts after the primary key of the last entity of the previous batch. This means that:
+   *
+   * <ol>
+   *   <li>At most {@code batchSize} rows are buffered in memory, and the entities of a batch are
+   *       detached from the session when the next batch is read.
+   *   <li>A batch that fails with a transient error (e.g. {@code UNAVAILABLE}) is read again from
+   *       the last returned primary key after an exponential backoff, instead of restarting the
+   *       entire read.
+   * </ol>
+   *
+   * <p>Use this for exports and other reads of large tables. Each batch is read at a different
+   * timestamp if the session is in autocommit mode. Use a read-only transaction to read all
+   * batches at the same timestamp. Failed batches are only read again if the session has no
+   * transaction in progress, as Hibernate marks the transaction as rollback-only when a query
+   * fails. The error of a failed batch in a transaction is thrown directly.
+   *
+   * @param session the session that reads the entities
+   * @param entityClass the entity type to read. The entity must have a single id attribute.
+   * @param restriction an optional HQL predicate that uses the alias {@code e} for the entity, e.g.
+   *     {@code "e.active = true"}
+   * @param batchSize the maximum number of entities that is read and buffered per query
+   * @return the entities in primary key order
+   */
+  public static <T> Stream<T> resumableStream(
+      Session session, Class<T> entityClass, String restriction, int batchSize) {
+    SpannerResumableIterator<T> iterator =
+        new SpannerResumableIterator<>(
+            session, entityClass, restriction, batchSize, RESUMABLE_STREAM_MAX_RETRIES);
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(
+            iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+        false);
+  }
+
+  /**
+   * Returns a page of entities using keyset pagination. Keyset pagination does not use {@code
+   * OFFSET}, which Cloud Spanner executes by reading and skipping all rows before the page.
+   * Instead, each page starts after the position of the last entity of the previous page, which
+   * allows Cloud Spanner to seek directly to the start of the page. The entities are ordered by
+   * the sort attribute and then by id, so the order is stable even if the sort attribute is not
+   * unique.
+   *
+   * <p>Create an index on the sort attribute to make the seek efficient. The sort attribute must
+   * not contain null values.
+   *
+   * @param session the session that reads the entities
+   * @param entityClass the entity type to read. The entity must have a single id attribute.
+   * @param sortAttribute the attribute to sort the entities on, or null to only sort on the id
+   * @param descending whether to sort in descending order
+   * @param after the cursor of the previous page, or null to get the first page
+   * @param pageSize the maximum number of entities on the page
+   * @return the page with the entities and the cursor for the next page
+   */
+  public static <T> SpannerKeysetPage<T> keysetPage(
+      Session session,
+      Class<T> entityClass,
+      String sortAttribute,
+      boolean descending,
+      SpannerKeysetCursor after,
+      int pageSize) {
+    return keysetPage(
+        session,
+        entityClass,
+        sortAttribute == null || sortAttribute.isEmpty()
+            ? Collections.emptyList()
+            : Collections.singletonList(sortAttribute),
+        descending,
+        after,
+        pageSize);
+  }
+
+  /**
+   * Returns a page of entities using keyset pagination, sorted on multiple attributes. The
+   * entities are ordered by the sort attributes in the given order and then by id. All attributes
+   * are sorted in the same direction, so that Cloud Spanner can use one index on the sort
+   * attributes for both ascending and descending pages.
+   *
+   * <p>Create an index on the sort attributes in the same order to make the seek efficient. The
+   * sort attributes must not contain null values.
+   *
+   * @param session the session that reads the entities
+   * @param entityClass the entity type to read. The entity must have a single id attribute.
+   * @param sortAttributes the attributes to sort the entities on, or an empty list to only sort on
+   *     the id
+   * @param descending whether to sort in descending order
+   * @param after the cursor of the previous page, or null to get the first page
+   * @param pageSize the maximum number of entities on the page
+   * @return the page with the entities and the cursor for the next page
+   */
+  public static <T> SpannerKeysetPage<T> keysetPage(
+      Session session,
+      Class<T> entityClass,
+      List<String> sortAttributes,
+      boolean descending,
+      SpannerKeysetCursor after,
+      int pageSize) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("The page size must be positive");
+    }
+    SpannerKeysetQuery<T> query =
+        new SpannerKeysetQuery<>(session, entityClass, null, sortAttributes, descending);
+    // Fetch one additional entity to determine whether there is a next page.
+    List<T> entities = query.fetch(after, pageSize + 1, false);
+    if (entities.size() <= pageSize) {
+      return new SpannerKeysetPage<>(entities, null);
+    }
+    List<T> content = entities.subList(0, pageSize);
+    return new SpannerKeysetPage<>(content, query.cursorOf(content.get(pageSize - 1)));
+  }
+
+  /**
+   * Executes the given HQL or JPQL update or delete statement as Partitioned DML. See {@link
+   * #executePartitionedUpdate(SessionFactory, Function)}.
+   *
+   * @param sessionFactory the session factory to use to execute the statement
+   * @param hql the update or delete statement
+   * @param parameters the values of the named parameters of the statement
+   * @return a lower bound of the number of rows that were updated or deleted
+   */
+  public static long executePartitionedUpdate(
+      SessionFactory sessionFactory, String hql, Map<String, ?> parameters) {
+    return executePartitionedUpdate(sessionFactory, session -> {
+      MutationQuery query = session.createMutationQuery(hql);
+      parameters.forEach(query::setParameter);
+      return query;
+    });
+  }
+
+  /**
+   * Executes an HQL, JPQL or Criteria update or delete statement as Partitioned DML. Partitioned
+   * DML is not limited by the number of mutations per transaction, and it does not hold locks on
+   * all rows until the statement has finished. Use it for large bulk updates and deletes, for
+   * example for deleting all rows that are older than a given date.
+   *
+   * <p>The statement is executed in autocommit mode on a separate JDBC connection, and not as
+   * part of any current transaction. Cloud Spanner executes Partitioned DML in parallel on
+   * different partitions of the table, and might execute it more than once on a partition. The
+   * statement must therefore be idempotent, and update statements that assign an attribute a value
+   * that reads any attribute that the statement also assigns (e.g. {@code set e.counter =
+   * e.counter + 1} or {@code set e.a = e.b, e.b = e.a}) are rejected.
+   *
+   * @param sessionFactory the session factory to use to execute the statement
+   * @param queryFactory creates the update or delete statement for a session, e.g. {@code session
+   *     -> session.createMutationQuery(criteriaDelete)}
+   * @return a lower bound of the number of rows that were updated or deleted
+   */
+  public static long executePartitionedUpdate(
+      SessionFactory sessionFactory, Function<Session, MutationQuery> queryFactory) {
+    SessionFactoryImplementor sessionFactoryImplementor =
+        sessionFactory.unwrap(SessionFactoryImplementor.class);
+    ConnectionProvider connectionProvider =
+        sessionFactoryImplementor.getServiceRegistry().getService(ConnectionProvider.class);
+    try {
+      Connection connection = connectionProvider.getConnection();
+      try {
+        CloudSpannerJdbcConnection spannerConnection =
+            connection.unwrap(CloudSpannerJdbcConnection.class);
+        boolean autoCommit = connection.getAutoCommit();
+        AutocommitDmlMode dmlMode = spannerConnection.getAutocommitDmlMode();
+        connection.setAutoCommit(true);
+        spannerConnection.setAutocommitDmlMode(AutocommitDmlMode.PARTITIONED_NON_ATOMIC);
+        try (Session session =
+            sessionFactoryImplementor
+                .withOptions()
+                .connection(new SpannerPartitionedDmlConnection(connection))
+                .openSession()) {
+          MutationQuery query = queryFactory.apply(session);
+          checkIdempotent(query);
+          // Hibernate requires a transaction for bulk statements. The transaction is a no-op on the
+          // SpannerPartitionedDmlConnection.
+          Transaction transaction = session.beginTransaction();
+          int updateCount = query.executeUpdate();
+          transaction.commit();
+          return updateCount;
+        } finally {
+          spannerConnection.setAutocommitDmlMode(dmlMode);
+          connection.setAutoCommit(autoCommit);
+        }
+      } finally {
+        connectionProvider.closeConnection(connection);
+      }
+    } catch (SQLException exception) {
+      throw sessionFactoryImplementor.getJdbcServices().getSqlExceptionHelper().convert(
+          exception, "Could not execute Partitioned DML statement");
+    }
+  }
+
+  /**
+   * Writes the given entity with one {@code insert or update} statement, without first reading the
+   * row to determine whether it already exists. Use this instead of {@link Session#merge(Object)}
+   * for blind writes of detached entities, for example for entities that are received from another
+   * service. The entity must have an identifier.
+   *
+   * <p>The statement is executed directly on the JDBC connection of the session, and is part of
+   * the current transaction of the session. The pending changes of the session are flushed first
+   * if the session is in a transaction and its flush mode is not {@link FlushMode#MANUAL}, so the
+   * upsert is executed after the changes that were made before it, in the same way as Hibernate
+   * flushes before a native query. The entity is not added to the session, and any instance of the
+   * same entity that is already managed by the session is not updated. Upserts of
+   * versioned entities check the version of an existing row, unless {@link
+   * SpannerDialect#SPANNER_UPSERT_VERSION_CHECK_PROPERTY} has been set to false.
+   *
+   * @param session the session to use to write the entity
+   * @param entity the entity to insert or update
+   */
+  public static void upsert(Session session, Object entity) {
+    if (session.getHibernateFlushMode() != FlushMode.MANUAL && session.isJoinedToTransaction()) {
+      session.flush();
+    }
+    session.doWork(connection -> {
+      try (StatelessSession statelessSession =
+          session.getSessionFactory()
+              .withStatelessOptions()
+              .connection(connection)
+              .openStatelessSession()) {
+        statelessSession.upsert(entity);
+      }
+    });
+  }
+
+  /**
+   * Checks that the given statement is a delete statement or an update statement that does not
+   * assign any attribute a value that reads an attribute that is also assigned by the statement.
+   */
+  private static void checkIdempotent(MutationQuery query) {
+    SqmStatement<?> statement =
+        query instanceof QuerySqmImpl ? ((QuerySqmImpl<?>) query).getSqmStatement() : null;
+    if (statement instanceof SqmDeleteStatement) {
+      return;
+    }
+    if (!(statement instanceof SqmUpdateStatement)) {
+      throw new HibernateException(
+          "Only HQL, JPQL and Criteria update and delete statements can be executed as "
+              + "Partitioned DML");
+    }
+    List<SqmAssignment<?>> assignments =
+        ((SqmUpdateStatement<?>) statement).getSetClause().getAssignments();
+    Set<String> assigned = new HashSet<>();
+    for (SqmAssignment<?> assignment : assignments) {
+      assigned.add(getAttributeName(assignment.getTargetPath()));
+    }
+    for (SqmAssignment<?> assignment : assignments) {
+      AttributeReadCollector collector = new AttributeReadCollector();
+      assignment.getValue().accept(collector);
+      for (String read : collector.attributes) {
+        for (String target : assigned) {
+          if (overlaps(read, target)) {
+            throw new HibernateException(
+                "Partitioned DML statements must be idempotent, but "
+                    + assignment.getTargetPath().toHqlString()
+                    + " is assigned a value that depends on "
+                    + target
+                    + ", which is also assigned by the statement");
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the name of the entity that owns the column of the given path, followed by the path of
+   * the attribute in the entity, e.g. {@code Singer.address.city} for {@code s.address.city}.
+   */
+  private static String getAttributeName(SqmPath<?> path) {
+    List<String> names = new ArrayList<>();
+    SqmPath<?> owner = path;
+    while (owner.getLhs() != null) {
+      names.add(0, owner.getReferencedPathSource().getPathName());
+      owner = owner.getLhs();
+      if (owner.getReferencedPathSource().getSqmPathType() instanceof EntityDomainType) {
+        break;
+      }
+    }
+    DomainType<?> ownerType = owner.getReferencedPathSource().getSqmPathType();
+    String ownerName =
+        ownerType instanceof EntityDomainType
+            ? ((EntityDomainType<?>) ownerType).getHibernateEntityName()
+            : ownerType.getTypeName();
+    return names.isEmpty() ? ownerName : ownerName + "." + String.join(".", names);
+  }
+
+  /**
+   * Returns true if the given attributes are the same, or if one of them is a part of the other,
+   * like {@code Singer.address.city} and {@code Singer.address}.
+   */
+  private static boolean overlaps(String attribute, String other) {
+    return attribute.equals(other)
+        || attribute.startsWith(other + ".")
+        || other.startsWith(attribute + ".");
+  }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.Options.RpcPriority;
+import com.google.cloud.spanner.TimestampBound;
+import com.google.common.collect.ImmutableMap;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.hibernate.query.spi.QueryOptions;
+
+/**
+ * Cloud Spanner specific hints that can be added to HQL, JPQL and Criteria queries. The hints are
+ * passed to the dialect in the comment of the query, i.e. with the {@code org.hibernate.comment}
+ * query hint. Multiple hints can be added to one query by separating them with a space.
+ */
+public final class SpannerQueryHints {
+
+  /**
+   * Hint that forces Cloud Spanner to use a specific index for a table. The value is the name of
+   * the entity, or the table, followed by a colon and the name of the index; i.e. {@code
+   * spanner.force_index=Singer:idx_singer_last_name}. Use {@code _BASE_TABLE} as the index name
+   * to force Cloud Spanner to read from the base table.
+   */
+  public static final String FORCE_INDEX = "spanner.force_index";
+
+  /**
+   * Hint that sets the join method for joins in a query; i.e. {@code
+   * spanner.join_method=Album:HASH_JOIN}. The hint applies to the joins with the table of the
+   * given entity, or to all joins if the value does not include an entity name; i.e. {@code
+   * spanner.join_method=HASH_JOIN}.
+   */
+  public static final String JOIN_METHOD = "spanner.join_method";
+
+  /**
+   * Hint that sets which side of a hash join is used as the build side; i.e. {@code
+   * spanner.hash_join_build_side=Album:BUILD_RIGHT}. The entity name can be omitted in the same
+   * way as for {@link #JOIN_METHOD}.
+   */
+  public static final String HASH_JOIN_BUILD_SIDE = "spanner.hash_join_build_side";
+
+  /**
+   * Hint that sets the group method for the group by clauses in a query; i.e. {@code
+   * spanner.group_method=STREAM_GROUP}.
+   */
+  public static final String GROUP_METHOD = "spanner.group_method";
+
+  /**
+   * Hint that sets the optimizer version that Cloud Spanner uses for a query; i.e. {@code
+   * spanner.optimizer_version=5} or {@code spanner.optimizer_version=latest_version}. The default
+   * for all queries of a SessionFactory can be set with {@link #OPTIMIZER_VERSION_PROPERTY}.
+   */
+  public static final String OPTIMIZER_VERSION = "spanner.optimizer_version";
+
+  /**
+   * Hint that sets the optimizer statistics package that Cloud Spanner uses for a query. The
+   * default for all queries of a SessionFactory can be set with {@link
+   * #OPTIMIZER_STATISTICS_PACKAGE_PROPERTY}.
+   */
+  public static final String OPTIMIZER_STATISTICS_PACKAGE = "spanner.optimizer_statistics_package";
+
+  /**
+   * Hint that instructs Cloud Spanner to use additional parallelism for a query; i.e. {@code
+   * spanner.use_additional_parallelism=true}. The default for all queries of a SessionFactory can
+   * be set with {@link #USE_ADDITIONAL_PARALLELISM_PROPERTY}.
+   */
+  public static final String USE_ADDITIONAL_PARALLELISM = "spanner.use_additional_parallelism";
+
+  /**
+   * Hint that executes a query as a partitioned query; i.e. {@code
+   * spanner.partitioned_query=true}. Use {@link SpannerQueries#partitioned} to also set the Data
+   * Boost and parallelism options of the query.
+   */
+  public static final String PARTITIONED_QUERY = "spanner.partitioned_query";
+
+  /**
+   * Hint that executes a query as a single-use read-only transaction with the given timestamp
+   * bound; i.e. {@code spanner.read_only_staleness=max_staleness:10s}. The value is one of {@code
+   * strong}, {@code exact_staleness:<duration>}, {@code max_staleness:<duration>}, {@code
+   * read_timestamp:<timestamp>} or {@code min_read_timestamp:<timestamp>}, where the duration is a
+   * number followed by s, ms, us or ns. The hint only applies to queries that are executed in
+   * autocommit mode, as the read timestamp of a transaction is fixed when the transaction starts.
+   */
+  public static final String READ_ONLY_STALENESS = "spanner.read_only_staleness";
+
+  /**
+   * Hint that sets the RPC priority of a query; i.e. {@code spanner.rpc_priority=LOW}. The value is
+   * one of {@code HIGH}, {@code MEDIUM} or {@code LOW}. The hint overrides the priority of the
+   * session and the connection for this query only.
+   */
+  public static final String RPC_PRIORITY = "spanner.rpc_priority";
+
+  /** Property name for the default optimizer version of all queries of a SessionFactory. */
+  public static final String OPTIMIZER_VERSION_PROPERTY = "hibernate." + OPTIMIZER_VERSION;
+
+  /**
+   * Property name for the default optimizer statistics package of all queries of a SessionFactory.
+   */
+  public static final String OPTIMIZER_STATISTICS_PACKAGE_PROPERTY =
+      "hibernate." + OPTIMIZER_STATISTICS_PACKAGE;
+
+  /**
+   * Property name that enables additional parallelism for all queries of a SessionFactory.
+   */
+  public static final String USE_ADDITIONAL_PARALLELISM_PROPERTY =
+      "hibernate." + USE_ADDITIONAL_PARALLELISM;
+
+  private static final String PREFIX = "spanner.";
+
+  private static final Pattern SEPARATOR = Pattern.compile("\\s+");
+
+  private static final Pattern DURATION = Pattern.compile("(\\d+)(s|ms|us|ns)");
+
+  /** An index name or a statistics package name, optionally prefixed with a schema name. */
+  private static final Pattern IDENTIFIER =
+      Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+  /** The values that are allowed for the hints that are rendered into the SQL string. */
+  private static final Map<String, Pattern> VALID_VALUES = ImmutableMap.of(
+      FORCE_INDEX, IDENTIFIER,
+      JOIN_METHOD, Pattern.compile(
+          "HASH_JOIN|APPLY_JOIN|MERGE_JOIN|PUSH_BROADCAST_HASH_JOIN", Pattern.CASE_INSENSITIVE),
+      HASH_JOIN_BUILD_SIDE, Pattern.compile("BUILD_LEFT|BUILD_RIGHT", Pattern.CASE_INSENSITIVE),
+      GROUP_METHOD, Pattern.compile("HASH_GROUP|STREAM_GROUP", Pattern.CASE_INSENSITIVE),
+      OPTIMIZER_VERSION,
+      Pattern.compile("\\d+|latest_version|default_version", Pattern.CASE_INSENSITIVE),
+      OPTIMIZER_STATISTICS_PACKAGE, IDENTIFIER);
+
+  private SpannerQueryHints() {
+  }
+
+  /**
+   * Returns a hint that forces Cloud Spanner to use the given index for the table of the given
+   * entity.
+   */
+  public static String forceIndex(String entityName, String indexName) {
+    return FORCE_INDEX + "=" + entityName + ":" + indexName;
+  }
+
+  /**
+   * Returns a hint that sets the join method for the joins with the table of the given entity.
+   */
+  public static String joinMethod(String entityName, String joinMethod) {
+    return JOIN_METHOD + "=" + entityName + ":" + joinMethod;
+  }
+
+  /**
+   * Returns a hint that sets the build side of the hash joins with the table of the given entity.
+   */
+  public static String hashJoinBuildSide(String entityName, String buildSide) {
+    return HASH_JOIN_BUILD_SIDE + "=" + entityName + ":" + buildSide;
+  }
+
+  /** Returns a hint that sets the group method for the group by clauses of a query. */
+  public static String groupMethod(String groupMethod) {
+    return GROUP_METHOD + "=" + groupMethod;
+  }
+
+  /** Returns a hint that sets the optimizer version of a query. */
+  public static String optimizerVersion(String optimizerVersion) {
+    return OPTIMIZER_VERSION + "=" + optimizerVersion;
+  }
+
+  /** Returns a hint that sets the optimizer statistics package of a query. */
+  public static String optimizerStatisticsPackage(String statisticsPackage) {
+    return OPTIMIZER_STATISTICS_PACKAGE + "=" + statisticsPackage;
+  }
+
+  /** Returns a hint that enables or disables additional parallelism for a query. */
+  public static String useAdditionalParallelism(boolean useAdditionalParallelism) {
+    return USE_ADDITIONAL_PARALLELISM + "=" + useAdditionalParallelism;
+  }
+
+  /** Returns a hint that executes a query as a partitioned query. */
+  public static String partitionedQuery(boolean partitionedQuery) {
+    return PARTITIONED_QUERY + "=" + partitionedQuery;
+  }
+
+  /**
+   * Returns a hint that executes a query as a single-use read-only transaction with the given
+   * timestamp bound.
+   */
+  public static String readOnlyStaleness(TimestampBound timestampBound) {
+    switch (timestampBound.getMode()) {
+      case EXACT_STALENESS:
+        return READ_ONLY_STALENESS + "=exact_staleness:"
+            + timestampBound.getExactStaleness(TimeUnit.NANOSECONDS) + "ns";
+      case MAX_STALENESS:
+        return READ_ONLY_STALENESS + "=max_staleness:"
+            + timestampBound.getMaxStaleness(TimeUnit.NANOSECONDS) + "ns";
+      case READ_TIMESTAMP:
+        return READ_ONLY_STALENESS + "=read_timestamp:" + timestampBound.getReadTimestamp();
+      case MIN_READ_TIMESTAMP:
+        return READ_ONLY_STALENESS + "=min_read_timestamp:" + timestampBound.getMinReadTimestamp();
+      default:
+        return READ_ONLY_STALENESS + "=strong";
+    }
+  }
+
+  /** Returns a hint that sets the RPC priority of a query. */
+  public static String rpcPriority(RpcPriority rpcPriority) {
+    return RPC_PRIORITY + "=" + rpcPriority.name();
+  }
+
+  /**
+   * Returns the timestamp bound of the read-only staleness hint in the given hints, or null if
+   * there is no such hint.
+   */
+  static TimestampBound getReadOnlyStaleness(List<String> hints) {
+    List<String> values = getValues(hints, READ_ONLY_STALENESS);
+    if (values.isEmpty()) {
+      return null;
+    }
+    String value = values.get(values.size() - 1);
+    int separator = value.indexOf(':');
+    String mode = (separator == -1 ? value : value.substring(0, separator))
+        .toLowerCase(Locale.ENGLISH);
+    String argument = separator == -1 ? "" : value.substring(separator + 1);
+    try {
+      switch (mode) {
+        case "strong":
+          return TimestampBound.strong();
+        case "exact_staleness":
+          return TimestampBound.ofExactStaleness(parseDuration(argument), TimeUnit.NANOSECONDS);
+        case "max_staleness":
+          return TimestampBound.ofMaxStaleness(parseDuration(argument), TimeUnit.NANOSECONDS);
+        case "read_timestamp":
+          return TimestampBound.ofReadTimestamp(Timestamp.parseTimestamp(argument));
+        case "min_read_timestamp":
+          return TimestampBound.ofMinReadTimestamp(Timestamp.parseTimestamp(argument));
+        default:
+          break;
+      }
+    } catch (IllegalArgumentException | DateTimeParseException exception) {
+      // Fall through and report the invalid value.
+    }
+    throw new IllegalArgumentException("Invalid read-only staleness: " + value);
+  }
+
+  /**
+   * Returns the RPC priority of the priority hint in the given hints, or null if there is no such
+   * hint.
+   */
+  static RpcPriority getRpcPriority(List<String> hints) {
+    List<String> values = getValues(hints, RPC_PRIORITY);
+    if (values.isEmpty()) {
+      return null;
+    }
+    String value = values.get(values.size() - 1);
+    try {
+      return RpcPriority.valueOf(value.toUpperCase(Locale.ENGLISH));
+    } catch (IllegalArgumentException exception) {
+      throw new IllegalArgumentException("Invalid RPC priority: " + value);
+    }
+  }
+
+  private static long parseDuration(String duration) {
+    Matcher matcher = DURATION.matcher(duration);
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("Invalid duration: " + duration);
+    }
+    long value = Long.parseLong(matcher.group(1));
+    switch (matcher.group(2)) {
+      case "s":
+        return TimeUnit.SECONDS.toNanos(value);
+      case "ms":
+        return TimeUnit.MILLISECONDS.toNanos(value);
+      case "us":
+        return TimeUnit.MICROSECONDS.toNanos(value);
+      default:
+        return value;
+    }
+  }
+
+  /** Returns true if the given hints contain a hint to execute a query as a partitioned query. */
+  static boolean isPartitionedQuery(List<String> hints) {
+    List<String> values = getValues(hints, PARTITIONED_QUERY);
+    return !values.isEmpty() && Boolean.parseBoolean(values.get(values.size() - 1));
+  }
+
+  /**
+   * Returns the default values of the statement hints from the given configuration settings. The
+   * returned map only contains the settings that are used by {@link #getStatementHint(List, Map)}.
+   */
+  static Map<String, Object> getStatementHintDefaults(Map<String, Object> settings) {
+    Map<String, Object> defaults = new HashMap<>();
+    for (String name : new String[] {
+        OPTIMIZER_VERSION, OPTIMIZER_STATISTICS_PACKAGE, USE_ADDITIONAL_PARALLELISM}) {
+      Object value = settings.get("hibernate." + name);
+      if (value != null) {
+        defaults.put("hibernate." + name, value);
+      }
+    }
+    return defaults;
+  }
+
+  /**
+   * Returns the statement hint for a query, i.e. {@code @{OPTIMIZER_VERSION=5}}, or null if the
+   * query has no statement hints. Hints of the query override the defaults in the given settings.
+   */
+  static String getStatementHint(List<String> hints, Map<String, Object> settings) {
+    List<String> statementHints = new ArrayList<>();
+    addStatementHint(hints, settings, OPTIMIZER_VERSION, false, statementHints);
+    addStatementHint(hints, settings, OPTIMIZER_STATISTICS_PACKAGE, false, statementHints);
+    addStatementHint(hints, settings, USE_ADDITIONAL_PARALLELISM, true, statementHints);
+    return statementHints.isEmpty() ? null : "@{" + String.join(", ", statementHints) + "}";
+  }
+
+  private static void addStatementHint(List<String> hints, Map<String, Object> settings,
+      String name, boolean isBoolean, List<String> statementHints) {
+    List<String> values = getValues(hints, name);
+    Object value = values.isEmpty()
+        ? settings.get("hibernate." + name)
+        : values.get(values.size() - 1);
+    if (value == null || value.toString().isEmpty()) {
+      return;
+    }
+    String hintValue = isBoolean
+        ? String.valueOf(Boolean.parseBoolean(value.toString())).toUpperCase(Locale.ENGLISH)
+        : checkValue(name, value.toString());
+    statementHints.add(
+        name.substring(PREFIX.length()).toUpperCase(Locale.ENGLISH) + "=" + hintValue);
+  }
+
+  /** Returns the Cloud Spanner hints in the comment and the database hints of a query. */
+  static List<String> getHints(QueryOptions queryOptions) {
+    List<String> hints = new ArrayList<>();
+    addHints(queryOptions.getComment(), hints);
+    if (queryOptions.getDatabaseHints() != null) {
+      for (String databaseHint : queryOptions.getDatabaseHints()) {
+        addHints(databaseHint, hints);
+      }
+    }
+    return hints.isEmpty() ? Collections.emptyList() : hints;
+  }
+
+  private static void addHints(String text, List<String> hints) {
+    if (text == null || !text.contains(PREFIX)) {
+      return;
+    }
+    for (String hint : SEPARATOR.split(text.trim())) {
+      if (hint.startsWith(PREFIX) && hint.indexOf('=') > PREFIX.length()) {
+        hints.add(hint);
+      }
+    }
+  }
+
+  /** Returns the values of all hints with the given name. */
+  static List<String> getValues(List<String> hints, String name) {
+    List<String> result = new ArrayList<>();
+    for (String hint : hints) {
+      String value = getValue(hint, name);
+      if (value != null) {
+        result.add(value);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the values of all hints with the given name, split into key/value pairs at the first
+   * colon; i.e. {@code Singer:idx_singer_last_name}. Values without a key are added with an empty
+   * key if {@code allowEmptyKey} is true, and are otherwise ignored.
+   */
+  static Map<String, String> getKeyValueHints(
+      List<String> hints, String name, boolean allowEmptyKey) {
+    Map<String, String> result = new LinkedHashMap<>();
+    for (String value : getValues(hints, name)) {
+      int separator = value.indexOf(':');
+      if (separator > 0 && separator < value.length() - 1) {
+        result.put(value.substring(0, separator), checkValue(name, value.substring(separator + 1)));
+      } else if (separator == -1 && allowEmptyKey) {
+        result.put("", checkValue(name, value));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the last group method hint in the given hints, or null if there is no such hint.
+   */
+  static String getGroupMethod(List<String> hints) {
+    List<String> values = getValues(hints, GROUP_METHOD);
+    return values.isEmpty() ? null : checkValue(GROUP_METHOD, values.get(values.size() - 1));
+  }
+
+  /**
+   * Checks that the given value of a hint that is rendered into the SQL string is a valid value
+   * for the hint, so the hint cannot change the meaning of the SQL string.
+   */
+  static String checkValue(String name, String value) {
+    Pattern validValues = VALID_VALUES.get(name);
+    if (validValues != null && !validValues.matcher(value).matches()) {
+      throw new IllegalArgumentException("Invalid value for hint " + name + ": " + value);
+    }
+    return value;
+  }
+
+  private static String getValue(String hint, String name) {
+    int equals = hint.indexOf('=');
+    return hint.substring(0, equals).equals(name) ? hint.substring(equals + 1) : null;
+  }
+}
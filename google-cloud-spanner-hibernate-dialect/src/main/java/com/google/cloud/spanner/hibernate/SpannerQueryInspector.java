@@ -0,0 +1,633 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package com.google.cloud.spanner.hibernate;
+
+import com.google.cloud.spanner.ReadContext.QueryAnalyzeMode;
+import com.google.cloud.spanner.ResultSet;
+import com.google.cloud.spanner.Statement;
+import com.google.cloud.spanner.jdbc.CloudSpannerJdbcConnection;
+import com.google.cloud.spanner.jdbc.CloudSpannerJdbcPreparedStatement;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.Struct;
+import com.google.spanner.v1.PlanNode;
+import com.google.spanner.v1.ResultSetStats;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.metamodel.mapping.MappingModelExpressible;
+import org.hibernate.query.Query;
+import org.hibernate.query.spi.QueryOptions;
+import org.hibernate.query.spi.QueryParameterBindings;
+import org.hibernate.query.sqm.internal.QuerySqmImpl;
+import org.hibernate.query.sqm.internal.SqmUtil;
+import org.hibernate.query.sqm.spi.SqmParameterMappingModelResolutionAccess;
+import org.hibernate.query.sqm.sql.SqmTranslation;
+import org.hibernate.query.sqm.tree.expression.SqmParameter;
+import org.hibernate.query.sqm.tree.select.SqmSelectStatement;
+import org.hibernate.sql.ast.tree.select.SelectStatement;
+import org.hibernate.sql.exec.internal.BaseExecutionContext;
+import org.hibernate.sql.exec.spi.ExecutionContext;
+import org.hibernate.sql.exec.spi.JdbcOperationQuerySelect;
+import org.hibernate.sql.exec.spi.JdbcParameterBinder;
+import org.hibernate.sql.exec.spi.JdbcParameterBindings;
+import org.jboss.logging.Logger;
+
+/**
+ * Shows how Cloud Spanner executes the queries of an application. {@link #explain(Query,
+ * QueryAnalyzeMode)} translates a query to SQL and lets Cloud Spanner return the query plan in
+ * PLAN mode, or the query plan with the row counts and latencies of each step in PROFILE mode.
+ * {@link #format(ResultSetStats)} renders the plan as an indented tree.
+ *
+ * <p>Set {@link #SLOW_QUERY_THRESHOLD} to log queries that take longer than the given number of
+ * milliseconds. A sample of the slow queries, see {@link #SLOW_QUERY_SAMPLE_RATE}, is executed a
+ * second time in PROFILE mode on a background thread, and the profile is logged as a warning
+ * together with the query. The background thread profiles one query at a time, and slow queries
+ * are skipped while its queue is full, so profiling never delays the application.
+ *
+ * <p>The queries are analyzed in a single-use read-only transaction on a connection of the
+ * {@link ConnectionProvider} of the session factory. The version of the Cloud Spanner JDBC driver
+ * that this dialect is built with does not have a public API for query plans, so the inspector
+ * uses the Cloud Spanner connection and statement of the driver that are not public. These have
+ * been verified with version {@value #VERIFIED_DRIVER_VERSION} of the driver, and a warning is
+ * logged if a different version is used.
+ */
+public final class SpannerQueryInspector {
+
+  /**
+   * Property name that can be used to set the number of milliseconds after which a query is
+   * considered slow. Slow queries are not logged by default.
+   */
+  public static final String SLOW_QUERY_THRESHOLD = "hibernate.spanner.slow_query_threshold_ms";
+
+  /**
+   * Property name that can be used to set the fraction of the slow queries that are profiled and
+   * logged. The value must be between 0 and 1. The default is 0.01, which profiles one out of
+   * every hundred slow queries.
+   */
+  public static final String SLOW_QUERY_SAMPLE_RATE = "hibernate.spanner.slow_query_sample_rate";
+
+  static final String DEFAULT_SLOW_QUERY_SAMPLE_RATE = "0.01";
+
+  /**
+   * The version of the Cloud Spanner JDBC driver that the methods of the driver that are not public
+   * have been verified with. This must be updated together with the version of the driver in the
+   * build.
+   */
+  static final String VERIFIED_DRIVER_VERSION = "2.15.1";
+
+  private static final Logger log = Logger.getLogger(SpannerQueryInspector.class);
+
+  /** The package-private method of the driver that returns the bound statement. */
+  private static final Method CREATE_STATEMENT =
+      findDriverMethod("com.google.cloud.spanner.jdbc.JdbcPreparedStatement", "createStatement");
+
+  /** The package-private method of the driver that returns the Cloud Spanner connection. */
+  private static final Method GET_SPANNER_CONNECTION =
+      findDriverMethod(
+          "com.google.cloud.spanner.jdbc.AbstractJdbcConnection", "getSpannerConnection");
+
+  /** Whether a warning has been logged for a driver version that has not been verified. */
+  private static final AtomicBoolean driverVersionChecked = new AtomicBoolean();
+
+  /** The slow query listeners of the open sessions that have executed a slow query binder. */
+  private static final Map<SharedSessionContractImplementor, SlowQueryListener> LISTENERS =
+      new ConcurrentHashMap<>();
+
+  /** The maximum number of slow queries that are waiting to be profiled. */
+  private static final int PROFILER_QUEUE_SIZE = 16;
+
+  private static final ThreadPoolExecutor profiler = createProfiler();
+
+  private static final String INDENT = "  ";
+
+  /** The execution statistics of a plan node that are included in a formatted plan. */
+  private static final String[] EXECUTION_STATS = {"rows", "latency", "cpu_time"};
+
+  /**
+   * Binder that registers a query with the slow query listener of the session after all
+   * parameters of the query have been bound. The parameters are only bound again if the query
+   * turns out to be slow.
+   */
+  static class SlowQueryBinder implements SpannerDelegatingBinder {
+
+    private final JdbcParameterBinder delegate;
+
+    private final String sql;
+
+    private final List<JdbcParameterBinder> parameterBinders;
+
+    private final long thresholdMillis;
+
+    private final double sampleRate;
+
+    SlowQueryBinder(
+        JdbcParameterBinder delegate,
+        String sql,
+        List<JdbcParameterBinder> parameterBinders,
+        long thresholdMillis,
+        double sampleRate) {
+      this.delegate = delegate;
+      this.sql = sql;
+      this.parameterBinders = parameterBinders;
+      this.thresholdMillis = thresholdMillis;
+      this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public JdbcParameterBinder getDelegate() {
+      return delegate;
+    }
+
+    @Override
+    public void bindParameterValue(
+        PreparedStatement statement,
+        int startPosition,
+        JdbcParameterBindings jdbcParameterBindings,
+        ExecutionContext executionContext) throws SQLException {
+      if (delegate != null) {
+        delegate.bindParameterValue(
+            statement, startPosition, jdbcParameterBindings, executionContext);
+      }
+      Connection connection = statement.getConnection();
+      if (!connection.isWrapperFor(CloudSpannerJdbcConnection.class)) {
+        return;
+      }
+      getListener(executionContext.getSession())
+          .start(this, connection, jdbcParameterBindings, executionContext);
+    }
+
+    /**
+     * Submits the query to the background profiler if it is slow and sampled. The parameters are
+     * bound to a new statement on the current thread, as the bindings are only valid while the
+     * query is being executed.
+     */
+    private void profileIfSlow(
+        Connection connection,
+        JdbcParameterBindings jdbcParameterBindings,
+        ExecutionContext executionContext,
+        long elapsedNanos) {
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+      if (elapsedMillis < thresholdMillis
+          || (sampleRate < 1d && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+        return;
+      }
+      SessionFactoryImplementor sessionFactory = executionContext.getSession().getFactory();
+      try {
+        Statement statement = createStatement(
+            connection, sql, parameterBinders, jdbcParameterBindings, executionContext);
+        profiler.execute(() -> profile(sessionFactory, statement, elapsedMillis));
+      } catch (RejectedExecutionException exception) {
+        log.debugf("Skipped profiling slow query, as the profiler is busy: %s", sql);
+      } catch (SQLException | RuntimeException exception) {
+        log.warnf(
+            "Slow query took %d ms: %s%nCould not profile query: %s",
+            elapsedMillis, sql, exception.getMessage());
+      }
+    }
+
+    private void profile(
+        SessionFactoryImplementor sessionFactory, Statement statement, long elapsedMillis) {
+      // The connection provider is stopped when the session factory is closed.
+      if (sessionFactory.isClosed()) {
+        return;
+      }
+      try {
+        ResultSetStats stats = analyze(
+            sessionFactory.getServiceRegistry().getService(ConnectionProvider.class),
+            statement,
+            QueryAnalyzeMode.PROFILE);
+        log.warnf("Slow query took %d ms: %s%n%s", elapsedMillis, sql, format(stats));
+      } catch (SQLException | RuntimeException exception) {
+        log.warnf(
+            "Slow query took %d ms: %s%nCould not profile query: %s",
+            elapsedMillis, sql, exception.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Measures the execution time of the queries of a session that have a slow query binder. Each
+   * session has one listener, which is registered when the session executes its first query with
+   * a slow query binder, and removed when the session is closed.
+   */
+  private static class SlowQueryListener extends BaseSessionEventListener {
+
+    private final SharedSessionContractImplementor session;
+
+    private transient SlowQueryBinder binder;
+
+    private transient Connection connection;
+
+    private transient JdbcParameterBindings jdbcParameterBindings;
+
+    private transient ExecutionContext executionContext;
+
+    private transient long startNanos;
+
+    SlowQueryListener(SharedSessionContractImplementor session) {
+      this.session = session;
+    }
+
+    void start(
+        SlowQueryBinder binder,
+        Connection connection,
+        JdbcParameterBindings jdbcParameterBindings,
+        ExecutionContext executionContext) {
+      this.binder = binder;
+      this.connection = connection;
+      this.jdbcParameterBindings = jdbcParameterBindings;
+      this.executionContext = executionContext;
+      this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+      startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+      if (binder == null) {
+        return;
+      }
+      long elapsedNanos = System.nanoTime() - startNanos;
+      try {
+        binder.profileIfSlow(connection, jdbcParameterBindings, executionContext, elapsedNanos);
+      } finally {
+        binder = null;
+        connection = null;
+        jdbcParameterBindings = null;
+        executionContext = null;
+      }
+    }
+
+    @Override
+    public void end() {
+      LISTENERS.remove(session);
+    }
+  }
+
+  private SpannerQueryInspector() {
+  }
+
+  /**
+   * Returns the query plan of the given query. This is the same as calling {@link #explain(Query,
+   * QueryAnalyzeMode)} with {@link QueryAnalyzeMode#PLAN}.
+   */
+  public static ResultSetStats explain(Query<?> query) {
+    return explain(query, QueryAnalyzeMode.PLAN);
+  }
+
+  /**
+   * Translates the given query to SQL and executes it on Cloud Spanner in the given mode. The
+   * query must be an HQL, JPQL or criteria select query, and all of its parameters must be bound.
+   *
+   * @param query the query that should be analyzed
+   * @param mode PLAN to only return the query plan, or PROFILE to execute the query and return
+   *     the query plan with the execution statistics of each step
+   * @return the query plan and the statistics of the query
+   */
+  public static ResultSetStats explain(Query<?> query, QueryAnalyzeMode mode) {
+    if (!(query instanceof QuerySqmImpl)
+        || !(((QuerySqmImpl<?>) query).getSqmStatement() instanceof SqmSelectStatement)) {
+      throw new IllegalArgumentException(
+          "Only HQL, JPQL and criteria select queries can be explained");
+    }
+    QuerySqmImpl<?> sqmQuery = (QuerySqmImpl<?>) query;
+    sqmQuery.getQueryParameterBindings().validate();
+    SharedSessionContractImplementor session = sqmQuery.getSession();
+    SessionFactoryImplementor sessionFactory = session.getFactory();
+    SqmTranslation<SelectStatement> translation =
+        sessionFactory.getQueryEngine().getSqmTranslatorFactory()
+            .createSelectTranslator(
+                (SqmSelectStatement<?>) sqmQuery.getSqmStatement(),
+                sqmQuery.getQueryOptions(),
+                sqmQuery.getDomainParameterXref(),
+                sqmQuery.getQueryParameterBindings(),
+                session.getLoadQueryInfluencers(),
+                sessionFactory,
+                true)
+            .translate();
+    JdbcParameterBindings jdbcParameterBindings = SqmUtil.createJdbcParameterBindings(
+        sqmQuery.getQueryParameterBindings(),
+        sqmQuery.getDomainParameterXref(),
+        SqmUtil.generateJdbcParamsXref(
+            sqmQuery.getDomainParameterXref(), translation::getJdbcParamsBySqmParam),
+        sessionFactory.getRuntimeMetamodels().getMappingMetamodel(),
+        translation.getFromClauseAccess()::findTableGroup,
+        new SqmParameterMappingModelResolutionAccess() {
+          @Override
+          @SuppressWarnings("unchecked")
+          public <T> MappingModelExpressible<T> getResolvedMappingModelType(
+              SqmParameter<T> parameter) {
+            return (MappingModelExpressible<T>)
+                translation.getSqmParameterMappingModelTypeResolutions().get(parameter);
+          }
+        },
+        session);
+    JdbcOperationQuerySelect select =
+        sessionFactory.getJdbcServices().getJdbcEnvironment().getSqlAstTranslatorFactory()
+            .buildSelectTranslator(sessionFactory, translation.getSqlAst())
+            .translate(jdbcParameterBindings, sqmQuery.getQueryOptions());
+    ExecutionContext executionContext = new BaseExecutionContext(session) {
+      @Override
+      public QueryOptions getQueryOptions() {
+        return sqmQuery.getQueryOptions();
+      }
+
+      @Override
+      public QueryParameterBindings getQueryParameterBindings() {
+        return sqmQuery.getQueryParameterBindings();
+      }
+    };
+    // Bind the parameters with the original binders, so the hints of the query do not change the
+    // settings of the connection.
+    List<JdbcParameterBinder> parameterBinders = new ArrayList<>();
+    for (JdbcParameterBinder binder : select.getParameterBinders()) {
+      JdbcParameterBinder unwrapped = SpannerDelegatingBinder.unwrap(binder);
+      if (unwrapped != null) {
+        parameterBinders.add(unwrapped);
+      }
+    }
+    ConnectionProvider connectionProvider =
+        sessionFactory.getServiceRegistry().getService(ConnectionProvider.class);
+    try {
+      Connection connection = connectionProvider.getConnection();
+      try {
+        Statement statement = createStatement(
+            connection,
+            select.getSqlString(),
+            parameterBinders,
+            jdbcParameterBindings,
+            executionContext);
+        return analyze(connection, statement, mode);
+      } finally {
+        connectionProvider.closeConnection(connection);
+      }
+    } catch (SQLException exception) {
+      throw session.getJdbcServices().getSqlExceptionHelper()
+          .convert(exception, "Failed to explain query", select.getSqlString());
+    }
+  }
+
+  /**
+   * Renders the query plan of the given statistics as a tree of the relational operators of the
+   * plan. Each operator shows the number of rows and the latency of the operator if the query was
+   * executed in PROFILE mode. The statistics of the query as a whole are added after the plan.
+   */
+  public static String format(ResultSetStats stats) {
+    StringBuilder result = new StringBuilder();
+    if (stats.getQueryPlan().getPlanNodesCount() > 0) {
+      appendPlanNode(result, stats.getQueryPlan().getPlanNodesList(), 0, 0);
+    }
+    for (Map.Entry<String, com.google.protobuf.Value> entry :
+        new TreeMap<>(stats.getQueryStats().getFieldsMap()).entrySet()) {
+      result.append(entry.getKey()).append(": ").append(toString(entry.getValue())).append('\n');
+    }
+    return result.toString();
+  }
+
+  private static void appendPlanNode(
+      StringBuilder result, List<PlanNode> nodes, int index, int depth) {
+    PlanNode node = nodes.get(index);
+    for (int i = 0; i < depth; i++) {
+      result.append(INDENT);
+    }
+    result.append(node.getDisplayName());
+    Map<String, com.google.protobuf.Value> metadata = node.getMetadata().getFieldsMap();
+    if (metadata.containsKey("scan_target")) {
+      result.append(": ").append(toString(metadata.get("scan_target")));
+    }
+    List<String> executionStats = new ArrayList<>();
+    for (String name : EXECUTION_STATS) {
+      com.google.protobuf.Value value = node.getExecutionStats().getFieldsMap().get(name);
+      if (value != null && value.hasStructValue()) {
+        executionStats.add(name + ": " + formatExecutionStat(value.getStructValue()));
+      }
+    }
+    if (!executionStats.isEmpty()) {
+      result.append(" (").append(String.join(", ", executionStats)).append(')');
+    }
+    result.append('\n');
+    for (PlanNode.ChildLink child : node.getChildLinksList()) {
+      if (child.getChildIndex() < nodes.size()
+          && nodes.get(child.getChildIndex()).getKind() == PlanNode.Kind.RELATIONAL) {
+        appendPlanNode(result, nodes, child.getChildIndex(), depth + 1);
+      }
+    }
+  }
+
+  /** Formats an execution statistic like {"total": "3", "unit": "rows"} as "3 rows". */
+  private static String formatExecutionStat(Struct stat) {
+    com.google.protobuf.Value total = stat.getFieldsMap().get("total");
+    com.google.protobuf.Value unit = stat.getFieldsMap().get("unit");
+    String result = total == null ? "" : toString(total);
+    return unit == null ? result : (result + " " + toString(unit)).trim();
+  }
+
+  private static String toString(com.google.protobuf.Value value) {
+    switch (value.getKindCase()) {
+      case STRING_VALUE:
+        return value.getStringValue();
+      case NUMBER_VALUE:
+        return String.valueOf(value.getNumberValue());
+      case BOOL_VALUE:
+        return String.valueOf(value.getBoolValue());
+      default:
+        return "";
+    }
+  }
+
+  /**
+   * Binds the parameters of a query to a statement of the given JDBC connection, and returns the
+   * statement with the bound parameters as it would be sent to Cloud Spanner.
+   */
+  private static Statement createStatement(
+      Connection connection,
+      String sql,
+      List<JdbcParameterBinder> parameterBinders,
+      JdbcParameterBindings jdbcParameterBindings,
+      ExecutionContext executionContext) throws SQLException {
+    try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+      int position = 1;
+      for (JdbcParameterBinder binder : parameterBinders) {
+        binder.bindParameterValue(
+            preparedStatement, position++, jdbcParameterBindings, executionContext);
+      }
+      return (Statement) invokeDriverMethod(
+          CREATE_STATEMENT, preparedStatement.unwrap(CloudSpannerJdbcPreparedStatement.class));
+    }
+  }
+
+  private static ResultSetStats analyze(
+      ConnectionProvider connectionProvider, Statement statement, QueryAnalyzeMode mode)
+      throws SQLException {
+    Connection connection = connectionProvider.getConnection();
+    try {
+      return analyze(connection, statement, mode);
+    } finally {
+      connectionProvider.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Analyzes the given statement in a single-use read-only transaction on the Cloud Spanner
+   * connection of the given JDBC connection. The connection must not have an active transaction.
+   */
+  private static ResultSetStats analyze(
+      Connection jdbcConnection, Statement statement, QueryAnalyzeMode mode) throws SQLException {
+    checkDriverVersion();
+    com.google.cloud.spanner.connection.Connection connection =
+        (com.google.cloud.spanner.connection.Connection) invokeDriverMethod(
+            GET_SPANNER_CONNECTION, jdbcConnection.unwrap(CloudSpannerJdbcConnection.class));
+    boolean autoCommit = jdbcConnection.getAutoCommit();
+    if (!autoCommit) {
+      jdbcConnection.setAutoCommit(true);
+    }
+    try (ResultSet resultSet = connection.analyzeQuery(statement, mode)) {
+      // The statistics are returned together with the last rows of the query.
+      while (resultSet.next()) {
+        // Ignore the rows.
+      }
+      return resultSet.getStats();
+    } finally {
+      if (!autoCommit) {
+        jdbcConnection.setAutoCommit(false);
+      }
+    }
+  }
+
+  /**
+   * Logs a warning the first time that a query is analyzed with a version of the JDBC driver that
+   * the methods of the driver that are not public have not been verified with.
+   */
+  private static void checkDriverVersion() {
+    String driverVersion = getDriverVersion();
+    if (driverVersion != null
+        && !VERIFIED_DRIVER_VERSION.equals(driverVersion)
+        && driverVersionChecked.compareAndSet(false, true)) {
+      log.warnf(
+          "Analyzing queries has been verified with version %s of the Cloud Spanner JDBC driver, "
+              + "but version %s is used",
+          VERIFIED_DRIVER_VERSION, driverVersion);
+    }
+  }
+
+  /**
+   * Returns the version of the JDBC driver from the manifest of the driver, or null if the driver
+   * has no manifest. The driver itself always reports version 2.0.
+   */
+  @VisibleForTesting
+  static String getDriverVersion() {
+    Package driverPackage = CloudSpannerJdbcConnection.class.getPackage();
+    return driverPackage == null ? null : driverPackage.getImplementationVersion();
+  }
+
+  /**
+   * Returns the given method of the JDBC driver that is not part of its public API, or null if the
+   * driver does not have the method.
+   */
+  @VisibleForTesting
+  static Method findDriverMethod(String className, String methodName) {
+    try {
+      Method method =
+          Class.forName(className, false, CloudSpannerJdbcConnection.class.getClassLoader())
+              .getDeclaredMethod(methodName);
+      method.setAccessible(true);
+      return method;
+    } catch (ReflectiveOperationException | RuntimeException exception) {
+      log.debugf(exception, "The Cloud Spanner JDBC driver has no method %s", methodName);
+      return null;
+    }
+  }
+
+  /** Invokes a method of the JDBC driver that is not part of its public API. */
+  private static Object invokeDriverMethod(Method method, Object target) throws SQLException {
+    if (method == null) {
+      throw new IllegalStateException(
+          "Analyzing queries requires version "
+              + VERIFIED_DRIVER_VERSION
+              + " of the Cloud Spanner JDBC driver, but the driver does not support it");
+    }
+    try {
+      return method.invoke(target);
+    } catch (IllegalAccessException exception) {
+      throw new IllegalStateException(
+          "The Cloud Spanner JDBC driver does not support analyzing queries", exception);
+    } catch (InvocationTargetException exception) {
+      if (exception.getCause() instanceof SQLException) {
+        throw (SQLException) exception.getCause();
+      }
+      if (exception.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) exception.getCause();
+      }
+      throw new IllegalStateException(exception.getCause());
+    }
+  }
+
+  private static SlowQueryListener getListener(SharedSessionContractImplementor session) {
+    return LISTENERS.computeIfAbsent(
+        session,
+        key -> {
+          SlowQueryListener listener = new SlowQueryListener(key);
+          key.getEventListenerManager().addListener(listener);
+          return listener;
+        });
+  }
+
+  /** Returns true if the background profiler is not profiling or waiting to profile a query. */
+  @VisibleForTesting
+  static boolean isProfilerIdle() {
+    return profiler.getActiveCount() == 0 && profiler.getQueue().isEmpty();
+  }
+
+  private static ThreadPoolExecutor createProfiler() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        1,
+        1,
+        60L,
+        TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(PROFILER_QUEUE_SIZE),
+        runnable -> {
+          Thread thread = new Thread(runnable, "spanner-slow-query-profiler");
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
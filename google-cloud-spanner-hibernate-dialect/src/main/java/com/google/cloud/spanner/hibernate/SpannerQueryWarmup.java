@@ -0,0 +1,221 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package com.google.cloud.spanner.hibernate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.query.Query;
+import org.hibernate.query.sql.spi.NativeQueryImplementor;
+import org.hibernate.query.sqm.internal.QuerySqmImpl;
+import org.hibernate.query.sqm.tree.select.SqmSelectStatement;
+import org.hibernate.sql.ast.tree.select.SelectStatement;
+import org.hibernate.sql.exec.spi.JdbcParameterBindings;
+import org.jboss.logging.Logger;
+
+/**
+ * Sends queries to Cloud Spanner in PLAN mode when the application starts. This lets Cloud
+ * Spanner compile and cache the query plans, and initializes the sessions and channels of the JDBC
+ * driver, before the application receives its first requests.
+ *
+ * <p>Set {@link #WARMUP_NAMED_QUERIES} to {@code true} to automatically plan all named queries
+ * when the session factory is created. Other queries, for example the queries of Spring Data
+ * repositories, can be planned with {@link #warmup(SessionFactory, Collection)}.
+ */
+public final class SpannerQueryWarmup {
+
+  /**
+   * Property name that can be used to plan all named HQL, JPQL and native queries when the
+   * session factory is created. This is disabled by default.
+   */
+  public static final String WARMUP_NAMED_QUERIES = "hibernate.spanner.warmup_named_queries";
+
+  /**
+   * Property name that can be used to set the number of queries that are planned in parallel.
+   * The default is 4.
+   */
+  public static final String WARMUP_PARALLELISM = "hibernate.spanner.warmup_parallelism";
+
+  private static final int DEFAULT_PARALLELISM = 4;
+
+  private static final Logger log = Logger.getLogger(SpannerQueryWarmup.class);
+
+  private SpannerQueryWarmup() {
+  }
+
+  /**
+   * Plans all named queries of the given session factory if {@link #WARMUP_NAMED_QUERIES} is
+   * enabled.
+   */
+  static void warmupNamedQueriesIfEnabled(SessionFactoryImplementor sessionFactory) {
+    Map<String, Object> settings = sessionFactory.getProperties();
+    if (!ConfigurationHelper.getBoolean(WARMUP_NAMED_QUERIES, settings, false)) {
+      return;
+    }
+    Set<String> names = new LinkedHashSet<>();
+    sessionFactory.getQueryEngine().getNamedObjectRepository()
+        .visitSqmQueryMementos(memento -> names.add(memento.getRegistrationName()));
+    sessionFactory.getQueryEngine().getNamedObjectRepository()
+        .visitNativeQueryMementos(memento -> names.add(memento.getRegistrationName()));
+    int planned = warmup(sessionFactory, names, session -> session::createNamedQuery);
+    log.debugf("Planned %d of %d named queries", planned, names.size());
+  }
+
+  /**
+   * Translates the given HQL or JPQL queries to SQL and sends these to Cloud Spanner in PLAN mode.
+   * Queries that cannot be translated or planned are logged and skipped. Only select queries are
+   * planned.
+   *
+   * @param sessionFactory the session factory that should be used to translate the queries
+   * @param queries the HQL or JPQL queries that should be planned
+   * @return the number of queries that were planned successfully
+   */
+  public static int warmup(SessionFactory sessionFactory, Collection<String> queries) {
+    return warmup(
+        sessionFactory.unwrap(SessionFactoryImplementor.class),
+        queries,
+        session -> session::createQuery);
+  }
+
+  private static int warmup(
+      SessionFactoryImplementor sessionFactory,
+      Collection<String> queries,
+      Function<SessionImplementor, Function<String, Query<?>>> queryFactory) {
+    if (queries.isEmpty()) {
+      return 0;
+    }
+    // Translate all queries on this thread, and then plan the SQL strings in parallel.
+    List<String> sqlStrings = new ArrayList<>(queries.size());
+    try (SessionImplementor session =
+        sessionFactory.openSession().unwrap(SessionImplementor.class)) {
+      Function<String, Query<?>> createQuery = queryFactory.apply(session);
+      for (String query : queries) {
+        try {
+          String sql = translate(session, createQuery.apply(query));
+          if (sql != null) {
+            sqlStrings.add(sql);
+          }
+        } catch (RuntimeException exception) {
+          log.warnf("Could not translate query %s for warmup: %s", query, exception.getMessage());
+        }
+      }
+    }
+    return plan(sessionFactory, sqlStrings);
+  }
+
+  /** Returns the SQL string of the given query, or null if it is not a select query. */
+  private static String translate(SessionImplementor session, Query<?> query) {
+    if (query instanceof NativeQueryImplementor) {
+      return query.getQueryString();
+    }
+    if (!(query instanceof QuerySqmImpl)
+        || !(((QuerySqmImpl<?>) query).getSqmStatement() instanceof SqmSelectStatement)) {
+      return null;
+    }
+    QuerySqmImpl<?> sqmQuery = (QuerySqmImpl<?>) query;
+    SessionFactoryImplementor sessionFactory = session.getFactory();
+    SelectStatement selectStatement =
+        sessionFactory.getQueryEngine().getSqmTranslatorFactory()
+            .createSelectTranslator(
+                (SqmSelectStatement<?>) sqmQuery.getSqmStatement(),
+                sqmQuery.getQueryOptions(),
+                sqmQuery.getDomainParameterXref(),
+                sqmQuery.getQueryParameterBindings(),
+                session.getLoadQueryInfluencers(),
+                sessionFactory,
+                true)
+            .translate()
+            .getSqlAst();
+    return sessionFactory.getJdbcServices().getJdbcEnvironment().getSqlAstTranslatorFactory()
+        .buildSelectTranslator(sessionFactory, selectStatement)
+        .translate(JdbcParameterBindings.NO_BINDINGS, sqmQuery.getQueryOptions())
+        .getSqlString();
+  }
+
+  private static int plan(SessionFactoryImplementor sessionFactory, List<String> sqlStrings) {
+    if (sqlStrings.isEmpty()) {
+      return 0;
+    }
+    ConnectionProvider connectionProvider =
+        sessionFactory.getServiceRegistry().getService(ConnectionProvider.class);
+    int parallelism = Math.min(
+        sqlStrings.size(),
+        ConfigurationHelper.getInt(
+            WARMUP_PARALLELISM, sessionFactory.getProperties(), DEFAULT_PARALLELISM));
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+      Thread thread = new Thread(runnable, "spanner-query-warmup");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<Boolean>> results = new ArrayList<>(sqlStrings.size());
+      for (String sql : sqlStrings) {
+        results.add(executor.submit(() -> plan(connectionProvider, sql)));
+      }
+      int planned = 0;
+      for (Future<Boolean> result : results) {
+        if (result.get()) {
+          planned++;
+        }
+      }
+      return planned;
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      return 0;
+    } catch (ExecutionException exception) {
+      log.warnf("Query warmup failed: %s", exception.getCause().getMessage());
+      return 0;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static boolean plan(ConnectionProvider connectionProvider, String sql) {
+    try {
+      Connection connection = connectionProvider.getConnection();
+      try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        // The Cloud Spanner JDBC driver executes the query in PLAN mode to get the metadata.
+        statement.getMetaData();
+        return true;
+      } finally {
+        connectionProvider.closeConnection(connection);
+      }
+    } catch (SQLException exception) {
+      log.warnf("Could not plan query %s: %s", sql, exception.getMessage());
+      return false;
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package com.google.cloud.spanner.hibernate;
+
+import com.google.cloud.spanner.TimestampBound;
+import com.google.cloud.spanner.jdbc.CloudSpannerJdbcConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.sql.exec.spi.ExecutionContext;
+import org.hibernate.sql.exec.spi.JdbcParameterBinder;
+import org.hibernate.sql.exec.spi.JdbcParameterBindings;
+import org.jboss.logging.Logger;
+
+/**
+ * Applies the {@link SpannerQueryHints#READ_ONLY_STALENESS} hint of a query. A query in autocommit
+ * mode is executed as a single-use read-only transaction that uses the staleness of the connection
+ * at the moment that the query is executed. The JDBC driver has no option to set the staleness of
+ * a single statement, so the staleness is set on the connection for the duration of the execution.
+ *
+ * <p>The binder is the last binder of the query, and only registers the staleness with the {@link
+ * StalenessListener} of the session. It does not change the connection. The listener sets the
+ * staleness in {@code jdbcExecuteStatementStart} and restores the previous settings in {@code
+ * jdbcExecuteStatementEnd}, which Hibernate calls in a try/finally block around the execution of
+ * the statement. The settings of the connection are therefore also restored if the execution
+ * fails, and are not changed at all if an error occurs before the statement is executed.
+ *
+ * <p>The hint is only applied if the query is not part of a transaction: Either the connection is
+ * in autocommit mode, or the session has no transaction in progress and the connection has not
+ * started a transaction. The connection is then switched to autocommit for the query. A query in
+ * a transaction is executed in that transaction without the hint, and a warning is logged, as all
+ * reads in a Cloud Spanner transaction use the same timestamp. These calls only change the local
+ * state of the connection, and do not need a round-trip to Cloud Spanner.
+ */
+class SpannerReadOnlyStalenessBinder implements SpannerDelegatingBinder {
+
+  private static final Logger log = Logger.getLogger(SpannerReadOnlyStalenessBinder.class);
+
+  /** The listeners of the open sessions that have used the hint. */
+  private static final Map<SharedSessionContractImplementor, StalenessListener> LISTENERS =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Sets and restores the read-only staleness of the connection of a session around the execution
+   * of a statement with the hint. Each session has one listener, which is registered when the hint
+   * is used for the first time, and removed when the session is closed.
+   */
+  private static class StalenessListener extends BaseSessionEventListener {
+
+    private final SharedSessionContractImplementor session;
+
+    /** The connection and staleness of a statement that has been bound, but not executed. */
+    private transient CloudSpannerJdbcConnection pendingConnection;
+
+    private transient TimestampBound pendingStaleness;
+
+    /** The connection that has been changed, or null if no connection has been changed. */
+    private transient CloudSpannerJdbcConnection connection;
+
+    private transient TimestampBound previousStaleness;
+
+    private transient boolean autoCommit;
+
+    StalenessListener(SharedSessionContractImplementor session) {
+      this.session = session;
+    }
+
+    void executeWithStaleness(CloudSpannerJdbcConnection connection, TimestampBound staleness) {
+      this.pendingConnection = connection;
+      this.pendingStaleness = staleness;
+    }
+
+    @Override
+    public void jdbcPrepareStatementStart() {
+      // A statement that was bound but never executed must not change the next statement.
+      pendingConnection = null;
+      pendingStaleness = null;
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+      if (pendingConnection == null) {
+        return;
+      }
+      CloudSpannerJdbcConnection current = pendingConnection;
+      TimestampBound staleness = pendingStaleness;
+      pendingConnection = null;
+      pendingStaleness = null;
+      try {
+        previousStaleness = current.getReadOnlyStaleness();
+        autoCommit = current.getAutoCommit();
+        connection = current;
+        if (!autoCommit) {
+          current.setAutoCommit(true);
+        }
+        current.setReadOnlyStaleness(staleness);
+      } catch (SQLException exception) {
+        throw session.getJdbcServices().getSqlExceptionHelper()
+            .convert(exception, "Failed to set read-only staleness");
+      }
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+      if (connection == null) {
+        return;
+      }
+      try {
+        connection.setReadOnlyStaleness(previousStaleness);
+        if (!autoCommit) {
+          connection.setAutoCommit(false);
+        }
+      } catch (SQLException exception) {
+        throw session.getJdbcServices().getSqlExceptionHelper()
+            .convert(exception, "Failed to restore read-only staleness");
+      } finally {
+        connection = null;
+        previousStaleness = null;
+      }
+    }
+
+    @Override
+    public void end() {
+      LISTENERS.remove(session);
+    }
+  }
+
+  private final JdbcParameterBinder delegate;
+
+  private final TimestampBound staleness;
+
+  SpannerReadOnlyStalenessBinder(JdbcParameterBinder delegate, TimestampBound staleness) {
+    this.delegate = delegate;
+    this.staleness = staleness;
+  }
+
+  @Override
+  public JdbcParameterBinder getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public void bindParameterValue(
+      PreparedStatement statement,
+      int startPosition,
+      JdbcParameterBindings jdbcParameterBindings,
+      ExecutionContext executionContext) throws SQLException {
+    if (delegate != null) {
+      delegate.bindParameterValue(
+          statement, startPosition, jdbcParameterBindings, executionContext);
+    }
+    Connection connection = statement.getConnection();
+    if (!connection.isWrapperFor(CloudSpannerJdbcConnection.class)) {
+      return;
+    }
+    SharedSessionContractImplementor session = executionContext.getSession();
+    CloudSpannerJdbcConnection spannerConnection =
+        connection.unwrap(CloudSpannerJdbcConnection.class);
+    if (!spannerConnection.getAutoCommit()
+        && (session.isTransactionInProgress() || spannerConnection.isTransactionStarted())) {
+      log.warnf(
+          "Ignoring read-only staleness hint %s for a query in a transaction", staleness);
+      return;
+    }
+    getListener(session).executeWithStaleness(spannerConnection, staleness);
+  }
+
+  private static StalenessListener getListener(SharedSessionContractImplementor session) {
+    return LISTENERS.computeIfAbsent(
+        session,
+        key -> {
+          StalenessListener listener = new StalenessListener(key);
+          key.getEventListenerManager().addListener(listener);
+          return listener;
+        });
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate;
+
+import com.google.cloud.spanner.ErrorCode;
+import com.google.cloud.spanner.SpannerException;
+import com.google.cloud.spanner.jdbc.JdbcSqlException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.rpc.Code;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+
+/**
+ * {@link Iterator} that reads all entities of a given type in batches that are ordered by the
+ * primary key. Each batch is read with a separate query that starts after the last primary key
+ * value that was returned. This limits the number of rows that are buffered to the batch size, and
+ * allows the iterator to resume reading after the last returned row if a query fails with a
+ * transient error.
+ *
+ * <p>A failed batch is only read again if the session has no transaction in progress. Hibernate
+ * marks the transaction of the session as rollback-only when a query fails, so a stream that would
+ * resume in that transaction could not be committed. The error is then thrown directly. Retries
+ * wait with an exponential backoff, so an overloaded instance is not queried again immediately.
+ */
+class SpannerResumableIterator<T> implements Iterator<T> {
+
+  /** The error codes that cause the current batch to be read again. */
+  private static final ImmutableSet<Code> TRANSIENT_ERROR_CODES =
+      ImmutableSet.of(Code.UNAVAILABLE, Code.ABORTED, Code.DEADLINE_EXCEEDED);
+
+  /** The time to wait before the first retry of a batch. This is doubled for each retry. */
+  private static final long INITIAL_RETRY_DELAY_MILLIS = 100L;
+
+  /** The maximum time to wait before a retry of a batch. */
+  private static final long MAX_RETRY_DELAY_MILLIS = 5000L;
+
+  private final Session session;
+
+  private final SpannerKeysetQuery<T> query;
+
+  private final int batchSize;
+
+  private final int maxRetries;
+
+  private final ArrayDeque<T> buffer;
+
+  private final List<T> currentBatch;
+
+  private SpannerKeysetCursor cursor;
+
+  private boolean lastBatch;
+
+  SpannerResumableIterator(
+      Session session, Class<T> entityClass, String restriction, int batchSize, int maxRetries) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("The batch size must be positive");
+    }
+    this.session = session;
+    this.query =
+        new SpannerKeysetQuery<>(
+            session, entityClass, restriction, Collections.emptyList(), false);
+    this.batchSize = batchSize;
+    this.maxRetries = maxRetries;
+    this.buffer = new ArrayDeque<>(batchSize);
+    this.currentBatch = new ArrayList<>(batchSize);
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (buffer.isEmpty() && !lastBatch) {
+      readNextBatch();
+    }
+    return !buffer.isEmpty();
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return buffer.poll();
+  }
+
+  private void readNextBatch() {
+    // Remove the entities of the previous batch from the session, so the session does not keep a
+    // reference to all entities that have been read.
+    for (T entity : currentBatch) {
+      session.detach(entity);
+    }
+    currentBatch.clear();
+
+    List<T> batch = null;
+    for (int attempt = 0; batch == null; attempt++) {
+      try {
+        batch = query.fetch(cursor, batchSize, true);
+      } catch (RuntimeException exception) {
+        if (attempt >= maxRetries
+            || !isTransient(exception)
+            || session.getTransaction().isActive()) {
+          throw exception;
+        }
+        try {
+          sleep(getRetryDelayMillis(attempt));
+        } catch (InterruptedException interruptedException) {
+          Thread.currentThread().interrupt();
+          throw new HibernateException(
+              "Interrupted while waiting to read a batch again", interruptedException);
+        }
+      }
+    }
+    if (batch.size() < batchSize) {
+      lastBatch = true;
+    }
+    if (!batch.isEmpty()) {
+      cursor = query.cursorOf(batch.get(batch.size() - 1));
+    }
+    currentBatch.addAll(batch);
+    buffer.addAll(batch);
+  }
+
+  /** Returns the exponential backoff with jitter for the given (zero-based) retry attempt. */
+  static long getRetryDelayMillis(int attempt) {
+    long delay =
+        Math.min(MAX_RETRY_DELAY_MILLIS, INITIAL_RETRY_DELAY_MILLIS << Math.min(attempt, 16));
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+
+  @VisibleForTesting
+  protected void sleep(long millis) throws InterruptedException {
+    Thread.sleep(millis);
+  }
+
+  static boolean isTransient(Throwable exception) {
+    for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+      if (cause instanceof JdbcSqlException) {
+        return TRANSIENT_ERROR_CODES.contains(((JdbcSqlException) cause).getCode());
+      }
+      if (cause instanceof SpannerException) {
+        ErrorCode errorCode = ((SpannerException) cause).getErrorCode();
+        return TRANSIENT_ERROR_CODES.contains(Code.valueOf(errorCode.name()));
+      }
+    }
+    return false;
+  }
+}
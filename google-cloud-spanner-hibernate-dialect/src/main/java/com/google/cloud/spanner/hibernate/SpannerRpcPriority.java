@@ -0,0 +1,347 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package com.google.cloud.spanner.hibernate;
+
+import com.google.cloud.spanner.Options.RpcPriority;
+import com.google.cloud.spanner.jdbc.CloudSpannerJdbcConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.resource.transaction.spi.TransactionObserver;
+import org.hibernate.sql.exec.spi.ExecutionContext;
+import org.hibernate.sql.exec.spi.JdbcParameterBinder;
+import org.hibernate.sql.exec.spi.JdbcParameterBindings;
+import org.jboss.logging.Logger;
+
+/**
+ * Sets the RPC priority of the requests that a session sends to Cloud Spanner. Cloud Spanner
+ * executes requests with a low priority after requests with a higher priority, which can be used
+ * to prevent batch jobs from slowing down user-facing requests on the same instance.
+ *
+ * <p>The priority can be set at these levels, where each level overrides the previous one:
+ *
+ * <ul>
+ *   <li>SessionFactory: Set {@link SpannerDialect#SPANNER_RPC_PRIORITY_PROPERTY}, or add {@code
+ *       rpcPriority=LOW} to the JDBC connection URL of an externally configured data source.
+ *   <li>Session: {@link #setSessionPriority(Session, RpcPriority)}.
+ *   <li>Transaction: {@link #setTransactionPriority(Session, RpcPriority)}.
+ *   <li>Query: {@link SpannerQueryHints#rpcPriority(RpcPriority)}.
+ * </ul>
+ *
+ * <p>The priority of a session is applied to its JDBC connection before the next statement is
+ * prepared, and the previous priority of the connection is restored before the connection is
+ * released. Pooled connections therefore never keep the priority of a session. The priority is
+ * only changed on the connection itself, and this does not need a round-trip to Cloud Spanner.
+ * The priority of a query is set directly before the query is executed and restored directly
+ * after the execution, also if the query fails. Sequence values that are fetched by a {@link
+ * PooledBitReversedSequenceStyleGenerator} use the priority of the session that requests them,
+ * unless the generator sets {@link PooledBitReversedSequenceStyleGenerator#RPC_PRIORITY_PARAM}.
+ */
+public final class SpannerRpcPriority {
+
+  private static final Logger log = Logger.getLogger(SpannerRpcPriority.class);
+
+  /** The priority listeners of the open sessions that have set a priority. */
+  private static final Map<SharedSessionContractImplementor, SessionPriorityListener> LISTENERS =
+      new ConcurrentHashMap<>();
+
+  /** The value that resets the RPC priority of a connection to the default. */
+  private static final String UNSPECIFIED_PRIORITY = "NULL";
+
+  /**
+   * Applies the session and transaction priority to the JDBC connection of a session. The priority
+   * is applied when a transaction begins and before a statement is prepared. The priority of a
+   * query is applied in {@code jdbcExecuteStatementStart} and restored in {@code
+   * jdbcExecuteStatementEnd}, which Hibernate calls in a try/finally block around the execution of
+   * the statement. The listener is removed when the session is closed.
+   */
+  private static class SessionPriorityListener extends BaseSessionEventListener
+      implements TransactionObserver {
+
+    private final SharedSessionContractImplementor session;
+
+    private RpcPriority sessionPriority;
+
+    private RpcPriority transactionPriority;
+
+    /** The connection that has been changed, or null if no connection has been changed. */
+    private transient Connection connection;
+
+    /** The priority of the connection before it was changed. */
+    private transient String previousPriority;
+
+    private transient RpcPriority appliedPriority;
+
+    /** The connection and priority of a query that has been bound, but not executed. */
+    private transient Connection pendingQueryConnection;
+
+    private transient RpcPriority pendingQueryPriority;
+
+    /** The connection that used the priority of a query, or null if no query changed it. */
+    private transient Connection queryConnection;
+
+    /** The priority of the connection before the priority of a query was applied. */
+    private transient String queryPreviousPriority;
+
+    SessionPriorityListener(SharedSessionContractImplementor session) {
+      this.session = session;
+    }
+
+    @Override
+    public void afterBegin() {
+      applyIfConnected();
+    }
+
+    @Override
+    public void beforeCompletion() {
+    }
+
+    @Override
+    public void afterCompletion(boolean successful, boolean delayed) {
+    }
+
+    @Override
+    public void jdbcPrepareStatementStart() {
+      // A query that was bound but never executed must not change the next statement.
+      pendingQueryConnection = null;
+      pendingQueryPriority = null;
+      RpcPriority priority = transactionPriority == null ? sessionPriority : transactionPriority;
+      if (connection == null && priority == null) {
+        return;
+      }
+      Connection current =
+          session.getJdbcCoordinator().getLogicalConnection().getPhysicalConnection();
+      if (current == connection && priority == appliedPriority) {
+        return;
+      }
+      try {
+        if (current != connection) {
+          restore();
+          if (priority == null || !current.isWrapperFor(CloudSpannerJdbcConnection.class)) {
+            return;
+          }
+          previousPriority = getRpcPriority(current);
+          connection = current;
+        }
+        if (priority == null) {
+          restore();
+        } else {
+          setRpcPriority(connection, priority.name());
+          appliedPriority = priority;
+        }
+      } catch (SQLException exception) {
+        throw session.getJdbcServices().getSqlExceptionHelper()
+            .convert(exception, "Failed to set RPC priority");
+      }
+    }
+
+    /**
+     * Applies the priority directly if the session holds a connection. Other code that uses the
+     * connection, like the sequence generator, can then read the priority from the connection.
+     */
+    void applyIfConnected() {
+      if (session.getJdbcCoordinator().getLogicalConnection().isPhysicallyConnected()) {
+        jdbcPrepareStatementStart();
+      }
+    }
+
+    /** Uses the given priority for the next statement that is executed on the connection. */
+    void executeWithPriority(Connection connection, RpcPriority priority) {
+      this.pendingQueryConnection = connection;
+      this.pendingQueryPriority = priority;
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+      if (pendingQueryConnection == null) {
+        return;
+      }
+      Connection current = pendingQueryConnection;
+      RpcPriority priority = pendingQueryPriority;
+      pendingQueryConnection = null;
+      pendingQueryPriority = null;
+      try {
+        String previous =
+            current == connection && appliedPriority != null
+                ? appliedPriority.name()
+                : getRpcPriority(current);
+        setRpcPriority(current, priority.name());
+        queryConnection = current;
+        queryPreviousPriority = previous;
+      } catch (SQLException exception) {
+        throw session.getJdbcServices().getSqlExceptionHelper()
+            .convert(exception, "Failed to set RPC priority");
+      }
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+      if (queryConnection == null) {
+        return;
+      }
+      try {
+        setRpcPriority(queryConnection, queryPreviousPriority);
+      } catch (SQLException exception) {
+        throw session.getJdbcServices().getSqlExceptionHelper()
+            .convert(exception, "Failed to restore RPC priority");
+      } finally {
+        queryConnection = null;
+        queryPreviousPriority = null;
+      }
+    }
+
+    @Override
+    public void jdbcConnectionReleaseStart() {
+      try {
+        restore();
+      } catch (SQLException exception) {
+        log.warnf("Failed to restore RPC priority: %s", exception.getMessage());
+      }
+    }
+
+    @Override
+    public void transactionCompletion(boolean successful) {
+      transactionPriority = null;
+      applyIfConnected();
+    }
+
+    @Override
+    public void end() {
+      LISTENERS.remove(session);
+    }
+
+    private void restore() throws SQLException {
+      if (connection == null) {
+        return;
+      }
+      try {
+        setRpcPriority(connection, previousPriority);
+      } finally {
+        connection = null;
+        appliedPriority = null;
+      }
+    }
+  }
+
+  /**
+   * Binder that registers the RPC priority of a query with the {@link SessionPriorityListener} of
+   * the session. The binder does not change the connection. The listener sets the priority
+   * directly before the query is executed, and restores the previous priority directly after.
+   */
+  static class QueryPriorityBinder implements SpannerDelegatingBinder {
+
+    private final JdbcParameterBinder delegate;
+
+    private final RpcPriority priority;
+
+    QueryPriorityBinder(JdbcParameterBinder delegate, RpcPriority priority) {
+      this.delegate = delegate;
+      this.priority = priority;
+    }
+
+    @Override
+    public JdbcParameterBinder getDelegate() {
+      return delegate;
+    }
+
+    @Override
+    public void bindParameterValue(
+        PreparedStatement statement,
+        int startPosition,
+        JdbcParameterBindings jdbcParameterBindings,
+        ExecutionContext executionContext) throws SQLException {
+      if (delegate != null) {
+        delegate.bindParameterValue(
+            statement, startPosition, jdbcParameterBindings, executionContext);
+      }
+      Connection connection = statement.getConnection();
+      if (connection.isWrapperFor(CloudSpannerJdbcConnection.class)) {
+        getListener(executionContext.getSession()).executeWithPriority(connection, priority);
+      }
+    }
+  }
+
+  private SpannerRpcPriority() {
+  }
+
+  /**
+   * Sets the RPC priority of all requests of the given session. The priority of the JDBC connection
+   * is used if the priority is null.
+   */
+  public static void setSessionPriority(Session session, RpcPriority priority) {
+    SessionPriorityListener listener =
+        getListener(session.unwrap(SharedSessionContractImplementor.class));
+    listener.sessionPriority = priority;
+    listener.applyIfConnected();
+  }
+
+  /**
+   * Sets the RPC priority of the requests of the current transaction of the given session,
+   * including the commit. If the session has no active transaction, the priority is used for the
+   * next transaction. The priority of the session is used again when the transaction has
+   * finished.
+   */
+  public static void setTransactionPriority(Session session, RpcPriority priority) {
+    SessionPriorityListener listener =
+        getListener(session.unwrap(SharedSessionContractImplementor.class));
+    listener.transactionPriority = priority;
+    listener.applyIfConnected();
+  }
+
+  private static SessionPriorityListener getListener(SharedSessionContractImplementor session) {
+    return LISTENERS.computeIfAbsent(
+        session,
+        key -> {
+          SessionPriorityListener listener = new SessionPriorityListener(key);
+          key.getEventListenerManager().addListener(listener);
+          key.getTransactionCoordinator().addObserver(listener);
+          return listener;
+        });
+  }
+
+  /**
+   * Returns the RPC priority of the given connection as a value for {@code SET RPC_PRIORITY}. The
+   * connection returns the priority as PRIORITY_HIGH, PRIORITY_MEDIUM, PRIORITY_LOW or
+   * PRIORITY_UNSPECIFIED.
+   */
+  static String getRpcPriority(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("show variable rpc_priority")) {
+      String value = resultSet.next() ? resultSet.getString(1) : null;
+      if (value == null || value.endsWith("UNSPECIFIED")) {
+        return UNSPECIFIED_PRIORITY;
+      }
+      return value.substring(value.indexOf('_') + 1);
+    }
+  }
+
+  static void setRpcPriority(Connection connection, String priority) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("set rpc_priority='" + priority + "'");
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate;
+
+import static org.hibernate.query.sqm.produce.function.FunctionParameterType.STRING;
+
+import com.google.cloud.spanner.hibernate.schema.SpannerTableStatements;
+import java.util.List;
+import org.hibernate.query.sqm.function.AbstractSqmSelfRenderingFunctionDescriptor;
+import org.hibernate.query.sqm.produce.function.StandardArgumentsValidators;
+import org.hibernate.query.sqm.produce.function.StandardFunctionArgumentTypeResolvers;
+import org.hibernate.query.sqm.produce.function.StandardFunctionReturnTypeResolvers;
+import org.hibernate.sql.ast.SqlAstTranslator;
+import org.hibernate.sql.ast.spi.SqlAppender;
+import org.hibernate.sql.ast.tree.SqlAstNode;
+import org.hibernate.sql.ast.tree.expression.ColumnReference;
+import org.hibernate.sql.ast.tree.expression.Expression;
+import org.hibernate.type.BasicType;
+
+/**
+ * Renders the Cloud Spanner full-text search functions {@code SEARCH} and {@code SCORE} for a
+ * column that is included in a {@link SearchIndex}. The first argument of the HQL function is the
+ * entity attribute that is indexed, and is rendered as the hidden TOKENLIST column of that
+ * attribute; i.e. {@code search(p.name, :query)} is rendered as {@code
+ * SEARCH(p1_0.name_Tokens, ?)}.
+ */
+class SpannerSearchFunction extends AbstractSqmSelfRenderingFunctionDescriptor {
+
+  SpannerSearchFunction(String name, BasicType<?> returnType) {
+    super(
+        name,
+        StandardArgumentsValidators.exactly(2),
+        StandardFunctionReturnTypeResolvers.invariant(returnType),
+        StandardFunctionArgumentTypeResolvers.invariant(STRING, STRING));
+  }
+
+  @Override
+  public void render(
+      SqlAppender sqlAppender,
+      List<? extends SqlAstNode> sqlAstArguments,
+      SqlAstTranslator<?> walker) {
+    ColumnReference column = ((Expression) sqlAstArguments.get(0)).getColumnReference();
+    if (column == null) {
+      throw new IllegalArgumentException(
+          "The first argument of " + getName() + " must be an attribute that maps to one column");
+    }
+    sqlAppender.appendSql(getName().toUpperCase());
+    sqlAppender.appendSql('(');
+    if (column.getQualifier() != null) {
+      sqlAppender.appendSql(column.getQualifier());
+      sqlAppender.appendSql('.');
+    }
+    sqlAppender.appendSql(
+        SpannerTableStatements.getTokenListColumnName(column.getColumnExpression()));
+    sqlAppender.appendSql(", ");
+    sqlAstArguments.get(1).accept(walker);
+    sqlAppender.appendSql(')');
+  }
+}
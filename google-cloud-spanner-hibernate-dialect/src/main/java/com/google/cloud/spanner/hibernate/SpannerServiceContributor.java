@@ -18,7 +18,9 @@
 
 package com.google.cloud.spanner.hibernate;
 
+import com.google.cloud.spanner.Options.RpcPriority;
 import com.google.cloud.spanner.hibernate.schema.SpannerSchemaManagementTool;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import org.hibernate.boot.registry.StandardServiceInitiator;
@@ -71,6 +73,23 @@ public class SpannerServiceContributor implements ServiceContributor {
           // every time a session factory is created with hbm2dll=update. 
           .applySetting("hibernate.schema_update.unique_constraint_strategy",
                         UniqueConstraintSchemaUpdateStrategy.RECREATE_QUIETLY);
+      Object rpcPriority =
+          serviceRegistryBuilder.getSettings().get(SpannerDialect.SPANNER_RPC_PRIORITY_PROPERTY);
+      if (rpcPriority != null) {
+        // The RPC priority JDBC connection property of the session factory.
+        serviceRegistryBuilder.applySetting(
+            "hibernate.connection.rpcPriority", parseRpcPriority(rpcPriority.toString()).name());
+      }
+    }
+  }
+
+  private static RpcPriority parseRpcPriority(String value) {
+    try {
+      return RpcPriority.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+    } catch (IllegalArgumentException exception) {
+      throw new IllegalArgumentException(
+          "Invalid value for " + SpannerDialect.SPANNER_RPC_PRIORITY_PROPERTY + ": " + value,
+          exception);
     }
   }
 }
\ No newline at end of file
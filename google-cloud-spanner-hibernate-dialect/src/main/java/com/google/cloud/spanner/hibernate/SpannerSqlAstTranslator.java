@@ -18,17 +18,387 @@
 
 package com.google.cloud.spanner.hibernate;
 
+import com.google.cloud.spanner.Options.RpcPriority;
+import com.google.cloud.spanner.TimestampBound;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import org.hibernate.LockMode;
+import org.hibernate.engine.config.spi.ConfigurationService;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.metamodel.model.domain.EntityDomainType;
+import org.hibernate.query.spi.QueryOptions;
+import org.hibernate.sql.ast.Clause;
+import org.hibernate.sql.ast.SqlAstNodeRenderingMode;
 import org.hibernate.sql.ast.tree.Statement;
+import org.hibernate.sql.ast.tree.from.NamedTableReference;
+import org.hibernate.sql.ast.tree.from.TableGroupJoin;
+import org.hibernate.sql.ast.tree.from.TableReference;
+import org.hibernate.sql.ast.tree.predicate.InArrayPredicate;
+import org.hibernate.sql.ast.tree.predicate.InListPredicate;
 import org.hibernate.sql.ast.tree.predicate.LikePredicate;
+import org.hibernate.sql.ast.tree.select.SelectStatement;
 import org.hibernate.sql.exec.spi.JdbcOperation;
+import org.hibernate.sql.exec.spi.JdbcOperationQuerySelect;
+import org.hibernate.sql.exec.spi.JdbcParameterBinder;
+import org.hibernate.sql.exec.spi.JdbcParameterBindings;
+import org.hibernate.sql.model.MutationOperation;
+import org.hibernate.sql.model.ast.ColumnValueBinding;
+import org.hibernate.sql.model.internal.OptionalTableUpdate;
+import org.hibernate.sql.model.jdbc.MergeOperation;
 
-/** We need a translator for the LIKE operator, as Cloud Spanner does not support ESCAPE clauses. */
+/**
+ * We need a translator for the LIKE operator, as Cloud Spanner does not support ESCAPE clauses.
+ * The translator also renders the {@link SpannerQueryHints} of a query, and renders IN lists of
+ * parameters as {@code in unnest(@p1)} if {@link SpannerDialect#SPANNER_IN_LIST_AS_ARRAY_PROPERTY}
+ * is enabled. Upserts are rendered as {@code insert or update} statements, and the read-only
+ * staleness and RPC priority hints of a query are applied when the query is executed. Queries are
+ * tagged when {@link SpannerDialect#SPANNER_AUTO_TAGS_PROPERTY} is enabled, and timed when {@link
+ * SpannerQueryInspector#SLOW_QUERY_THRESHOLD} is set.
+ */
 public class SpannerSqlAstTranslator<T extends JdbcOperation>
     extends org.hibernate.dialect.SpannerSqlAstTranslator<T> {
 
+  /**
+   * {@link JdbcOperationQuerySelect} that is only compatible with query options that contain the
+   * same {@link SpannerQueryHints}. The query hints are not part of the key of the query plan
+   * cache, so this ensures that a cached select is translated again if the hints are different.
+   */
+  private static class HintedJdbcOperationQuerySelect extends JdbcOperationQuerySelect {
+    private final List<String> hints;
+
+    HintedJdbcOperationQuerySelect(
+        JdbcOperationQuerySelect select,
+        List<JdbcParameterBinder> parameterBinders,
+        List<String> hints) {
+      super(
+          select.getSqlString(),
+          parameterBinders,
+          select.getJdbcValuesMappingProducer(),
+          select.getAffectedTableNames(),
+          select.getRowsToSkip(),
+          select.getMaxRows(),
+          select.getAppliedParameters(),
+          select.getLockStrategy(),
+          select.getOffsetParameter(),
+          select.getLimitParameter());
+      this.hints = hints;
+    }
+
+    @Override
+    public boolean isCompatibleWith(
+        JdbcParameterBindings jdbcParameterBindings, QueryOptions queryOptions) {
+      return super.isCompatibleWith(jdbcParameterBindings, queryOptions)
+          && Objects.equals(hints, SpannerQueryHints.getHints(queryOptions));
+    }
+  }
+
+  /**
+   * The configuration of the translators of a session factory. The settings are read once per
+   * session factory by the translator factory of {@link SpannerDialect}, instead of for each
+   * translated statement.
+   */
+  static final class Settings {
+    private final SessionFactoryImplementor sessionFactory;
+
+    private final boolean inListAsArray;
+
+    private final boolean autoTags;
+
+    private final long slowQueryThreshold;
+
+    private final double slowQuerySampleRate;
+
+    /** The default values of the statement hints. */
+    private final Map<String, Object> statementHintDefaults;
+
+    /** The statement hint of queries that do not have any hints of their own. */
+    private final String defaultStatementHint;
+
+    Settings(SessionFactoryImplementor sessionFactory) {
+      Map<String, Object> settings =
+          sessionFactory.getServiceRegistry().getService(ConfigurationService.class).getSettings();
+      this.sessionFactory = sessionFactory;
+      this.inListAsArray = ConfigurationHelper.getBoolean(
+          SpannerDialect.SPANNER_IN_LIST_AS_ARRAY_PROPERTY, settings, false);
+      this.autoTags = ConfigurationHelper.getBoolean(
+          SpannerDialect.SPANNER_AUTO_TAGS_PROPERTY, settings, false);
+      this.slowQueryThreshold = ConfigurationHelper.getLong(
+          SpannerQueryInspector.SLOW_QUERY_THRESHOLD, settings, -1);
+      this.slowQuerySampleRate = Double.parseDouble(ConfigurationHelper.getString(
+          SpannerQueryInspector.SLOW_QUERY_SAMPLE_RATE,
+          settings,
+          SpannerQueryInspector.DEFAULT_SLOW_QUERY_SAMPLE_RATE));
+      this.statementHintDefaults = SpannerQueryHints.getStatementHintDefaults(settings);
+      this.defaultStatementHint =
+          SpannerQueryHints.getStatementHint(Collections.emptyList(), statementHintDefaults);
+    }
+
+    /** Returns the statement hint for a query with the given hints. */
+    String getStatementHint(List<String> hints) {
+      return hints.isEmpty()
+          ? defaultStatementHint
+          : SpannerQueryHints.getStatementHint(hints, statementHintDefaults);
+    }
+
+    /** Returns true if these settings were read from the given session factory. */
+    boolean isFor(SessionFactoryImplementor sessionFactory) {
+      return this.sessionFactory == sessionFactory;
+    }
+  }
+
+  private List<String> hints = Collections.emptyList();
+
+  private Map<String, String> forceIndexes = Collections.emptyMap();
+
+  /** The join hints per table name. Hints with an empty table name apply to all joins. */
+  private Map<String, String> joinHints = Collections.emptyMap();
+
+  private String groupHint;
+
+  private String pendingJoinHint;
+
+  private String statementHint;
+
+  private final Settings settings;
+
+  /** Creates a translator for the given statement. */
   public SpannerSqlAstTranslator(SessionFactoryImplementor sessionFactory, Statement statement) {
+    this(sessionFactory, statement, new Settings(sessionFactory));
+  }
+
+  SpannerSqlAstTranslator(
+      SessionFactoryImplementor sessionFactory, Statement statement, Settings settings) {
     super(sessionFactory, statement);
+    this.settings = settings;
+  }
+
+  /**
+   * Creates an operation that writes the row of the given upsert with one {@code insert or update}
+   * statement. The statement does not need to know whether the row already exists, which saves the
+   * round-trip that would otherwise be needed to check that.
+   */
+  MutationOperation createInsertOrUpdateOperation(OptionalTableUpdate optionalTableUpdate) {
+    List<ColumnValueBinding> bindings = new ArrayList<>(optionalTableUpdate.getKeyBindings());
+    bindings.addAll(optionalTableUpdate.getValueBindings());
+
+    appendSql("insert or update into ");
+    appendSql(optionalTableUpdate.getMutatingTable().getTableName());
+    appendSql(" (");
+    for (int i = 0; i < bindings.size(); i++) {
+      if (i > 0) {
+        appendSql(",");
+      }
+      appendSql(bindings.get(i).getColumnReference().getColumnExpression());
+    }
+    appendSql(") values (");
+    for (int i = 0; i < bindings.size(); i++) {
+      if (i > 0) {
+        appendSql(",");
+      }
+      bindings.get(i).getValueExpression().accept(this);
+    }
+    appendSql(CLOSE_PARENTHESIS);
+
+    return new MergeOperation(
+        optionalTableUpdate.getMutatingTable().getTableMapping(),
+        optionalTableUpdate.getMutationTarget(),
+        getSql(),
+        getParameterBinders());
+  }
+
+  @Override
+  public T translate(JdbcParameterBindings jdbcParameterBindings, QueryOptions queryOptions) {
+    this.hints = SpannerQueryHints.getHints(queryOptions);
+    this.forceIndexes = resolveTableNames(
+        SpannerQueryHints.getKeyValueHints(hints, SpannerQueryHints.FORCE_INDEX, false));
+    this.joinHints = resolveJoinHints();
+    this.statementHint = settings.getStatementHint(hints);
+    String groupMethod = SpannerQueryHints.getGroupMethod(hints);
+    this.groupHint = groupMethod == null ? null : "GROUP_METHOD=" + groupMethod;
+    return super.translate(jdbcParameterBindings, queryOptions);
+  }
+
+  private Map<String, String> resolveJoinHints() {
+    Map<String, String> joinMethods = resolveTableNames(
+        SpannerQueryHints.getKeyValueHints(hints, SpannerQueryHints.JOIN_METHOD, true));
+    Map<String, String> buildSides = resolveTableNames(
+        SpannerQueryHints.getKeyValueHints(hints, SpannerQueryHints.HASH_JOIN_BUILD_SIDE, true));
+    if (joinMethods.isEmpty() && buildSides.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<String, String> result = new HashMap<>();
+    joinMethods.forEach((table, method) -> result.put(table, "JOIN_METHOD=" + method));
+    buildSides.forEach((table, side) -> result.merge(table, "HASH_JOIN_BUILD_SIDE=" + side,
+        (method, buildSide) -> method + ", " + buildSide));
+    return result;
+  }
+
+  @Override
+  protected JdbcOperationQuerySelect translateSelect(SelectStatement selectStatement) {
+    if (SpannerQueryHints.isPartitionedQuery(hints)) {
+      appendSql("RUN PARTITIONED QUERY ");
+    }
+    if (statementHint != null) {
+      appendSql(statementHint);
+      appendSql(WHITESPACE);
+    }
+    JdbcOperationQuerySelect select = super.translateSelect(selectStatement);
+    List<JdbcParameterBinder> parameterBinders = select.getParameterBinders();
+    TimestampBound staleness = SpannerQueryHints.getReadOnlyStaleness(hints);
+    if (staleness != null) {
+      parameterBinders = wrapLastBinder(
+          parameterBinders, binder -> new SpannerReadOnlyStalenessBinder(binder, staleness));
+    }
+    RpcPriority priority = SpannerQueryHints.getRpcPriority(hints);
+    if (priority != null) {
+      parameterBinders = wrapLastBinder(
+          parameterBinders, binder -> new SpannerRpcPriority.QueryPriorityBinder(binder, priority));
+    }
+    if (settings.autoTags) {
+      // The tag is set after the staleness, as only a read/write transaction can get a tag.
+      parameterBinders = wrapLastBinder(
+          parameterBinders,
+          binder -> new SpannerAutoTagger.QueryTagBinder(binder, select.getSqlString()));
+    }
+    if (settings.slowQueryThreshold >= 0) {
+      // The slow query binder records the parameters again with the original binders.
+      parameterBinders = wrapLastBinder(
+          parameterBinders,
+          binder -> new SpannerQueryInspector.SlowQueryBinder(
+              binder,
+              select.getSqlString(),
+              select.getParameterBinders(),
+              settings.slowQueryThreshold,
+              settings.slowQuerySampleRate));
+    }
+    return new HintedJdbcOperationQuerySelect(select, parameterBinders, hints);
+  }
+
+  /**
+   * Wraps the last binder of the given list, so the wrapper is invoked after all parameters have
+   * been bound. The wrapper gets a null delegate if the list is empty.
+   */
+  private static List<JdbcParameterBinder> wrapLastBinder(
+      List<JdbcParameterBinder> parameterBinders,
+      Function<JdbcParameterBinder, JdbcParameterBinder> wrapper) {
+    List<JdbcParameterBinder> result = new ArrayList<>(parameterBinders);
+    if (result.isEmpty()) {
+      result.add(wrapper.apply(null));
+    } else {
+      int last = result.size() - 1;
+      result.set(last, wrapper.apply(result.get(last)));
+    }
+    return result;
+  }
+
+  /** Replaces the entity names in the keys of the given map with the names of their tables. */
+  private Map<String, String> resolveTableNames(Map<String, String> entityHints) {
+    if (entityHints.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<String, String> result = new HashMap<>();
+    for (Map.Entry<String, String> entry : entityHints.entrySet()) {
+      EntityDomainType<?> entityType = entry.getKey().isEmpty()
+          ? null
+          : getSessionFactory().getJpaMetamodel().getHqlEntityReference(entry.getKey());
+      String tableName = entityType == null
+          ? entry.getKey()
+          : getSessionFactory().getMappingMetamodel()
+              .getEntityDescriptor(entityType.getHibernateEntityName())
+              .getIdentifierTableDetails()
+              .getTableName();
+      result.put(tableName, entry.getValue());
+    }
+    return result;
+  }
+
+  @Override
+  protected boolean renderNamedTableReference(
+      NamedTableReference tableReference, LockMode lockMode) {
+    String forceIndex = getClauseStack().getCurrent() == Clause.FROM
+        ? forceIndexes.get(tableReference.getTableExpression())
+        : null;
+    if (forceIndex == null) {
+      return super.renderNamedTableReference(tableReference, lockMode);
+    }
+    // Table hints must be placed directly after the table name.
+    appendSql(tableReference.getTableExpression());
+    appendSql("@{FORCE_INDEX=");
+    appendSql(forceIndex);
+    appendSql('}');
+    registerAffectedTable(tableReference);
+    renderTableReferenceIdentificationVariable(tableReference);
+    return false;
+  }
+
+  @Override
+  protected void renderTableGroupJoin(
+      TableGroupJoin tableGroupJoin, List<TableGroupJoin> tableGroupJoinCollector) {
+    if (!joinHints.isEmpty()) {
+      TableReference joinedTable = tableGroupJoin.getJoinedGroup().getPrimaryTableReference();
+      String joinHint = joinedTable instanceof NamedTableReference
+          ? joinHints.get(((NamedTableReference) joinedTable).getTableExpression())
+          : null;
+      this.pendingJoinHint = joinHint == null ? joinHints.get("") : joinHint;
+    }
+    try {
+      super.renderTableGroupJoin(tableGroupJoin, tableGroupJoinCollector);
+    } finally {
+      this.pendingJoinHint = null;
+    }
+  }
+
+  @Override
+  public void appendSql(String fragment) {
+    // Join and group hints are placed directly after the JOIN and GROUP keywords. These keywords
+    // are appended by methods that cannot be overridden.
+    if (pendingJoinHint != null && "join ".equals(fragment)) {
+      super.appendSql("join@{" + pendingJoinHint + "} ");
+      this.pendingJoinHint = null;
+    } else if (groupHint != null
+        && " group by ".equals(fragment)
+        && getClauseStack().getCurrent() == Clause.GROUP) {
+      super.appendSql(" group@{" + groupHint + "} by ");
+    } else {
+      super.appendSql(fragment);
+    }
+  }
+
+  @Override
+  public void visitInListPredicate(InListPredicate inListPredicate) {
+    SpannerInListArrayBinder arrayBinder =
+        settings.inListAsArray && getParameterRenderingMode() == SqlAstNodeRenderingMode.DEFAULT
+            ? SpannerInListArrayBinder.create(inListPredicate.getListExpressions())
+            : null;
+    if (arrayBinder == null) {
+      super.visitInListPredicate(inListPredicate);
+      return;
+    }
+    // Bind all values as one array, so the SQL string does not depend on the number of values.
+    inListPredicate.getTestExpression().accept(this);
+    if (inListPredicate.isNegated()) {
+      appendSql(" not");
+    }
+    appendSql(" in unnest(");
+    renderParameterAsParameter(getParameterBinders().size() + 1, arrayBinder.getFirstParameter());
+    getParameterBinders().add(arrayBinder);
+    appendSql(CLOSE_PARENTHESIS);
+  }
+
+  @Override
+  public void visitInArrayPredicate(InArrayPredicate inArrayPredicate) {
+    // Batch loads and multi loads use an array parameter. Cloud Spanner does not support the
+    // default array_contains(..) function that is used for this.
+    inArrayPredicate.getTestExpression().accept(this);
+    appendSql(" in unnest(");
+    inArrayPredicate.getArrayParameter().accept(this);
+    appendSql(CLOSE_PARENTHESIS);
   }
 
   @Override
@@ -115,7 +115,7 @@ public class SpannerTableExporter implements Exporter<Table> {
               if (schemaAction == Action.CREATE) {
                 return spannerTableStatements.createTable(table, metadata).stream();
               } else {
-                return spannerTableStatements.dropTable(table).stream();
+                return spannerTableStatements.dropTable(table, metadata).stream();
               }
             })
         .collect(Collectors.toList());
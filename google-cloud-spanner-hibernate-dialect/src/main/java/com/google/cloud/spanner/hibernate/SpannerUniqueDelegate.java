@@ -18,6 +18,7 @@
 
 package com.google.cloud.spanner.hibernate;
 
+import com.google.cloud.spanner.hibernate.schema.SpannerTableStatements;
 import org.hibernate.boot.Metadata;
 import org.hibernate.boot.model.relational.SqlStringGenerationContext;
 import org.hibernate.dialect.Dialect;
@@ -43,9 +44,11 @@ public class SpannerUniqueDelegate extends DefaultUniqueDelegate {
   @Override
   public String getAlterTableToAddUniqueKeyCommand(UniqueKey uniqueKey, Metadata metadata,
       SqlStringGenerationContext context) {
-    return Index.buildSqlCreateIndexString(context,
+    String createIndexString = Index.buildSqlCreateIndexString(context,
         uniqueKey.getName(), uniqueKey.getTable(), uniqueKey.getColumns(),
         uniqueKey.getColumnOrderMap(), true, metadata);
+    return SpannerTableStatements.addIndexOptions(
+        createIndexString, uniqueKey.getTable(), uniqueKey.getName(), metadata);
   }
 
   @Override
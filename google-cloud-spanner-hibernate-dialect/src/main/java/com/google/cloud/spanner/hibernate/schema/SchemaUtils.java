@@ -19,6 +19,10 @@
 package com.google.cloud.spanner.hibernate.schema;
 
 import com.google.cloud.spanner.hibernate.Interleaved;
+import com.google.cloud.spanner.hibernate.NotEnforcedForeignKeys;
+import com.google.cloud.spanner.hibernate.RowDeletionPolicy;
+import com.google.cloud.spanner.hibernate.SearchIndex;
+import com.google.cloud.spanner.hibernate.SpannerIndex;
 import com.google.cloud.spanner.hibernate.reflection.SpannerEntityFieldKey;
 import com.google.cloud.spanner.hibernate.reflection.SpannerKeyFieldIterator;
 import jakarta.persistence.Embeddable;
@@ -42,6 +46,42 @@ class SchemaUtils {
     return null != entityClass ? entityClass.getAnnotation(Interleaved.class) : null;
   }
 
+  /** Returns the {@link RowDeletionPolicy} annotation on a table if it exists. */
+  public static RowDeletionPolicy getRowDeletionPolicyAnnotation(Table table, Metadata metadata) {
+    Class<?> entityClass = getEntityClass(table, metadata);
+    return null != entityClass ? entityClass.getAnnotation(RowDeletionPolicy.class) : null;
+  }
+
+  /** Returns the {@link NotEnforcedForeignKeys} annotation on a table if it exists. */
+  public static NotEnforcedForeignKeys getNotEnforcedForeignKeysAnnotation(
+      Table table, Metadata metadata) {
+    Class<?> entityClass = getEntityClass(table, metadata);
+    return null != entityClass ? entityClass.getAnnotation(NotEnforcedForeignKeys.class) : null;
+  }
+
+  /** Returns the {@link SearchIndex} annotations on a table. */
+  public static SearchIndex[] getSearchIndexAnnotations(Table table, Metadata metadata) {
+    Class<?> entityClass = getEntityClass(table, metadata);
+    return null != entityClass
+        ? entityClass.getAnnotationsByType(SearchIndex.class)
+        : new SearchIndex[0];
+  }
+
+  /** Returns the {@link SpannerIndex} annotation for an index on a table if it exists. */
+  public static SpannerIndex getSpannerIndexAnnotation(
+      Table table, String indexName, Metadata metadata) {
+    Class<?> entityClass = getEntityClass(table, metadata);
+    if (entityClass == null || indexName == null) {
+      return null;
+    }
+    for (SpannerIndex spannerIndex : entityClass.getAnnotationsByType(SpannerIndex.class)) {
+      if (spannerIndex.name().equalsIgnoreCase(indexName)) {
+        return spannerIndex;
+      }
+    }
+    return null;
+  }
+
   /** Returns the bound entity class on a table if it exists. */
   public static Class<?> getEntityClass(Table table, Metadata metadata) {
     for (PersistentClass pc : metadata.getEntityBindings()) {
@@ -21,7 +21,10 @@ package com.google.cloud.spanner.hibernate.schema;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -36,6 +39,8 @@ public class SpannerDatabaseInfo {
 
   private final DatabaseMetaData databaseMetaData;
 
+  private Map<String, String> rowDeletionPolicies;
+
   /**
    * Constructs the {@link SpannerDatabaseInfo} by querying the Spanner database metadata.
    */
@@ -78,6 +83,22 @@ public class SpannerDatabaseInfo {
     }
   }
 
+  /**
+   * Returns the row deletion policy expression of the table with the given name, or null if the
+   * table does not have a row deletion policy. The row deletion policies are only read from the
+   * database the first time that this method is called.
+   */
+  public String getRowDeletionPolicy(String tableName) {
+    if (rowDeletionPolicies == null) {
+      try {
+        rowDeletionPolicies = extractRowDeletionPolicies(databaseMetaData);
+      } catch (SQLException e) {
+        throw new RuntimeException("Failed to lookup Spanner Database row deletion policies", e);
+      }
+    }
+    return rowDeletionPolicies.get(tableName);
+  }
+
   private static Set<String> extractDatabaseTables(DatabaseMetaData databaseMetaData)
       throws SQLException {
     HashSet<String> result = new HashSet<String>();
@@ -110,4 +131,20 @@ public class SpannerDatabaseInfo {
 
     return result;
   }
+
+  private static Map<String, String> extractRowDeletionPolicies(DatabaseMetaData databaseMetaData)
+      throws SQLException {
+    HashMap<String, String> result = new HashMap<>();
+    try (Statement statement = databaseMetaData.getConnection().createStatement();
+        ResultSet resultSet = statement.executeQuery(
+            "SELECT TABLE_NAME, ROW_DELETION_POLICY_EXPRESSION "
+                + "FROM INFORMATION_SCHEMA.TABLES "
+                + "WHERE TABLE_SCHEMA = '' AND ROW_DELETION_POLICY_EXPRESSION IS NOT NULL")) {
+      while (resultSet.next()) {
+        result.put(resultSet.getString(1), resultSet.getString(2));
+      }
+    }
+
+    return result;
+  }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate.schema;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Information about a DDL operation that was executed on Cloud Spanner by the {@link
+ * SpannerSchemaManagementTool}. A DDL operation corresponds with one `RUN BATCH` statement, and
+ * contains all DDL statements that were buffered in the batch.
+ */
+public final class SpannerDdlOperation {
+
+  private final List<String> statements;
+
+  private final Instant startTime;
+
+  private final Instant endTime;
+
+  private final int completedStatementCount;
+
+  private final List<SpannerDdlStatementProgress> statementProgress;
+
+  private final SQLException error;
+
+  SpannerDdlOperation(
+      List<String> statements,
+      Instant startTime,
+      Instant endTime,
+      int completedStatementCount,
+      List<SpannerDdlStatementProgress> statementProgress,
+      SQLException error) {
+    this.statements = Collections.unmodifiableList(statements);
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.completedStatementCount = completedStatementCount;
+    this.statementProgress = Collections.unmodifiableList(statementProgress);
+    this.error = error;
+  }
+
+  /** Returns the DDL statements in this operation in the order that they were executed. */
+  public List<String> getStatements() {
+    return statements;
+  }
+
+  /** Returns the time that the operation was sent to Cloud Spanner. */
+  public Instant getStartTime() {
+    return startTime;
+  }
+
+  /** Returns the time that the operation finished, either successfully or with an error. */
+  public Instant getEndTime() {
+    return endTime;
+  }
+
+  /** Returns the total time that the client waited for the operation to finish. */
+  public Duration getElapsedTime() {
+    return Duration.between(startTime, endTime);
+  }
+
+  /**
+   * Returns the number of statements that were successfully executed. Cloud Spanner executes the
+   * statements in a DDL batch in order, so this is also the index of the statement that failed if
+   * the operation was not successful.
+   */
+  public int getCompletedStatementCount() {
+    return completedStatementCount;
+  }
+
+  /** Returns true if the statement at the given index was successfully executed. */
+  public boolean isStatementCompleted(int index) {
+    return index < completedStatementCount;
+  }
+
+  /** Returns the percentage of the statements in this operation that finished successfully. */
+  public int getProgressPercentage() {
+    if (statements.isEmpty()) {
+      return 100;
+    }
+    return (int) (completedStatementCount * 100L / statements.size());
+  }
+
+  /**
+   * Returns the progress of each statement when the operation finished, including the commit
+   * timestamp of each statement that was executed successfully. The progress is read from the
+   * metadata of the long-running operation, and is only available if a {@link
+   * SpannerDdlOperationListener} is registered. Returns an empty list if the progress is not
+   * available.
+   */
+  public List<SpannerDdlStatementProgress> getStatementProgress() {
+    return statementProgress;
+  }
+
+  /** Returns true if all statements in the operation were executed successfully. */
+  public boolean isSuccessful() {
+    return error == null;
+  }
+
+  /** Returns the error that was returned by Cloud Spanner, or null if the operation succeeded. */
+  public SQLException getError() {
+    return error;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "DDL operation with %d statement(s): %d%% completed in %d ms",
+        statements.size(), getProgressPercentage(), getElapsedTime().toMillis());
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate.schema;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Listener that is notified of each DDL operation that is executed by the {@link
+ * SpannerSchemaManagementTool}. DDL operations that contain statements that need to backfill data,
+ * such as creating an index, can take a long time to finish. This listener can be used to monitor
+ * how long each operation takes, and how many of its statements finished.
+ *
+ * <p>The progress of the individual statements in an operation is read from the metadata of the
+ * long-running operation of the DDL batch while the operation is running. This uses a separate
+ * Database Admin client that is created from the JDBC URL, and that uses the credentials in the URL
+ * or the default credentials of the environment. The client needs permission to list the database
+ * operations of the database. The listener only receives the result of the operation as a whole if
+ * the progress cannot be read.
+ *
+ * <p>Register a listener by setting the {@link SpannerSchemaManagementTool#DDL_OPERATION_LISTENER}
+ * property to either an instance of a listener, the class of a listener, or the fully qualified
+ * class name of a listener. Listener classes must have a public no-arg constructor.
+ */
+public interface SpannerDdlOperationListener {
+
+  /**
+   * Called when a DDL operation is sent to Cloud Spanner.
+   *
+   * @param statements the DDL statements in the operation
+   * @param startTime the time that the operation was started
+   */
+  default void onDdlOperationStarted(List<String> statements, Instant startTime) {}
+
+  /**
+   * Called when the progress of a statement in a running DDL operation has changed, and when a
+   * statement has been committed. This method can be called from a background thread while the
+   * operation is running.
+   *
+   * @param progress the current progress of the statement
+   */
+  default void onDdlStatementProgress(SpannerDdlStatementProgress progress) {}
+
+  /**
+   * Called when a DDL operation has finished, either successfully or with an error.
+   *
+   * @param operation information about the operation that finished
+   */
+  void onDdlOperationFinished(SpannerDdlOperation operation);
+}
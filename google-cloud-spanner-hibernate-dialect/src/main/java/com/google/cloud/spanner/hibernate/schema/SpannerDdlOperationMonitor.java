@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate.schema;
+
+import com.google.cloud.spanner.DatabaseId;
+import com.google.cloud.spanner.Options;
+import com.google.cloud.spanner.Spanner;
+import com.google.cloud.spanner.SpannerOptions;
+import com.google.cloud.spanner.connection.ConnectionOptions;
+import com.google.cloud.spanner.jdbc.CloudSpannerJdbcConnection;
+import com.google.longrunning.Operation;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Timestamp;
+import com.google.spanner.admin.database.v1.OperationProgress;
+import com.google.spanner.admin.database.v1.UpdateDatabaseDdlMetadata;
+import io.grpc.ManagedChannelBuilder;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.jboss.logging.Logger;
+
+/**
+ * Reads the progress of DDL operations from the metadata of the long-running operations that Cloud
+ * Spanner creates for them. The JDBC driver does not return the operation of a DDL batch, so this
+ * monitor uses a separate Database Admin client that is created from the URL of the JDBC
+ * connection, and finds the operation of a batch by its statements.
+ */
+class SpannerDdlOperationMonitor implements AutoCloseable {
+
+  private static final Logger log = Logger.getLogger(SpannerDdlOperationMonitor.class);
+
+  private static final String JDBC_PREFIX = "jdbc:";
+
+  private static final String DDL_METADATA_TYPE =
+      "type.googleapis.com/google.spanner.admin.database.v1.UpdateDatabaseDdlMetadata";
+
+  /** The maximum difference between the clocks of the client and Cloud Spanner. */
+  private static final Duration MAX_CLOCK_SKEW = Duration.ofMinutes(1L);
+
+  private final Spanner spanner;
+
+  private final DatabaseId databaseId;
+
+  SpannerDdlOperationMonitor(Spanner spanner, DatabaseId databaseId) {
+    this.spanner = spanner;
+    this.databaseId = databaseId;
+  }
+
+  /**
+   * Creates a monitor for the database of the given connection. The monitor uses the credentials
+   * in the connection URL, or the default credentials of the environment. Returns null if the
+   * connection is not a Cloud Spanner connection, or if no client could be created.
+   */
+  static SpannerDdlOperationMonitor create(Connection connection) {
+    try {
+      if (!connection.isWrapperFor(CloudSpannerJdbcConnection.class)) {
+        return null;
+      }
+      String url = connection.getMetaData().getURL();
+      ConnectionOptions options =
+          ConnectionOptions.newBuilder()
+              .setUri(url.startsWith(JDBC_PREFIX) ? url.substring(JDBC_PREFIX.length()) : url)
+              .build();
+      SpannerOptions.Builder builder =
+          SpannerOptions.newBuilder()
+              .setProjectId(options.getProjectId())
+              .setHost(options.getHost())
+              .setCredentials(options.getCredentials());
+      if (options.getHost().startsWith("http:")) {
+        builder.setChannelConfigurator(ManagedChannelBuilder::usePlaintext);
+      }
+      return new SpannerDdlOperationMonitor(
+          builder.build().getService(), options.getDatabaseId());
+    } catch (SQLException | RuntimeException exception) {
+      log.warnf("Cannot read the progress of DDL operations: %s", exception.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Returns the progress of each statement of the most recent DDL operation on the database with
+   * the given statements, or null if no such operation was started after the given time.
+   */
+  List<SpannerDdlStatementProgress> getProgress(List<String> statements, Instant startTime) {
+    String filter =
+        String.format(
+            "(metadata.@type=%s) AND (metadata.database=%s)",
+            DDL_METADATA_TYPE, databaseId.getName());
+    // Operations are returned in descending order of their start time.
+    for (Operation operation :
+        spanner.getDatabaseAdminClient()
+            .listDatabaseOperations(
+                databaseId.getInstanceId().getInstance(), Options.filter(filter))
+            .getValues()) {
+      UpdateDatabaseDdlMetadata metadata = getMetadata(operation);
+      if (metadata != null && matches(metadata, statements, startTime)) {
+        return toProgress(statements, metadata);
+      }
+    }
+    return null;
+  }
+
+  private static UpdateDatabaseDdlMetadata getMetadata(Operation operation) {
+    if (!operation.getMetadata().is(UpdateDatabaseDdlMetadata.class)) {
+      return null;
+    }
+    try {
+      return operation.getMetadata().unpack(UpdateDatabaseDdlMetadata.class);
+    } catch (InvalidProtocolBufferException exception) {
+      return null;
+    }
+  }
+
+  private static boolean matches(
+      UpdateDatabaseDdlMetadata metadata, List<String> statements, Instant startTime) {
+    if (metadata.getStatementsCount() != statements.size()) {
+      return false;
+    }
+    for (int i = 0; i < statements.size(); i++) {
+      if (!metadata.getStatements(i).trim().equals(statements.get(i).trim())) {
+        return false;
+      }
+    }
+    // Skip earlier operations with the same statements. Statements that have not started yet do
+    // not have a start time.
+    return metadata.getProgressCount() == 0
+        || !metadata.getProgress(0).hasStartTime()
+        || !toInstant(metadata.getProgress(0).getStartTime())
+            .isBefore(startTime.minus(MAX_CLOCK_SKEW));
+  }
+
+  private static List<SpannerDdlStatementProgress> toProgress(
+      List<String> statements, UpdateDatabaseDdlMetadata metadata) {
+    List<SpannerDdlStatementProgress> result = new ArrayList<>(statements.size());
+    for (int i = 0; i < statements.size(); i++) {
+      OperationProgress progress =
+          i < metadata.getProgressCount() ? metadata.getProgress(i) : null;
+      result.add(
+          new SpannerDdlStatementProgress(
+              statements.get(i),
+              i,
+              progress == null ? 0 : progress.getProgressPercent(),
+              progress != null && progress.hasStartTime()
+                  ? toInstant(progress.getStartTime())
+                  : null,
+              progress != null && progress.hasEndTime() ? toInstant(progress.getEndTime()) : null,
+              i < metadata.getCommitTimestampsCount()
+                  ? toInstant(metadata.getCommitTimestamps(i))
+                  : null));
+    }
+    return result;
+  }
+
+  private static Instant toInstant(Timestamp timestamp) {
+    return Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos());
+  }
+
+  @Override
+  public void close() {
+    spanner.close();
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate.schema;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.jboss.logging.Logger;
+
+/**
+ * Records the DDL statements that are executed in a DDL batch by a {@link SpannerDdlStatement},
+ * and reports each DDL operation to the log and to an optional {@link
+ * SpannerDdlOperationListener}.
+ *
+ * <p>If a listener is registered, the tracker also reads the progress of each statement from the
+ * metadata of the long-running operation with a {@link SpannerDdlOperationMonitor}. The progress
+ * is read at a fixed interval while `RUN BATCH` is running, and once more when it has finished.
+ */
+class SpannerDdlOperationTracker implements AutoCloseable {
+
+  private static final Logger log = Logger.getLogger(SpannerDdlOperationTracker.class);
+
+  private static final Duration POLL_INTERVAL = Duration.ofSeconds(5L);
+
+  private final SpannerDdlOperationListener listener;
+
+  private final Function<Connection, SpannerDdlOperationMonitor> monitorFactory;
+
+  private final Duration pollInterval;
+
+  private SpannerDdlOperationMonitor monitor;
+
+  private boolean monitorCreated;
+
+  private List<String> batchStatements;
+
+  SpannerDdlOperationTracker(SpannerDdlOperationListener listener) {
+    this(listener, SpannerDdlOperationMonitor::create, POLL_INTERVAL);
+  }
+
+  @VisibleForTesting
+  SpannerDdlOperationTracker(
+      SpannerDdlOperationListener listener,
+      Function<Connection, SpannerDdlOperationMonitor> monitorFactory,
+      Duration pollInterval) {
+    this.listener = listener;
+    this.monitorFactory = monitorFactory;
+    this.pollInterval = pollInterval;
+  }
+
+  /** Called when a `START BATCH DDL` statement has been executed successfully. */
+  void batchStarted() {
+    this.batchStatements = new ArrayList<>();
+  }
+
+  /** Called for each statement that is executed on the DDL connection. */
+  void statementExecuted(String sql) {
+    if (batchStatements != null) {
+      batchStatements.add(sql);
+    }
+  }
+
+  /**
+   * Executes the given `RUN BATCH` statement on the given connection and reports the result of the
+   * DDL operation.
+   */
+  boolean runBatch(Connection connection, SqlCallable<Boolean> runBatch) throws SQLException {
+    if (batchStatements == null) {
+      return runBatch.call();
+    }
+    List<String> statements = batchStatements;
+    batchStatements = null;
+    Instant startTime = Instant.now();
+    if (listener != null) {
+      listener.onDdlOperationStarted(statements, startTime);
+    }
+    ProgressPoller poller = startPolling(connection, statements, startTime);
+    try {
+      boolean result = runBatch.call();
+      List<SpannerDdlStatementProgress> progress = stopPolling(poller);
+      finished(new SpannerDdlOperation(
+          statements, startTime, Instant.now(), statements.size(), progress, null));
+      return result;
+    } catch (SQLException exception) {
+      Instant endTime = Instant.now();
+      List<SpannerDdlStatementProgress> progress = stopPolling(poller);
+      int completed = 0;
+      if (!progress.isEmpty()) {
+        while (completed < progress.size() && progress.get(completed).isCompleted()) {
+          completed++;
+        }
+      } else if (exception instanceof BatchUpdateException) {
+        int[] updateCounts = ((BatchUpdateException) exception).getUpdateCounts();
+        completed = updateCounts == null ? 0 : Math.min(updateCounts.length, statements.size());
+      }
+      finished(new SpannerDdlOperation(
+          statements, startTime, endTime, completed, progress, exception));
+      throw exception;
+    }
+  }
+
+  private ProgressPoller startPolling(
+      Connection connection, List<String> statements, Instant startTime) {
+    if (listener == null) {
+      return null;
+    }
+    if (!monitorCreated) {
+      monitorCreated = true;
+      monitor = monitorFactory.apply(connection);
+    }
+    if (monitor == null) {
+      return null;
+    }
+    ProgressPoller poller = new ProgressPoller(monitor, statements, startTime);
+    poller.executor.scheduleWithFixedDelay(
+        poller::poll, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    return poller;
+  }
+
+  /** Stops polling and returns the progress of each statement when the operation finished. */
+  private List<SpannerDdlStatementProgress> stopPolling(ProgressPoller poller) {
+    if (poller == null) {
+      return Collections.emptyList();
+    }
+    poller.executor.shutdownNow();
+    try {
+      poller.executor.awaitTermination(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+    List<SpannerDdlStatementProgress> progress = poller.poll();
+    return progress == null ? Collections.emptyList() : progress;
+  }
+
+  private void finished(SpannerDdlOperation operation) {
+    if (operation.isSuccessful()) {
+      log.infof("Cloud Spanner %s", operation);
+    } else {
+      int failedIndex = operation.getCompletedStatementCount();
+      log.warnf(
+          "Cloud Spanner %s failed at statement [%s]: %s",
+          operation,
+          failedIndex < operation.getStatements().size()
+              ? operation.getStatements().get(failedIndex)
+              : "unknown",
+          operation.getError().getMessage());
+    }
+    if (log.isDebugEnabled()) {
+      for (String statement : operation.getStatements()) {
+        log.debugf("  %s", statement);
+      }
+    }
+    if (listener != null) {
+      listener.onDdlOperationFinished(operation);
+    }
+  }
+
+  /** Closes the client that was used to read the progress of DDL operations. */
+  @Override
+  public void close() {
+    if (monitor != null) {
+      monitor.close();
+      monitor = null;
+    }
+  }
+
+  /**
+   * Reads the progress of a running DDL operation, and reports each statement whose progress has
+   * changed since the last poll to the log and the listener.
+   */
+  private class ProgressPoller {
+
+    private final ScheduledExecutorService executor =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+          Thread thread = new Thread(runnable, "spanner-ddl-operation-progress");
+          thread.setDaemon(true);
+          return thread;
+        });
+
+    private final SpannerDdlOperationMonitor monitor;
+
+    private final List<String> statements;
+
+    private final Instant startTime;
+
+    private List<SpannerDdlStatementProgress> lastProgress;
+
+    ProgressPoller(
+        SpannerDdlOperationMonitor monitor, List<String> statements, Instant startTime) {
+      this.monitor = monitor;
+      this.statements = statements;
+      this.startTime = startTime;
+    }
+
+    synchronized List<SpannerDdlStatementProgress> poll() {
+      List<SpannerDdlStatementProgress> progress;
+      try {
+        progress = monitor.getProgress(statements, startTime);
+      } catch (RuntimeException exception) {
+        log.debugf("Failed to read the progress of a DDL operation: %s", exception.getMessage());
+        return lastProgress;
+      }
+      if (progress == null) {
+        return lastProgress;
+      }
+      for (SpannerDdlStatementProgress statementProgress : progress) {
+        SpannerDdlStatementProgress previous =
+            lastProgress == null ? null : lastProgress.get(statementProgress.getIndex());
+        boolean started =
+            statementProgress.isCompleted() || statementProgress.getStartTime() != null;
+        if (started
+            && (previous == null
+                || previous.getProgressPercentage() != statementProgress.getProgressPercentage()
+                || !Objects.equals(
+                    previous.getCommitTimestamp(), statementProgress.getCommitTimestamp()))) {
+          if (statementProgress.isCompleted()) {
+            log.debugf("Cloud Spanner %s", statementProgress);
+          } else {
+            log.infof("Cloud Spanner %s", statementProgress);
+          }
+          listener.onDdlStatementProgress(statementProgress);
+        }
+      }
+      lastProgress = progress;
+      return progress;
+    }
+  }
+
+  /** Callable that can throw a {@link SQLException}. */
+  interface SqlCallable<T> {
+    T call() throws SQLException;
+  }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate.schema;
+
+import com.google.cloud.spanner.SpannerExceptionFactory;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import org.hibernate.tool.schema.spi.CommandAcceptanceException;
+
+/**
+ * {@link Statement} that is handed out by {@link SpannerDdlConnection}. All calls are delegated
+ * directly to the underlying JDBC statement, except for {@link #execute(String)} with a `START
+ * BATCH DDL` or `RUN BATCH` statement. Any {@link SQLException} that is thrown by one of those two
+ * statements is converted to a {@link com.google.cloud.spanner.SpannerException}, as Hibernate
+ * would otherwise silently ignore the error. DML statements that are executed after a DDL batch
+ * are grouped in a {@link SpannerDmlBatch}.
+ */
+class SpannerDdlStatement implements Statement {
+
+  /** The client-side statements that control a DDL batch. */
+  enum BatchControlStatement {
+    START_BATCH_DDL,
+    RUN_BATCH
+  }
+
+  private final SpannerDdlConnection connection;
+
+  private final Statement delegate;
+
+  private final SpannerDdlOperationTracker tracker;
+
+  private final SpannerDmlBatch dmlBatch;
+
+  SpannerDdlStatement(
+      SpannerDdlConnection connection,
+      Statement delegate,
+      SpannerDdlOperationTracker tracker,
+      SpannerDmlBatch dmlBatch) {
+    this.connection = connection;
+    this.delegate = delegate;
+    this.tracker = tracker;
+    this.dmlBatch = dmlBatch;
+  }
+
+  /**
+   * Returns true if the given SQL string is a `START BATCH DDL` or `RUN BATCH` statement. This
+   * check is executed for every DDL statement in a schema migration, and is therefore implemented
+   * as a simple keyword comparison instead of a full parse of the statement. The first character is
+   * enough to reject all normal DDL statements (create/alter/drop) and DML statements
+   * (insert/update/delete).
+   */
+  static boolean isBatchControlStatement(String sql) {
+    return parseBatchControlStatement(sql) != null;
+  }
+
+  /**
+   * Returns the {@link BatchControlStatement} that the given SQL string represents, or null if it
+   * is not a `START BATCH DDL` or `RUN BATCH` statement.
+   */
+  static BatchControlStatement parseBatchControlStatement(String sql) {
+    if (sql == null) {
+      return null;
+    }
+    int pos = skipWhitespace(sql, 0);
+    if (pos == sql.length()) {
+      return null;
+    }
+    BatchControlStatement result;
+    char first = sql.charAt(pos);
+    if (first == 'S' || first == 's') {
+      pos = matchKeyword(sql, pos, "START");
+      pos = matchKeyword(sql, pos, "BATCH");
+      pos = matchKeyword(sql, pos, "DDL");
+      result = BatchControlStatement.START_BATCH_DDL;
+    } else if (first == 'R' || first == 'r') {
+      pos = matchKeyword(sql, pos, "RUN");
+      pos = matchKeyword(sql, pos, "BATCH");
+      result = BatchControlStatement.RUN_BATCH;
+    } else {
+      return null;
+    }
+    if (pos < 0) {
+      return null;
+    }
+    // Allow an optional trailing semicolon.
+    pos = skipWhitespace(sql, pos);
+    if (pos < sql.length() && sql.charAt(pos) == ';') {
+      pos = skipWhitespace(sql, pos + 1);
+    }
+    return pos == sql.length() ? result : null;
+  }
+
+  /**
+   * Matches the given keyword at the given position after skipping any whitespace, and returns the
+   * position directly after the keyword, or -1 if the keyword is not found.
+   */
+  static int matchKeyword(String sql, int pos, String keyword) {
+    if (pos < 0) {
+      return -1;
+    }
+    pos = skipWhitespace(sql, pos);
+    if (!sql.regionMatches(true, pos, keyword, 0, keyword.length())) {
+      return -1;
+    }
+    int end = pos + keyword.length();
+    if (end < sql.length() && Character.isLetterOrDigit(sql.charAt(end))) {
+      return -1;
+    }
+    return end;
+  }
+
+  static int skipWhitespace(String sql, int pos) {
+    while (pos < sql.length() && Character.isWhitespace(sql.charAt(pos))) {
+      pos++;
+    }
+    return pos;
+  }
+
+  @Override
+  public boolean execute(String sql) throws SQLException {
+    if (dmlBatch.isBatchable(sql)) {
+      return dmlBatch.add(delegate, sql);
+    }
+    // Any pending DML batch must be executed before the statement. The statement is executed
+    // regardless of the result of the batch, and a failure of the batch is reported as a separate
+    // error, instead of as an error of this statement.
+    CommandAcceptanceException batchFailure = dmlBatch.flush(delegate);
+    try {
+      return executeStatement(sql);
+    } finally {
+      dmlBatch.handleFailure(batchFailure);
+    }
+  }
+
+  @Override
+  public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+    return delegate.execute(sql, autoGeneratedKeys);
+  }
+
+  @Override
+  public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+    return delegate.execute(sql, columnIndexes);
+  }
+
+  @Override
+  public boolean execute(String sql, String[] columnNames) throws SQLException {
+    return delegate.execute(sql, columnNames);
+  }
+
+  private boolean executeStatement(String sql) throws SQLException {
+    BatchControlStatement batchControlStatement = parseBatchControlStatement(sql);
+    if (batchControlStatement != null) {
+      try {
+        // Try to execute the statement, and convert any SQLException to a SpannerException.
+        if (batchControlStatement == BatchControlStatement.RUN_BATCH) {
+          boolean result = tracker.runBatch(connection, () -> delegate.execute(sql));
+          dmlBatch.ddlBatchCompleted();
+          return result;
+        }
+        boolean result = delegate.execute(sql);
+        tracker.batchStarted();
+        dmlBatch.ddlBatchStarted();
+        return result;
+      } catch (SQLException exception) {
+        throw SpannerExceptionFactory.newSpannerException(exception);
+      }
+    }
+    boolean result = delegate.execute(sql);
+    tracker.statementExecuted(sql);
+    return result;
+  }
+
+  @Override
+  public ResultSet executeQuery(String sql) throws SQLException {
+    return delegate.executeQuery(sql);
+  }
+
+  @Override
+  public int executeUpdate(String sql) throws SQLException {
+    return delegate.executeUpdate(sql);
+  }
+
+  @Override
+  public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+    return delegate.executeUpdate(sql, autoGeneratedKeys);
+  }
+
+  @Override
+  public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+    return delegate.executeUpdate(sql, columnIndexes);
+  }
+
+  @Override
+  public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+    return delegate.executeUpdate(sql, columnNames);
+  }
+
+  @Override
+  public void close() throws SQLException {
+    delegate.close();
+  }
+
+  @Override
+  public int getMaxFieldSize() throws SQLException {
+    return delegate.getMaxFieldSize();
+  }
+
+  @Override
+  public void setMaxFieldSize(int max) throws SQLException {
+    delegate.setMaxFieldSize(max);
+  }
+
+  @Override
+  public int getMaxRows() throws SQLException {
+    return delegate.getMaxRows();
+  }
+
+  @Override
+  public void setMaxRows(int max) throws SQLException {
+    delegate.setMaxRows(max);
+  }
+
+  @Override
+  public void setEscapeProcessing(boolean enable) throws SQLException {
+    delegate.setEscapeProcessing(enable);
+  }
+
+  @Override
+  public int getQueryTimeout() throws SQLException {
+    return delegate.getQueryTimeout();
+  }
+
+  @Override
+  public void setQueryTimeout(int seconds) throws SQLException {
+    delegate.setQueryTimeout(seconds);
+  }
+
+  @Override
+  public void cancel() throws SQLException {
+    delegate.cancel();
+  }
+
+  @Override
+  public SQLWarning getWarnings() throws SQLException {
+    return delegate.getWarnings();
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException {
+    delegate.clearWarnings();
+  }
+
+  @Override
+  public void setCursorName(String name) throws SQLException {
+    delegate.setCursorName(name);
+  }
+
+  @Override
+  public ResultSet getResultSet() throws SQLException {
+    return delegate.getResultSet();
+  }
+
+  @Override
+  public int getUpdateCount() throws SQLException {
+    return delegate.getUpdateCount();
+  }
+
+  @Override
+  public boolean getMoreResults() throws SQLException {
+    return delegate.getMoreResults();
+  }
+
+  @Override
+  public boolean getMoreResults(int current) throws SQLException {
+    return delegate.getMoreResults(current);
+  }
+
+  @Override
+  public void setFetchDirection(int direction) throws SQLException {
+    delegate.setFetchDirection(direction);
+  }
+
+  @Override
+  public int getFetchDirection() throws SQLException {
+    return delegate.getFetchDirection();
+  }
+
+  @Override
+  public void setFetchSize(int rows) throws SQLException {
+    delegate.setFetchSize(rows);
+  }
+
+  @Override
+  public int getFetchSize() throws SQLException {
+    return delegate.getFetchSize();
+  }
+
+  @Override
+  public int getResultSetConcurrency() throws SQLException {
+    return delegate.getResultSetConcurrency();
+  }
+
+  @Override
+  public int getResultSetType() throws SQLException {
+    return delegate.getResultSetType();
+  }
+
+  @Override
+  public void addBatch(String sql) throws SQLException {
+    delegate.addBatch(sql);
+  }
+
+  @Override
+  public void clearBatch() throws SQLException {
+    delegate.clearBatch();
+  }
+
+  @Override
+  public int[] executeBatch() throws SQLException {
+    return delegate.executeBatch();
+  }
+
+  @Override
+  public Connection getConnection() {
+    return connection;
+  }
+
+  @Override
+  public ResultSet getGeneratedKeys() throws SQLException {
+    return delegate.getGeneratedKeys();
+  }
+
+  @Override
+  public int getResultSetHoldability() throws SQLException {
+    return delegate.getResultSetHoldability();
+  }
+
+  @Override
+  public boolean isClosed() throws SQLException {
+    return delegate.isClosed();
+  }
+
+  @Override
+  public void setPoolable(boolean poolable) throws SQLException {
+    delegate.setPoolable(poolable);
+  }
+
+  @Override
+  public boolean isPoolable() throws SQLException {
+    return delegate.isPoolable();
+  }
+
+  @Override
+  public void closeOnCompletion() throws SQLException {
+    delegate.closeOnCompletion();
+  }
+
+  @Override
+  public boolean isCloseOnCompletion() throws SQLException {
+    return delegate.isCloseOnCompletion();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    return delegate.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || delegate.isWrapperFor(iface);
+  }
+}
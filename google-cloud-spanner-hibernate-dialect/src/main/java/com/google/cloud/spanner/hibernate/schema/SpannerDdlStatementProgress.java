@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate.schema;
+
+import java.time.Instant;
+
+/**
+ * The progress of one statement in a DDL operation, as reported by Cloud Spanner in the metadata of
+ * the long-running operation. Statements that backfill data, such as creating an index, report a
+ * progress percentage while they are running.
+ */
+public final class SpannerDdlStatementProgress {
+
+  private final String statement;
+
+  private final int index;
+
+  private final int progressPercentage;
+
+  private final Instant startTime;
+
+  private final Instant endTime;
+
+  private final Instant commitTimestamp;
+
+  SpannerDdlStatementProgress(
+      String statement,
+      int index,
+      int progressPercentage,
+      Instant startTime,
+      Instant endTime,
+      Instant commitTimestamp) {
+    this.statement = statement;
+    this.index = index;
+    this.progressPercentage = progressPercentage;
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.commitTimestamp = commitTimestamp;
+  }
+
+  /** Returns the DDL statement. */
+  public String getStatement() {
+    return statement;
+  }
+
+  /** Returns the index of the statement in the DDL operation. */
+  public int getIndex() {
+    return index;
+  }
+
+  /** Returns the percentage of the work of the statement that has been done. */
+  public int getProgressPercentage() {
+    return progressPercentage;
+  }
+
+  /** Returns the time that Cloud Spanner started the statement, or null if it has not started. */
+  public Instant getStartTime() {
+    return startTime;
+  }
+
+  /** Returns the time that the statement finished, or null if it has not finished. */
+  public Instant getEndTime() {
+    return endTime;
+  }
+
+  /**
+   * Returns the time that the schema change of the statement was committed, or null if the
+   * statement has not been committed.
+   */
+  public Instant getCommitTimestamp() {
+    return commitTimestamp;
+  }
+
+  /** Returns true if the statement was successfully executed. */
+  public boolean isCompleted() {
+    return commitTimestamp != null;
+  }
+
+  @Override
+  public String toString() {
+    return isCompleted()
+        ? String.format("DDL statement %d committed at %s: %s", index, commitTimestamp, statement)
+        : String.format("DDL statement %d %d%% done: %s", index, progressPercentage, statement);
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate.schema;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.tool.schema.spi.CommandAcceptanceException;
+import org.hibernate.tool.schema.spi.ExceptionHandler;
+import org.jboss.logging.Logger;
+
+/**
+ * Groups the DML statements that are executed directly after a DDL batch into a single DML batch.
+ * These are the statements that Hibernate executes to initialize the schema, such as the initial
+ * value of table-backed sequences and the statements in {@code hibernate.hbm2ddl.import_files}.
+ * Executing them as one DML batch means that they are sent to Cloud Spanner in one
+ * ExecuteBatchDml request and are applied in one read/write transaction, instead of using one
+ * round-trip and one transaction per statement.
+ *
+ * <p>The DML batch is started automatically for the first DML statement after a DDL batch, and is
+ * executed when a statement that is not DML is executed, or when the {@link
+ * org.hibernate.resource.transaction.spi.DdlTransactionIsolator} is released. A failure of the
+ * batch is reported to the {@link ExceptionHandler} of the schema migration as a separate error, so
+ * {@code hibernate.hbm2ddl.halt_on_error} determines whether the migration continues.
+ */
+class SpannerDmlBatch {
+
+  private static final Logger log = Logger.getLogger(SpannerDmlBatch.class);
+
+  /** The keywords that a DML statement can start with. */
+  private static final String[] DML_KEYWORDS = {"INSERT", "UPDATE", "DELETE"};
+
+  private final ExceptionHandler exceptionHandler;
+
+  private boolean ddlBatchCompleted;
+
+  private final List<String> statements = new ArrayList<>();
+
+  SpannerDmlBatch(ExceptionHandler exceptionHandler) {
+    this.exceptionHandler = exceptionHandler;
+  }
+
+  /** Called when a `START BATCH DDL` statement is executed. */
+  void ddlBatchStarted() {
+    this.ddlBatchCompleted = false;
+  }
+
+  /** Called when a `RUN BATCH` statement for a DDL batch has been executed successfully. */
+  void ddlBatchCompleted() {
+    this.ddlBatchCompleted = true;
+  }
+
+  /** Returns true if there is an active DML batch with statements that have not been executed. */
+  boolean isActive() {
+    return !statements.isEmpty();
+  }
+
+  /**
+   * Returns true if the given statement should be added to the DML batch. Only DML statements
+   * that are executed after a DDL batch are batched. Like the check for `START BATCH DDL` and `RUN
+   * BATCH` in {@link SpannerDdlStatement}, this is a simple keyword comparison instead of a full
+   * parse of the statement. DML statements that start with a comment or a hint are therefore
+   * executed outside the batch.
+   */
+  boolean isBatchable(String sql) {
+    if (!ddlBatchCompleted || sql == null) {
+      return false;
+    }
+    int pos = SpannerDdlStatement.skipWhitespace(sql, 0);
+    for (String keyword : DML_KEYWORDS) {
+      if (SpannerDdlStatement.matchKeyword(sql, pos, keyword) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Adds the given DML statement to the batch, and starts a new batch if needed. */
+  boolean add(Statement statement, String sql) throws SQLException {
+    if (statements.isEmpty()) {
+      statement.execute("START BATCH DML");
+    }
+    statements.add(sql);
+    return statement.execute(sql);
+  }
+
+  /**
+   * Executes the DML statements in the batch, if any, and returns the error if the batch failed.
+   * The error contains the statements in the batch, and should be passed to {@link
+   * #handleFailure(CommandAcceptanceException)} after the statement that caused the batch to be
+   * executed has been executed, so that statement is not skipped because of the failed batch.
+   */
+  CommandAcceptanceException flush(Statement statement) {
+    if (statements.isEmpty()) {
+      return null;
+    }
+    List<String> batch = new ArrayList<>(statements);
+    statements.clear();
+    try {
+      statement.execute("RUN BATCH");
+    } catch (SQLException exception) {
+      return new CommandAcceptanceException(
+          String.format(
+              "Error executing DML statements after DDL batch via JDBC [%s]%n%s",
+              exception.getMessage(), String.join(";\n", batch)),
+          exception);
+    }
+    log.debugf("Executed %d DML statements after DDL batch in one batch", batch.size());
+    return null;
+  }
+
+  /**
+   * Reports the given DML batch failure to the exception handler of the schema migration. The
+   * handler either logs the error or throws an exception, depending on {@code
+   * hibernate.hbm2ddl.halt_on_error}. Does nothing if the failure is null.
+   */
+  void handleFailure(CommandAcceptanceException failure) {
+    if (failure != null) {
+      exceptionHandler.handleException(failure);
+    }
+  }
+}
@@ -18,14 +18,24 @@
 
 package com.google.cloud.spanner.hibernate.schema;
 
+import com.google.cloud.spanner.hibernate.NotEnforcedForeignKeys;
+import java.util.Locale;
+import org.hibernate.HibernateException;
+import org.hibernate.annotations.OnDeleteAction;
 import org.hibernate.boot.Metadata;
 import org.hibernate.boot.model.relational.SqlStringGenerationContext;
 import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.internal.util.config.ConfigurationHelper;
 import org.hibernate.mapping.ForeignKey;
 import org.hibernate.tool.schema.internal.StandardForeignKeyExporter;
 
 /**
- * Produces the Foreign Key DDL strings for Hibernate table creation.
+ * Produces the Foreign Key DDL strings for Hibernate table creation. Foreign keys are created as
+ * informational {@code NOT ENFORCED} foreign keys if the table is annotated with {@link
+ * NotEnforcedForeignKeys}, or if informational foreign keys are the default. Foreign keys with
+ * {@code ON DELETE CASCADE} must be enforced. The default does not apply to them, and an error is
+ * thrown if they are annotated with {@link NotEnforcedForeignKeys}.
  */
 public class SpannerForeignKeyExporter extends StandardForeignKeyExporter {
 
@@ -39,6 +49,39 @@ public class SpannerForeignKeyExporter extends StandardForeignKeyExporter {
     this.spannerDatabaseInfo = spannerDatabaseInfo;
   }
 
+  @Override
+  public String[] getSqlCreateStrings(ForeignKey foreignKey, Metadata metadata,
+      SqlStringGenerationContext context) {
+    OnDeleteAction onDeleteAction = foreignKey.getOnDeleteAction();
+    if (onDeleteAction != null
+        && onDeleteAction != OnDeleteAction.NO_ACTION
+        && onDeleteAction != OnDeleteAction.CASCADE) {
+      throw new HibernateException("Cloud Spanner does not support on delete "
+          + onDeleteAction.toSqlString() + " for foreign key " + foreignKey.getName());
+    }
+
+    String[] createStrings = super.getSqlCreateStrings(foreignKey, metadata, context);
+    if (createStrings.length == 0) {
+      return createStrings;
+    }
+    boolean cascade = onDeleteAction == OnDeleteAction.CASCADE;
+    if (isNotEnforcedByAnnotation(foreignKey, metadata)) {
+      if (cascade) {
+        throw new HibernateException("Cloud Spanner does not support on delete cascade for "
+            + "foreign key " + foreignKey.getName() + " because it is not enforced");
+      }
+    } else if (cascade || !isNotEnforcedByDefault(metadata)) {
+      // The default only applies to foreign keys that can be created as informational keys.
+      return createStrings;
+    }
+    if (createStrings[0].toUpperCase(Locale.ENGLISH).endsWith(" ENFORCED")) {
+      // The foreign key definition already specifies whether it is enforced.
+      return createStrings;
+    }
+    createStrings[0] = createStrings[0] + " NOT ENFORCED";
+    return createStrings;
+  }
+
   @Override
   public String[] getSqlDropStrings(ForeignKey foreignKey, Metadata metadata,
       SqlStringGenerationContext context) {
@@ -54,6 +97,36 @@ public class SpannerForeignKeyExporter extends StandardForeignKeyExporter {
     }
   }
 
+  private boolean isNotEnforcedByAnnotation(ForeignKey foreignKey, Metadata metadata) {
+    NotEnforcedForeignKeys annotation =
+        SchemaUtils.getNotEnforcedForeignKeysAnnotation(foreignKey.getTable(), metadata);
+    if (annotation != null) {
+      if (annotation.value().length == 0) {
+        return true;
+      }
+      for (String name : annotation.value()) {
+        if (name.equalsIgnoreCase(foreignKey.getName())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if foreign keys are created as informational foreign keys by default. The
+   * setting is read from the metadata that is being exported, as the same exporter instance is
+   * shared by all schema management actions of the dialect.
+   */
+  private static boolean isNotEnforcedByDefault(Metadata metadata) {
+    return ConfigurationHelper.getBoolean(
+        SpannerSchemaManagementTool.FOREIGN_KEYS_NOT_ENFORCED,
+        metadata.getDatabase().getServiceRegistry()
+            .getService(ConfigurationService.class)
+            .getSettings(),
+        false);
+  }
+
   private boolean foreignKeyExists(ForeignKey foreignKey) {
     String table = foreignKey.getTable().getName();
     return spannerDatabaseInfo.getAllTables().contains(table)
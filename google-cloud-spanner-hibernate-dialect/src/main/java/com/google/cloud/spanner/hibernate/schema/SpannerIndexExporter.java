@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate.schema;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.model.relational.SqlStringGenerationContext;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.mapping.Index;
+import org.hibernate.tool.schema.internal.StandardIndexExporter;
+
+/**
+ * Produces the Index DDL strings for Hibernate table creation, including the Cloud Spanner
+ * specific options of {@link com.google.cloud.spanner.hibernate.SpannerIndex}.
+ */
+public class SpannerIndexExporter extends StandardIndexExporter {
+
+  public SpannerIndexExporter(Dialect dialect) {
+    super(dialect);
+  }
+
+  @Override
+  public String[] getSqlCreateStrings(Index index, Metadata metadata,
+      SqlStringGenerationContext context) {
+    String[] createStrings = super.getSqlCreateStrings(index, metadata, context);
+    createStrings[0] = SpannerTableStatements.addIndexOptions(
+        createStrings[0], index.getTable(), index.getName(), metadata);
+    return createStrings;
+  }
+}
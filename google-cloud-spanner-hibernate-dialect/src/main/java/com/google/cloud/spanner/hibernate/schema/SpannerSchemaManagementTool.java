@@ -18,29 +18,28 @@
 
 package com.google.cloud.spanner.hibernate.schema;
 
-import com.google.cloud.spanner.Dialect;
-import com.google.cloud.spanner.SpannerExceptionFactory;
-import com.google.cloud.spanner.connection.AbstractStatementParser;
-import com.google.cloud.spanner.connection.AbstractStatementParser.ParsedStatement;
-import com.google.cloud.spanner.connection.AbstractStatementParser.StatementType;
-import com.google.cloud.spanner.connection.StatementResult.ClientSideStatementType;
 import com.google.cloud.spanner.hibernate.SpannerTableExporter;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Map;
 import org.hibernate.boot.model.relational.SqlStringGenerationContext;
+import org.hibernate.boot.registry.selector.spi.StrategySelector;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.config.spi.StandardConverters;
 import org.hibernate.engine.jdbc.env.spi.JdbcEnvironment;
 import org.hibernate.resource.transaction.spi.DdlTransactionIsolator;
 import org.hibernate.service.ServiceRegistry;
 import org.hibernate.tool.schema.extract.internal.InformationExtractorJdbcDatabaseMetaDataImpl;
 import org.hibernate.tool.schema.extract.spi.ExtractionContext;
 import org.hibernate.tool.schema.extract.spi.InformationExtractor;
+import org.hibernate.tool.schema.internal.ExceptionHandlerHaltImpl;
+import org.hibernate.tool.schema.internal.ExceptionHandlerLoggedImpl;
 import org.hibernate.tool.schema.internal.HibernateSchemaManagementTool;
 import org.hibernate.tool.schema.internal.exec.JdbcContext;
+import org.hibernate.tool.schema.spi.CommandAcceptanceException;
+import org.hibernate.tool.schema.spi.ExceptionHandler;
 import org.hibernate.tool.schema.spi.ExecutionOptions;
 import org.hibernate.tool.schema.spi.ExtractionTool;
 import org.hibernate.tool.schema.spi.SchemaCreator;
@@ -54,31 +53,59 @@ import org.hibernate.tool.schema.spi.SchemaMigrator;
 public class SpannerSchemaManagementTool extends HibernateSchemaManagementTool {
 
   /**
-   * Custom implementation for {@link DdlTransactionIsolator} that will automatically create a proxy
-   * for Connection and Statement. These proxies will again be used to override the default behavior
-   * of the `START BATCH DDL` and `RUN BATCH` statements, by converting any {@link SQLException}
-   * that is returned by these methods into a {@link SpannerExceptionFactory}. The reason for this
-   * is that `START BATCH DDL` and `RUN BATCH` are added to each schema migration as auxiliary
-   * database objects automatically by the {@link SpannerSchemaManagementTool}. Hibernate will
-   * however silently ignore any {@link SQLException} that is thrown for auxiliary database objects.
-   * This means that if for example `RUN BATCH` fails, Hibernate will still report success for the
-   * entire migration. Throwing a {@link com.google.cloud.spanner.SpannerException} instead does
-   * cause an error to be returned for the migration.
+   * Property name that can be used to register a {@link SpannerDdlOperationListener} that is
+   * notified of each DDL operation that is executed during schema generation. The value can be an
+   * instance of {@link SpannerDdlOperationListener}, a listener class, or a fully qualified class
+   * name.
+   */
+  public static final String DDL_OPERATION_LISTENER = "hibernate.spanner.ddl_operation_listener";
+
+  /**
+   * Property name that can be used to create all foreign keys as informational foreign keys that
+   * are not enforced by Cloud Spanner. Foreign keys of a single entity can be created as
+   * informational foreign keys with the {@link
+   * com.google.cloud.spanner.hibernate.NotEnforcedForeignKeys} annotation. Foreign keys with
+   * {@code ON DELETE CASCADE} are always created as enforced foreign keys.
+   */
+  public static final String FOREIGN_KEYS_NOT_ENFORCED =
+      "hibernate.spanner.foreign_keys_not_enforced";
+
+  /**
+   * Custom implementation for {@link DdlTransactionIsolator} that will automatically wrap the
+   * Connection and Statements that are used for schema migrations. These wrappers override the
+   * default behavior of the `START BATCH DDL` and `RUN BATCH` statements, by converting any {@link
+   * SQLException} that is returned by these methods into a {@link
+   * com.google.cloud.spanner.SpannerException}. The reason for this is that `START BATCH DDL` and
+   * `RUN BATCH` are added to each schema migration as auxiliary database objects automatically by
+   * the {@link SpannerSchemaManagementTool}. Hibernate will however silently ignore any {@link
+   * SQLException} that is thrown for auxiliary database objects. This means that if for example
+   * `RUN BATCH` fails, Hibernate will still report success for the entire migration. Throwing a
+   * {@link com.google.cloud.spanner.SpannerException} instead does cause an error to be returned
+   * for the migration.
+   *
+   * <p>The wrappers are plain delegating classes (see {@link SpannerDdlConnection} and {@link
+   * SpannerDdlStatement}) that only use a cheap keyword check to recognize `START BATCH DDL` and
+   * `RUN BATCH`, as every DDL statement of a schema migration passes through them. Each DDL batch
+   * is reported to a {@link SpannerDdlOperationTracker} when `RUN BATCH` is executed. DML
+   * statements that follow a DDL batch are collected in a {@link SpannerDmlBatch}, which is
+   * executed at the latest when the isolator is released. A failure of the DML batch is passed to
+   * the {@link ExceptionHandler} that Hibernate uses for {@code hibernate.hbm2ddl.halt_on_error}.
    */
   static class SpannerDdlTransactionIsolator implements DdlTransactionIsolator {
 
-    private static final AbstractStatementParser PARSER =
-        AbstractStatementParser.getInstance(Dialect.GOOGLE_STANDARD_SQL);
-    private final Method connectionCloseMethod;
-    private final Method createStatementMethod;
-    private final Method executeMethod;
     private final DdlTransactionIsolator delegate;
 
-    SpannerDdlTransactionIsolator(DdlTransactionIsolator delegate) throws NoSuchMethodException {
+    private final SpannerDdlOperationTracker tracker;
+
+    private final SpannerDmlBatch dmlBatch;
+
+    SpannerDdlTransactionIsolator(
+        DdlTransactionIsolator delegate,
+        SpannerDdlOperationListener listener,
+        ExceptionHandler exceptionHandler) {
       this.delegate = delegate;
-      this.connectionCloseMethod = Connection.class.getDeclaredMethod("close");
-      this.createStatementMethod = Connection.class.getDeclaredMethod("createStatement");
-      this.executeMethod = Statement.class.getDeclaredMethod("execute", String.class);
+      this.tracker = new SpannerDdlOperationTracker(listener);
+      this.dmlBatch = new SpannerDmlBatch(exceptionHandler);
     }
 
     @Override
@@ -93,86 +120,33 @@ public class SpannerSchemaManagementTool extends HibernateSchemaManagementTool {
     
     @Override
     public Connection getIsolatedConnection(boolean autocommit) {
-      Connection delegateConnection = this.delegate.getIsolatedConnection(autocommit);
-      // Create a proxy for the connection that will override the call to
-      // Connection#createStatement().
-      return (Connection)
-          Proxy.newProxyInstance(
-              delegateConnection.getClass().getClassLoader(),
-              new Class[]{Connection.class},
-              (proxy, method, args) -> {
-                // Only handle the Connection#createStatement() differently.
-                // All other methods are just passed through.
-                if (method.equals(createStatementMethod)) {
-                  // Create a proxy for the returned Statement that will override the behavior of
-                  // Statement#execute(String).
-                  return createProxyStatement(delegateConnection);
-                } else if (method.equals(connectionCloseMethod)) {
-                  // Ignore as the connection is released when this DdlTransactionIsolator is
-                  // released.
-                  return null;
-                }
-                try {
-                  return method.invoke(delegateConnection, args);
-                } catch (InvocationTargetException e) {
-                  throw e.getTargetException();
-                }
-              });
-      
+      return new SpannerDdlConnection(
+          this.delegate.getIsolatedConnection(autocommit), tracker, dmlBatch);
     }
 
     /**
-     * Creates a proxy for a {@link Statement} that will throw a
-     * {@link com.google.cloud.spanner.SpannerException} instead of a {@link SQLException} if a
-     * `START BATCH DDL` or `RUN BATCH` statement fails.
+     * Executes any DML statements that were executed after the last DDL batch and releases the
+     * isolated connection. A failure of the DML batch is reported to the exception handler, which
+     * only throws an exception if {@code hibernate.hbm2ddl.halt_on_error} is enabled.
      */
-    private Statement createProxyStatement(Connection delegateConnection) throws SQLException {
-      Statement delegateStatement = delegateConnection.createStatement();
-      return (Statement)
-          Proxy.newProxyInstance(
-              delegateConnection.getClass().getClassLoader(),
-              new Class[]{Statement.class},
-              (proxy1, method1, args1) -> {
-                // Only handle the Statement#execute(String) method differently.
-                // All other methods are just passed through.
-                if (method1.equals(executeMethod)
-                    && args1 != null
-                    && args1.length == 1
-                    && args1[0] instanceof String) {
-                  // Check if the statement that is being executed is either `START BATCH
-                  // DDL` or `RUN BATCH`.
-                  String sql = (String) args1[0];
-                  ParsedStatement statement =
-                      PARSER.parse(com.google.cloud.spanner.Statement.of(sql));
-                  if (statement.getType() == StatementType.CLIENT_SIDE
-                      && (statement.getClientSideStatementType()
-                      == ClientSideStatementType.START_BATCH_DDL
-                      || statement.getClientSideStatementType()
-                      == ClientSideStatementType.RUN_BATCH)) {
-                    try {
-                      // Try to execute the statement, and convert any SQLException to a
-                      // SpannerException.
-                      return method1.invoke(delegateStatement, args1);
-                    } catch (InvocationTargetException exception) {
-                      if (exception.getTargetException() instanceof SQLException) {
-                        throw SpannerExceptionFactory.newSpannerException(
-                            exception.getTargetException());
-                      }
-                      throw exception.getTargetException();
-                    }
-                  }
-                }
-                try {
-                  return method1.invoke(delegateStatement, args1);
-                } catch (InvocationTargetException e) {
-                  throw e.getTargetException();
-                }
-              });
-    }
-
     @Override
     public void release() {
-      delegate.release();
+      try {
+        if (dmlBatch.isActive()) {
+          CommandAcceptanceException batchFailure;
+          try (Statement statement = delegate.getIsolatedConnection().createStatement()) {
+            batchFailure = dmlBatch.flush(statement);
+          } catch (SQLException exception) {
+            batchFailure =
+                new CommandAcceptanceException(
+                    "Unable to execute DML statements after DDL batch", exception);
+          }
+          dmlBatch.handleFailure(batchFailure);
+        }
+      } finally {
+        tracker.close();
+        delegate.release();
+      }
     }
   }
 
@@ -193,12 +167,10 @@ public class SpannerSchemaManagementTool extends HibernateSchemaManagementTool {
 
   @Override
   public DdlTransactionIsolator getDdlTransactionIsolator(JdbcContext jdbcContext) {
-    DdlTransactionIsolator delegate = super.getDdlTransactionIsolator(jdbcContext);
-    try {
-      return new SpannerDdlTransactionIsolator(delegate);
-    } catch (Throwable ignore) {
-      return delegate;
-    }
+    return new SpannerDdlTransactionIsolator(
+        super.getDdlTransactionIsolator(jdbcContext),
+        resolveDdlOperationListener(),
+        resolveExceptionHandler());
   }
 
   DdlTransactionIsolator getDdlTransactionIsolator(ExecutionOptions options) {
@@ -206,6 +178,37 @@ public class SpannerSchemaManagementTool extends HibernateSchemaManagementTool {
     return this.getDdlTransactionIsolator(jdbcContext);
   }
 
+  private SpannerDdlOperationListener resolveDdlOperationListener() {
+    ServiceRegistry serviceRegistry = getServiceRegistry();
+    if (serviceRegistry == null) {
+      return null;
+    }
+    Object setting =
+        serviceRegistry.getService(ConfigurationService.class)
+            .getSettings()
+            .get(DDL_OPERATION_LISTENER);
+    if (setting == null) {
+      return null;
+    }
+    return serviceRegistry.getService(StrategySelector.class)
+        .resolveStrategy(SpannerDdlOperationListener.class, setting);
+  }
+
+  /**
+   * Returns the same {@link ExceptionHandler} that Hibernate uses for the schema migration, based
+   * on {@code hibernate.hbm2ddl.halt_on_error}.
+   */
+  private ExceptionHandler resolveExceptionHandler() {
+    ServiceRegistry serviceRegistry = getServiceRegistry();
+    if (serviceRegistry == null) {
+      return ExceptionHandlerLoggedImpl.INSTANCE;
+    }
+    boolean haltOnError =
+        serviceRegistry.getService(ConfigurationService.class)
+            .getSetting(AvailableSettings.HBM2DDL_HALT_ON_ERROR, StandardConverters.BOOLEAN, false);
+    return haltOnError ? ExceptionHandlerHaltImpl.INSTANCE : ExceptionHandlerLoggedImpl.INSTANCE;
+  }
+
   @Override
   public ExtractionTool getExtractionTool() {
     return SpannerExtractionTool.INSTANCE;
@@ -253,4 +256,9 @@ public class SpannerSchemaManagementTool extends HibernateSchemaManagementTool {
     JdbcContext jdbcContext = this.resolveJdbcContext(options.getConfigurationValues());
     return (SpannerForeignKeyExporter) jdbcContext.getDialect().getForeignKeyExporter();
   }
+
+  SpannerTableMigrator getTableMigrator(ExecutionOptions options) {
+    JdbcContext jdbcContext = this.resolveJdbcContext(options.getConfigurationValues());
+    return (SpannerTableMigrator) jdbcContext.getDialect().getTableMigrator();
+  }
 }
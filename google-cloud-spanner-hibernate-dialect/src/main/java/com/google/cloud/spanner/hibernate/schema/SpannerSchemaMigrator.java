@@ -61,6 +61,7 @@ public class SpannerSchemaMigrator implements SchemaMigrator {
       SpannerDatabaseInfo spannerDatabaseInfo = new SpannerDatabaseInfo(connection.getMetaData());
       tool.getSpannerTableExporter(options).init(metadata, spannerDatabaseInfo, Action.UPDATE);
       tool.getForeignKeyExporter(options).init(spannerDatabaseInfo);
+      tool.getTableMigrator(options).init(spannerDatabaseInfo);
       schemaMigrator.doMigration(metadata, options, contributableInclusionFilter, targetDescriptor);
     } catch (SQLException e) {
       throw new RuntimeException("Failed to update Spanner table schema.", e);
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate.schema;
+
+import com.google.cloud.spanner.hibernate.SearchIndex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.model.naming.Identifier;
+import org.hibernate.boot.model.relational.SqlStringGenerationContext;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.mapping.Table;
+import org.hibernate.tool.schema.extract.spi.TableInformation;
+import org.hibernate.tool.schema.internal.StandardTableMigrator;
+
+/**
+ * Produces the alter table DDL strings for existing tables during a schema update, including the
+ * statements that add or replace the row deletion policy of a table and the statements that add
+ * missing full-text search indexes.
+ */
+public class SpannerTableMigrator extends StandardTableMigrator {
+
+  private SpannerDatabaseInfo spannerDatabaseInfo;
+
+  public SpannerTableMigrator(Dialect dialect) {
+    super(dialect);
+  }
+
+  public void init(SpannerDatabaseInfo spannerDatabaseInfo) {
+    this.spannerDatabaseInfo = spannerDatabaseInfo;
+  }
+
+  @Override
+  public String[] getSqlAlterStrings(Table table, Metadata metadata, TableInformation tableInfo,
+      SqlStringGenerationContext context) {
+    List<String> result = new ArrayList<>(
+        Arrays.asList(super.getSqlAlterStrings(table, metadata, tableInfo, context)));
+    if (spannerDatabaseInfo == null) {
+      return result.toArray(new String[0]);
+    }
+    addSearchIndexStrings(table, metadata, tableInfo, result);
+
+    String rowDeletionPolicy =
+        SpannerTableStatements.getRowDeletionPolicyExpression(table, metadata);
+    if (rowDeletionPolicy != null) {
+      String currentRowDeletionPolicy = spannerDatabaseInfo.getRowDeletionPolicy(table.getName());
+      String action = null;
+      if (currentRowDeletionPolicy == null) {
+        action = "ADD";
+      } else if (!normalize(currentRowDeletionPolicy).equals(normalize(rowDeletionPolicy))) {
+        action = "REPLACE";
+      }
+      if (action != null) {
+        result.add("alter table " + table.getQuotedName()
+            + " " + action + " ROW DELETION POLICY (" + rowDeletionPolicy + ")");
+      }
+    }
+    return result.toArray(new String[0]);
+  }
+
+  private void addSearchIndexStrings(Table table, Metadata metadata, TableInformation tableInfo,
+      List<String> result) {
+    for (Entry<String, String> tokenListColumn :
+        SpannerTableStatements.getTokenListColumnDefinitions(table, metadata).entrySet()) {
+      if (tableInfo.getColumn(Identifier.toIdentifier(tokenListColumn.getKey())) == null) {
+        result.add("alter table " + table.getQuotedName()
+            + " add column " + tokenListColumn.getValue());
+      }
+    }
+    for (SearchIndex searchIndex : SchemaUtils.getSearchIndexAnnotations(table, metadata)) {
+      if (!spannerDatabaseInfo.getAllIndices().contains(searchIndex.name())) {
+        result.add(SpannerTableStatements.getCreateSearchIndexString(table, searchIndex));
+      }
+    }
+  }
+
+  private static String normalize(String expression) {
+    return expression.replaceAll("\\s", "").toUpperCase(Locale.ENGLISH);
+  }
+}
@@ -21,14 +21,20 @@ package com.google.cloud.spanner.hibernate.schema;
 import com.google.cloud.spanner.Type.Code;
 import com.google.cloud.spanner.hibernate.BitReversedSequenceStyleGenerator.ReplaceInitCommand;
 import com.google.cloud.spanner.hibernate.Interleaved;
+import com.google.cloud.spanner.hibernate.RowDeletionPolicy;
+import com.google.cloud.spanner.hibernate.SearchIndex;
 import com.google.cloud.spanner.hibernate.SpannerDialect;
+import com.google.cloud.spanner.hibernate.SpannerIndex;
 import com.google.cloud.spanner.hibernate.types.SpannerArrayListType;
 import com.google.common.collect.Sets;
 import java.sql.Types;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import org.hibernate.boot.Metadata;
@@ -62,8 +68,21 @@ public class SpannerTableStatements {
 
   /** Generates the statements needed to drop a table. */
   public List<String> dropTable(Table table) {
+    return dropTable(table, null);
+  }
+
+  /** Generates the statements needed to drop a table, including its search indexes. */
+  public List<String> dropTable(Table table, Metadata metadata) {
     ArrayList<String> dropStrings = new ArrayList<>();
 
+    if (metadata != null) {
+      for (SearchIndex searchIndex : SchemaUtils.getSearchIndexAnnotations(table, metadata)) {
+        if (spannerDatabaseInfo.getAllIndices().contains(searchIndex.name())) {
+          dropStrings.add("drop search index " + searchIndex.name());
+        }
+      }
+    }
+
     for (String indexName : getTableIndices(table)) {
       if (spannerDatabaseInfo.getAllIndices().contains(indexName)) {
         dropStrings.add("drop index " + indexName);
@@ -121,11 +140,14 @@ public class SpannerTableStatements {
             .map(Column::getQuotedName)
             .collect(Collectors.joining(","));
 
-    // Get the comma separated string of all columns of the table.
-    String allColumnNames =
+    // Get the comma separated string of all columns of the table, including the hidden TOKENLIST
+    // columns of search indexes.
+    List<String> columnDefinitions =
         table.getColumns().stream()
             .map(column -> buildColumnTypeString(column, metadata))
-            .collect(Collectors.joining(","));
+            .collect(Collectors.toList());
+    columnDefinitions.addAll(getTokenListColumnDefinitions(table, metadata).values());
+    String allColumnNames = String.join(",", columnDefinitions);
 
     ArrayList<String> statements = new ArrayList<>();
 
@@ -136,9 +158,10 @@ public class SpannerTableStatements {
             table.getQuotedName(),
             allColumnNames,
             primaryKeyColNames,
-            getInterleavedClause(table, metadata));
+            getInterleavedClause(table, metadata) + getRowDeletionPolicyClause(table, metadata));
 
     statements.add(createTableString);
+    statements.addAll(getCreateSearchIndexStrings(table, metadata));
 
     if (table.getName().equals(SequenceStyleGenerator.SEQUENCE_PARAM)) {
       // Caches the INSERT statement since DML statements must be run after a DDL batch.
@@ -176,10 +199,41 @@ public class SpannerTableStatements {
     if (col.getDefaultValue() != null) {
       result = result + " default (" + col.getDefaultValue() + ")";
     }
+    if (col.getGeneratedAs() != null) {
+      // Generated columns are declared with @GeneratedColumn and are read-only in Hibernate.
+      result = result + this.spannerDialect.generatedAs(col.getGeneratedAs());
+    }
     
     return result;
   }
 
+  /**
+   * Adds the Cloud Spanner specific options of the {@link SpannerIndex} annotation for the given
+   * index to a create index statement; i.e. "create NULL_FILTERED index idx on tbl (col) STORING
+   * (col2), INTERLEAVE IN parent". The statement is returned unchanged if the entity of the table
+   * has no {@link SpannerIndex} annotation for the index.
+   */
+  public static String addIndexOptions(
+      String createIndexString, Table table, String indexName, Metadata metadata) {
+    SpannerIndex spannerIndex = SchemaUtils.getSpannerIndexAnnotation(table, indexName, metadata);
+    if (spannerIndex == null) {
+      return createIndexString;
+    }
+    StringBuilder result = new StringBuilder(createIndexString);
+    if (spannerIndex.nullFiltered()) {
+      // Both 'create index' and 'create unique index' start with the same 'create ' prefix.
+      result.insert(result.indexOf("index "), "NULL_FILTERED ");
+    }
+    if (spannerIndex.storing().length > 0) {
+      result.append(" STORING (").append(String.join(",", spannerIndex.storing())).append(")");
+    }
+    if (spannerIndex.interleaveIn() != void.class) {
+      Table parentTable = SchemaUtils.getTable(spannerIndex.interleaveIn(), metadata);
+      result.append(", INTERLEAVE IN ").append(parentTable.getQuotedName());
+    }
+    return result.toString();
+  }
+
   private static String getInterleavedClause(Table table, Metadata metadata) {
     Interleaved interleaved = SchemaUtils.getInterleaveAnnotation(table, metadata);
     if (interleaved != null) {
@@ -194,6 +248,76 @@ public class SpannerTableStatements {
     return "";
   }
 
+  /** Returns the name of the hidden TOKENLIST column that is generated for the given column. */
+  public static String getTokenListColumnName(String columnName) {
+    return columnName + SearchIndex.TOKEN_LIST_COLUMN_SUFFIX;
+  }
+
+  /**
+   * Returns the definitions of the hidden TOKENLIST columns of the {@link SearchIndex} annotations
+   * on a table, keyed by column name; i.e. "col_Tokens tokenlist as (tokenize_fulltext(col))
+   * hidden".
+   */
+  static Map<String, String> getTokenListColumnDefinitions(Table table, Metadata metadata) {
+    Map<String, String> result = new LinkedHashMap<>();
+    for (SearchIndex searchIndex : SchemaUtils.getSearchIndexAnnotations(table, metadata)) {
+      for (String column : searchIndex.columns()) {
+        String tokenListColumn = getTokenListColumnName(column);
+        result.putIfAbsent(
+            tokenListColumn,
+            tokenListColumn + " tokenlist as (tokenize_fulltext(" + column + ")) hidden");
+      }
+    }
+    return result;
+  }
+
+  /** Returns the create statements of the {@link SearchIndex} annotations on a table. */
+  static List<String> getCreateSearchIndexStrings(Table table, Metadata metadata) {
+    List<String> result = new ArrayList<>();
+    for (SearchIndex searchIndex : SchemaUtils.getSearchIndexAnnotations(table, metadata)) {
+      result.add(getCreateSearchIndexString(table, searchIndex));
+    }
+    return result;
+  }
+
+  static String getCreateSearchIndexString(Table table, SearchIndex searchIndex) {
+    return "create search index "
+        + searchIndex.name()
+        + " on "
+        + table.getQuotedName()
+        + " ("
+        + Arrays.stream(searchIndex.columns())
+            .map(SpannerTableStatements::getTokenListColumnName)
+            .collect(Collectors.joining(","))
+        + ")";
+  }
+
+  private static String getRowDeletionPolicyClause(Table table, Metadata metadata) {
+    String rowDeletionPolicy = getRowDeletionPolicyExpression(table, metadata);
+    if (rowDeletionPolicy != null) {
+      return ", ROW DELETION POLICY (" + rowDeletionPolicy + ")";
+    }
+
+    return "";
+  }
+
+  /**
+   * Returns the row deletion policy expression of the {@link RowDeletionPolicy} annotation on a
+   * table; i.e. "OLDER_THAN(col_name, INTERVAL 30 DAY)", or null if the table has no policy.
+   */
+  static String getRowDeletionPolicyExpression(Table table, Metadata metadata) {
+    RowDeletionPolicy rowDeletionPolicy =
+        SchemaUtils.getRowDeletionPolicyAnnotation(table, metadata);
+    if (rowDeletionPolicy == null) {
+      return null;
+    }
+    return "OLDER_THAN("
+        + rowDeletionPolicy.column()
+        + ", INTERVAL "
+        + rowDeletionPolicy.olderThanDays()
+        + " DAY)";
+  }
+
   private static List<Column> getSortedPkColumns(Table table, Metadata metadata) {
     Interleaved interleaved = SchemaUtils.getInterleaveAnnotation(table, metadata);
     if (interleaved == null) {
@@ -29,8 +29,15 @@ import com.google.cloud.spanner.hibernate.entities.Airport;
 import com.google.cloud.spanner.hibernate.entities.Child;
 import com.google.cloud.spanner.hibernate.entities.Customer;
 import com.google.cloud.spanner.hibernate.entities.Employee;
+import com.google.cloud.spanner.hibernate.entities.Event;
 import com.google.cloud.spanner.hibernate.entities.GrandParent;
+import com.google.cloud.spanner.hibernate.entities.Invoice;
 import com.google.cloud.spanner.hibernate.entities.Parent;
+import com.google.cloud.spanner.hibernate.entities.Payment;
+import com.google.cloud.spanner.hibernate.entities.Product;
+import com.google.cloud.spanner.hibernate.entities.Track;
+import com.google.cloud.spanner.hibernate.entities.UserAccount;
+import com.google.cloud.spanner.hibernate.schema.SpannerSchemaManagementTool;
 import com.mockrunner.mock.jdbc.JDBCMockObjectFactory;
 import com.mockrunner.mock.jdbc.MockConnection;
 import java.sql.SQLException;
@@ -40,6 +47,9 @@ import org.hibernate.boot.Metadata;
 import org.hibernate.boot.MetadataSources;
 import org.hibernate.boot.registry.StandardServiceRegistry;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -108,7 +118,9 @@ public class GeneratedCreateTableStatementsTests {
               + "INTERLEAVE IN PARENT Parent",
           "create table GrandParent_Sequence (next_val int64) PRIMARY KEY ()",
           "RUN BATCH",
-          "insert into GrandParent_Sequence values ( 1 )"
+          "START BATCH DML",
+          "insert into GrandParent_Sequence values ( 1 )",
+          "RUN BATCH"
       );
     } finally {
       SpannerDialect.enableSpannerSequences();
@@ -150,6 +162,125 @@ public class GeneratedCreateTableStatementsTests {
     );
   }
 
+  @Test
+  public void testCreateIndexesWithSpannerIndexOptions() {
+    Metadata metadata =
+        new MetadataSources(this.registry)
+            .addAnnotatedClass(GrandParent.class)
+            .addAnnotatedClass(Parent.class)
+            .addAnnotatedClass(Track.class)
+            .buildMetadata();
+
+    Session session = metadata.buildSessionFactory().openSession();
+    session.beginTransaction();
+    session.close();
+
+    List<String> sqlStrings =
+        connection.getStatementResultSetHandler().getExecutedStatements();
+    assertThat(sqlStrings).containsExactly(
+        "START BATCH DDL",
+        "drop sequence GrandParent_Sequence",
+        "RUN BATCH",
+        "START BATCH DDL",
+        "create sequence GrandParent_Sequence options(sequence_kind=\"bit_reversed_positive\")",
+        "create table GrandParent (grandParentId int64 not null,name string(255)) "
+            + "PRIMARY KEY (grandParentId)",
+        "create table Parent (grandParentId int64 not null,parentId int64 not null,"
+            + "name string(255)) PRIMARY KEY (grandParentId,parentId), "
+            + "INTERLEAVE IN PARENT GrandParent",
+        "create table Track (duration int64,grandParentId int64 not null,"
+            + "parentId int64 not null,trackId int64 not null,code string(255),"
+            + "title string(255)) PRIMARY KEY (grandParentId,parentId,trackId), "
+            + "INTERLEAVE IN PARENT Parent",
+        "create NULL_FILTERED index idx_track_title on Track (grandParentId, parentId, title) "
+            + "STORING (duration,code), INTERLEAVE IN Parent",
+        "create index idx_track_duration on Track (duration)",
+        "create unique NULL_FILTERED index uq_track_code on Track (code)",
+        "RUN BATCH"
+    );
+  }
+
+  @Test
+  public void testCreateTableWithRowDeletionPolicy() {
+    Metadata metadata =
+        new MetadataSources(this.registry)
+            .addAnnotatedClass(Event.class)
+            .buildMetadata();
+
+    Session session = metadata.buildSessionFactory().openSession();
+    session.beginTransaction();
+    session.close();
+
+    List<String> sqlStrings =
+        connection.getStatementResultSetHandler().getExecutedStatements();
+    assertThat(sqlStrings).containsExactly(
+        "START BATCH DDL",
+        "RUN BATCH",
+        "START BATCH DDL",
+        "create table Event (createdAt timestamp,id int64 not null) PRIMARY KEY (id), "
+            + "ROW DELETION POLICY (OLDER_THAN(createdAt, INTERVAL 30 DAY))",
+        "RUN BATCH"
+    );
+  }
+
+  @Test
+  public void testCreateTableWithGeneratedColumn() {
+    Metadata metadata =
+        new MetadataSources(this.registry)
+            .addAnnotatedClass(UserAccount.class)
+            .buildMetadata();
+
+    SessionFactoryImplementor sessionFactory =
+        (SessionFactoryImplementor) metadata.buildSessionFactory();
+    Session session = sessionFactory.openSession();
+    session.beginTransaction();
+    session.close();
+
+    List<String> sqlStrings =
+        connection.getStatementResultSetHandler().getExecutedStatements();
+    assertThat(sqlStrings).containsExactly(
+        "START BATCH DDL",
+        "RUN BATCH",
+        "START BATCH DDL",
+        "create table UserAccount (id int64 not null,email string(255),"
+            + "normalizedEmail string(255) as (LOWER(email)) stored) PRIMARY KEY (id)",
+        "RUN BATCH"
+    );
+
+    // The generated column should never be included in insert or update statements.
+    EntityPersister persister = sessionFactory.getMappingMetamodel()
+        .getEntityDescriptor(UserAccount.class);
+    int index = persister.getPropertyIndex("normalizedEmail");
+    assertThat(persister.getPropertyInsertability()[index]).isFalse();
+    assertThat(persister.getPropertyUpdateability()[index]).isFalse();
+  }
+
+  @Test
+  public void testCreateTableWithSearchIndex() {
+    Metadata metadata =
+        new MetadataSources(this.registry)
+            .addAnnotatedClass(Product.class)
+            .buildMetadata();
+
+    Session session = metadata.buildSessionFactory().openSession();
+    session.beginTransaction();
+    session.close();
+
+    List<String> sqlStrings =
+        connection.getStatementResultSetHandler().getExecutedStatements();
+    assertThat(sqlStrings).containsExactly(
+        "START BATCH DDL",
+        "RUN BATCH",
+        "START BATCH DDL",
+        "create table Product (id int64 not null,description string(255),name string(255),"
+            + "name_Tokens tokenlist as (tokenize_fulltext(name)) hidden,"
+            + "description_Tokens tokenlist as (tokenize_fulltext(description)) hidden) "
+            + "PRIMARY KEY (id)",
+        "create search index ProductsByText on Product (name_Tokens,description_Tokens)",
+        "RUN BATCH"
+    );
+  }
+
   @Test
   public void testCreateTables() {
     SpannerDialect.disableSpannerSequences();
@@ -177,7 +308,9 @@ public class GeneratedCreateTableStatementsTests {
           "alter table Employee add constraint FKiralam2duuhr33k8a10aoc2t6 "
               + "foreign key (manager_id) references Employee (id)",
           "RUN BATCH",
-          "insert into Employee_Sequence values ( 1 )"
+          "START BATCH DML",
+          "insert into Employee_Sequence values ( 1 )",
+          "RUN BATCH"
       );
     } finally {
       SpannerDialect.enableSpannerSequences();
@@ -213,6 +346,72 @@ public class GeneratedCreateTableStatementsTests {
     );
   }
 
+  @Test
+  public void testCreateNotEnforcedForeignKey() {
+    Metadata metadata =
+        new MetadataSources(this.registry)
+            .addAnnotatedClass(Customer.class)
+            .addAnnotatedClass(Payment.class)
+            .buildMetadata();
+
+    Session session = metadata.buildSessionFactory().openSession();
+    session.beginTransaction();
+    session.close();
+
+    List<String> sqlStrings =
+        this.connection.getStatementResultSetHandler().getExecutedStatements();
+    assertThat(sqlStrings).contains(
+        "alter table Payment add constraint fk_payment_customer "
+            + "foreign key (customer_customerId) references Customer (customerId) NOT ENFORCED");
+  }
+
+  @Test
+  public void testCreateNotEnforcedForeignKeysByDefault() {
+    StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+        .applySettings(this.registry.getService(ConfigurationService.class).getSettings())
+        .applySetting(SpannerSchemaManagementTool.FOREIGN_KEYS_NOT_ENFORCED, "true")
+        .build();
+    Metadata metadata =
+        new MetadataSources(registry)
+            .addAnnotatedClass(Employee.class)
+            .buildMetadata();
+
+    Session session = metadata.buildSessionFactory().openSession();
+    session.beginTransaction();
+    session.close();
+
+    List<String> sqlStrings =
+        this.connection.getStatementResultSetHandler().getExecutedStatements();
+    assertThat(sqlStrings).contains(
+        "alter table Employee add constraint FKiralam2duuhr33k8a10aoc2t6 "
+            + "foreign key (manager_id) references Employee (id) NOT ENFORCED");
+  }
+
+  @Test
+  public void testCreateCascadeForeignKeyEnforcedByDefault() {
+    StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+        .applySettings(this.registry.getService(ConfigurationService.class).getSettings())
+        .applySetting(SpannerSchemaManagementTool.FOREIGN_KEYS_NOT_ENFORCED, "true")
+        .build();
+    Metadata metadata =
+        new MetadataSources(registry)
+            .addAnnotatedClass(Customer.class)
+            .addAnnotatedClass(Invoice.class)
+            .buildMetadata();
+
+    Session session = metadata.buildSessionFactory().openSession();
+    session.beginTransaction();
+    session.close();
+
+    // The default does not apply to foreign keys with on delete cascade.
+    List<String> sqlStrings =
+        this.connection.getStatementResultSetHandler().getExecutedStatements();
+    assertThat(sqlStrings).contains(
+        "alter table Invoice add constraint fk_invoice_customer "
+            + "foreign key (customer_customerId) references Customer (customerId) "
+            + "on delete cascade");
+  }
+
   @Test
   public void testCreateNumericColumn() {
     Metadata metadata =
@@ -258,7 +457,9 @@ public class GeneratedCreateTableStatementsTests {
             + "PRIMARY KEY (customerId)",
         "create table customerId (next_val int64) PRIMARY KEY ()",
         "RUN BATCH",
-        "insert into customerId (next_val) values ( 50000 )"
+        "START BATCH DML",
+        "insert into customerId (next_val) values ( 50000 )",
+        "RUN BATCH"
     );
   }
 
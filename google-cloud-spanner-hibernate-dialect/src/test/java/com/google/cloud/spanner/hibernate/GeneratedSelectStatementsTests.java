@@ -19,7 +19,9 @@
 package com.google.cloud.spanner.hibernate;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import com.google.cloud.spanner.hibernate.entities.Product;
 import com.google.cloud.spanner.hibernate.entities.SubTestEntity;
 import com.google.cloud.spanner.hibernate.entities.TestEntity;
 import com.google.cloud.spanner.hibernate.entities.TestEntity.IdClass;
@@ -29,6 +31,7 @@ import com.mockrunner.mock.jdbc.MockConnection;
 import com.mockrunner.mock.jdbc.MockPreparedStatement;
 import jakarta.persistence.LockModeType;
 import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.criteria.CriteriaQuery;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.function.Consumer;
@@ -38,6 +41,8 @@ import org.hibernate.boot.Metadata;
 import org.hibernate.boot.MetadataSources;
 import org.hibernate.boot.registry.StandardServiceRegistry;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.jpa.HibernateHints;
 import org.hibernate.query.Query;
 import org.junit.Before;
 import org.junit.Test;
@@ -83,6 +88,7 @@ public class GeneratedSelectStatementsTests {
         new MetadataSources(this.registry)
             .addAnnotatedClass(TestEntity.class)
             .addAnnotatedClass(SubTestEntity.class)
+            .addAnnotatedClass(Product.class)
             .buildMetadata();
   }
 
@@ -162,6 +168,159 @@ public class GeneratedSelectStatementsTests {
             + "join `test_table` te1_0 on te1_0.`ID1`=ste1_0.id1 and te1_0.id2=ste1_0.id2");
   }
 
+  @Test
+  public void searchFunctionTest() {
+    testStatementTranslation(
+        x -> x.createQuery("select p from Product p where search(p.name, :query) "
+                + "order by score(p.name, :query) desc")
+            .setParameter("query", "foo")
+            .list(),
+        "select p1_0.id,p1_0.description,p1_0.name from Product p1_0 "
+            + "where SEARCH(p1_0.name_Tokens, ?) order by SCORE(p1_0.name_Tokens, ?) desc");
+  }
+
+  @Test
+  public void forceIndexHintTest() {
+    testStatementTranslation(
+        x -> x.createQuery("select s from SubTestEntity s inner join s.testEntity")
+            .setHint(HibernateHints.HINT_COMMENT,
+                SpannerQueryHints.forceIndex("TestEntity", "idx_test") + " "
+                    + SpannerQueryHints.forceIndex("SubTestEntity", "_BASE_TABLE"))
+            .list(),
+        "select ste1_0.id,ste1_0.id1,ste1_0.id2 "
+            + "from SubTestEntity@{FORCE_INDEX=_BASE_TABLE} ste1_0 "
+            + "join `test_table`@{FORCE_INDEX=idx_test} te1_0 "
+            + "on te1_0.`ID1`=ste1_0.id1 and te1_0.id2=ste1_0.id2");
+  }
+
+  @Test
+  public void forceIndexHintCriteriaTest() {
+    testStatementTranslation(
+        x -> {
+          CriteriaQuery<SubTestEntity> query =
+              x.getCriteriaBuilder().createQuery(SubTestEntity.class);
+          query.select(query.from(SubTestEntity.class));
+          x.createQuery(query)
+              .setHint(HibernateHints.HINT_COMMENT, "spanner.force_index=SubTestEntity:idx_sub")
+              .getResultList();
+        },
+        "select ste1_0.id,ste1_0.id1,ste1_0.id2 from SubTestEntity@{FORCE_INDEX=idx_sub} ste1_0");
+  }
+
+  @Test
+  public void forceIndexHintIsNotCachedTest() {
+    testStatementTranslation(
+        x -> {
+          x.createQuery("select s from SubTestEntity s").list();
+          x.createQuery("select s from SubTestEntity s")
+              .setHint(HibernateHints.HINT_COMMENT, "spanner.force_index=SubTestEntity:idx_sub")
+              .list();
+          x.createQuery("select s from SubTestEntity s").list();
+        },
+        ImmutableList.of(
+            "select ste1_0.id,ste1_0.id1,ste1_0.id2 from SubTestEntity ste1_0",
+            "select ste1_0.id,ste1_0.id1,ste1_0.id2 "
+                + "from SubTestEntity@{FORCE_INDEX=idx_sub} ste1_0",
+            "select ste1_0.id,ste1_0.id1,ste1_0.id2 from SubTestEntity ste1_0"));
+  }
+
+  @Test
+  public void joinHintsTest() {
+    testStatementTranslation(
+        x -> x.createQuery("select s from SubTestEntity s inner join s.testEntity")
+            .setHint(HibernateHints.HINT_COMMENT,
+                SpannerQueryHints.joinMethod("TestEntity", "HASH_JOIN") + " "
+                    + SpannerQueryHints.hashJoinBuildSide("TestEntity", "BUILD_RIGHT"))
+            .list(),
+        "select ste1_0.id,ste1_0.id1,ste1_0.id2 from SubTestEntity ste1_0 "
+            + "join@{JOIN_METHOD=HASH_JOIN, HASH_JOIN_BUILD_SIDE=BUILD_RIGHT} `test_table` te1_0 "
+            + "on te1_0.`ID1`=ste1_0.id1 and te1_0.id2=ste1_0.id2");
+  }
+
+  @Test
+  public void joinHintForAllJoinsTest() {
+    testStatementTranslation(
+        x -> x.createQuery(
+                "select s from SubTestEntity s left join s.testEntity t where t.stringVal='a'")
+            .setHint(HibernateHints.HINT_COMMENT, "spanner.join_method=APPLY_JOIN")
+            .list(),
+        "select ste1_0.id,ste1_0.id1,ste1_0.id2 from SubTestEntity ste1_0 "
+            + "left join@{JOIN_METHOD=APPLY_JOIN} `test_table` te1_0 "
+            + "on te1_0.`ID1`=ste1_0.id1 and te1_0.id2=ste1_0.id2 where te1_0.stringVal='a'");
+  }
+
+  @Test
+  public void groupMethodHintTest() {
+    testStatementTranslation(
+        x -> x.createQuery("select s.id, count(*) from SubTestEntity s group by s.id")
+            .setHint(HibernateHints.HINT_COMMENT, SpannerQueryHints.groupMethod("STREAM_GROUP"))
+            .list(),
+        "select ste1_0.id,count(*) from SubTestEntity ste1_0 "
+            + "group@{GROUP_METHOD=STREAM_GROUP} by ste1_0.id");
+  }
+
+  @Test
+  public void invalidHintValuesTest() {
+    openSessionAndDo(x -> {
+      for (String hint : new String[] {
+          "spanner.force_index=SubTestEntity:idx_sub}",
+          "spanner.join_method=HASH_JOIN}",
+          "spanner.hash_join_build_side=BUILD_LEFT,JOIN_METHOD=APPLY_JOIN",
+          "spanner.group_method=STREAM_GROUP}--",
+          "spanner.optimizer_version=5}select",
+          "spanner.optimizer_statistics_package=auto'"}) {
+        assertThatThrownBy(() ->
+            x.createQuery("select s.id, count(*) from SubTestEntity s "
+                    + "inner join s.testEntity group by s.id")
+                .setHint(HibernateHints.HINT_COMMENT, hint)
+                .list())
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageStartingWith("Invalid value for hint");
+      }
+    });
+  }
+
+  @Test
+  public void statementHintsTest() {
+    testStatementTranslation(
+        x -> x.createQuery("select s from SubTestEntity s")
+            .setHint(HibernateHints.HINT_COMMENT,
+                SpannerQueryHints.optimizerVersion("5") + " "
+                    + SpannerQueryHints.optimizerStatisticsPackage("auto_20191128_14_47_22UTC")
+                    + " " + SpannerQueryHints.useAdditionalParallelism(true))
+            .list(),
+        "@{OPTIMIZER_VERSION=5, OPTIMIZER_STATISTICS_PACKAGE=auto_20191128_14_47_22UTC, "
+            + "USE_ADDITIONAL_PARALLELISM=TRUE} "
+            + "select ste1_0.id,ste1_0.id1,ste1_0.id2 from SubTestEntity ste1_0");
+  }
+
+  @Test
+  public void statementHintsFromSessionFactoryTest() {
+    this.registry = new StandardServiceRegistryBuilder()
+        .applySettings(this.registry.getService(ConfigurationService.class).getSettings())
+        .applySetting(SpannerQueryHints.OPTIMIZER_VERSION_PROPERTY, "latest_version")
+        .applySetting(SpannerQueryHints.USE_ADDITIONAL_PARALLELISM_PROPERTY, "true")
+        .build();
+    this.metadata =
+        new MetadataSources(this.registry)
+            .addAnnotatedClass(TestEntity.class)
+            .addAnnotatedClass(SubTestEntity.class)
+            .buildMetadata();
+
+    testStatementTranslation(
+        x -> {
+          x.createQuery("select s from SubTestEntity s").list();
+          x.createQuery("select s from SubTestEntity s")
+              .setHint(HibernateHints.HINT_COMMENT, SpannerQueryHints.optimizerVersion("4"))
+              .list();
+        },
+        ImmutableList.of(
+            "@{OPTIMIZER_VERSION=latest_version, USE_ADDITIONAL_PARALLELISM=TRUE} "
+                + "select ste1_0.id,ste1_0.id1,ste1_0.id2 from SubTestEntity ste1_0",
+            "@{OPTIMIZER_VERSION=4, USE_ADDITIONAL_PARALLELISM=TRUE} "
+                + "select ste1_0.id,ste1_0.id1,ste1_0.id2 from SubTestEntity ste1_0"));
+  }
+
   private void openSessionAndDo(Consumer<Session> func) {
     Session session = this.metadata.buildSessionFactory().openSession();
     session.beginTransaction();
@@ -87,7 +87,9 @@ public class GeneratedUpdateTableStatementsTests {
               "alter table Employee add constraint FKiralam2duuhr33k8a10aoc2t6 "
                   + "foreign key (manager_id) references Employee (id)",
               "RUN BATCH",
-              "insert into Employee_Sequence values ( 1 )");
+              "START BATCH DML",
+              "insert into Employee_Sequence values ( 1 )",
+              "RUN BATCH");
     } finally {
       SpannerDialect.enableSpannerSequences();
     }
@@ -21,42 +21,70 @@ package com.google.cloud.spanner.hibernate;
 import static com.google.cloud.spanner.hibernate.AbstractSchemaGenerationMockServerTest.GET_SEQUENCES_METADATA;
 import static com.google.cloud.spanner.hibernate.AbstractSchemaGenerationMockServerTest.GET_SEQUENCES_STATEMENT;
 import static com.google.cloud.spanner.hibernate.AbstractSchemaGenerationMockServerTest.createSequenceRow;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 import com.google.cloud.spanner.MockSpannerServiceImpl.SimulatedExecutionTime;
 import com.google.cloud.spanner.MockSpannerServiceImpl.StatementResult;
+import com.google.cloud.spanner.Options.RpcPriority;
+import com.google.cloud.spanner.ReadContext.QueryAnalyzeMode;
 import com.google.cloud.spanner.Statement;
+import com.google.cloud.spanner.TimestampBound;
+import com.google.cloud.spanner.hibernate.entities.Product;
 import com.google.cloud.spanner.hibernate.entities.Singer;
+import com.google.cloud.spanner.hibernate.entities.Truck;
+import com.google.cloud.spanner.hibernate.entities.Vehicle;
+import com.google.cloud.spanner.jdbc.CloudSpannerJdbcConnection;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
 import com.google.protobuf.Value;
+import com.google.spanner.v1.BeginTransactionRequest;
 import com.google.spanner.v1.CommitRequest;
 import com.google.spanner.v1.ExecuteBatchDmlRequest;
 import com.google.spanner.v1.ExecuteSqlRequest;
+import com.google.spanner.v1.ExecuteSqlRequest.QueryMode;
+import com.google.spanner.v1.PartitionQueryRequest;
+import com.google.spanner.v1.PlanNode;
+import com.google.spanner.v1.QueryPlan;
+import com.google.spanner.v1.RequestOptions.Priority;
 import com.google.spanner.v1.ResultSet;
 import com.google.spanner.v1.ResultSetMetadata;
+import com.google.spanner.v1.ResultSetStats;
 import com.google.spanner.v1.StructType;
 import com.google.spanner.v1.StructType.Field;
 import com.google.spanner.v1.Type;
 import com.google.spanner.v1.TypeCode;
+import io.grpc.Status;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.QueryTimeoutException;
 import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import java.util.Iterator;
+import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Parameter;
+import org.hibernate.query.Query;
+import org.hibernate.query.SelectionQuery;
 import org.junit.Test;
 
 /**
@@ -123,6 +151,1134 @@ public class HibernateMockSpannerServerTest extends AbstractMockSpannerServerTes
     }
   }
 
+  private static ResultSet createSingerResultSet(long... ids) {
+    return ResultSet.newBuilder()
+        .setMetadata(
+            ResultSetMetadata.newBuilder()
+                .setRowType(
+                    StructType.newBuilder()
+                        .addFields(
+                            Field.newBuilder()
+                                .setName("id")
+                                .setType(Type.newBuilder().setCode(TypeCode.INT64).build())
+                                .build())
+                        .build())
+                .build())
+        .addAllRows(
+            LongStream.of(ids)
+                .mapToObj(id -> ListValue.newBuilder()
+                    .addValues(Value.newBuilder().setStringValue(String.valueOf(id)))
+                    .build())
+                .collect(Collectors.toList()))
+        .build();
+  }
+
+  @Test
+  public void testResumableStream() {
+    String firstBatchSql = "select s1_0.id from Singer s1_0 order by s1_0.id limit @p1";
+    String nextBatchSql =
+        "select s1_0.id from Singer s1_0 where s1_0.id>@p1 order by s1_0.id limit @p2";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(firstBatchSql).bind("p1").to(2L).build(),
+            createSingerResultSet(1L, 2L)));
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(nextBatchSql).bind("p1").to(2L).bind("p2").to(2L).build(),
+            createSingerResultSet(3L)));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ENTITY_CLASSES).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      Iterator<Singer> singers =
+          SpannerQueries.resumableStream(session, Singer.class, 2).iterator();
+      Singer first = singers.next();
+      assertEquals(1L, first.getId());
+      assertEquals(2L, singers.next().getId());
+
+      // The next batch fails once with a transient error, and is then read again.
+      mockSpanner.setExecuteStreamingSqlExecutionTime(
+          SimulatedExecutionTime.ofException(Status.DEADLINE_EXCEEDED.asRuntimeException()));
+      assertEquals(3L, singers.next().getId());
+      assertFalse(singers.hasNext());
+      // The entities of the previous batch are detached when the next batch is read.
+      assertFalse(session.contains(first));
+    }
+
+    List<ExecuteSqlRequest> requests = mockSpanner.getRequestsOfType(ExecuteSqlRequest.class);
+    assertEquals(1L, requests.stream().filter(r -> r.getSql().equals(firstBatchSql)).count());
+    assertEquals(2L, requests.stream().filter(r -> r.getSql().equals(nextBatchSql)).count());
+  }
+
+  @Test
+  public void testResumableStream_inTransaction() {
+    String firstBatchSql = "select s1_0.id from Singer s1_0 order by s1_0.id limit @p1";
+    String nextBatchSql =
+        "select s1_0.id from Singer s1_0 where s1_0.id>@p1 order by s1_0.id limit @p2";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(firstBatchSql).bind("p1").to(2L).build(),
+            createSingerResultSet(1L, 2L)));
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(nextBatchSql).bind("p1").to(2L).bind("p2").to(2L).build(),
+            createSingerResultSet(3L)));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ENTITY_CLASSES).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      final Transaction transaction = session.beginTransaction();
+      Iterator<Singer> singers =
+          SpannerQueries.resumableStream(session, Singer.class, 2).iterator();
+      assertEquals(1L, singers.next().getId());
+      assertEquals(2L, singers.next().getId());
+
+      // A failed batch is not read again in a transaction, as Hibernate can mark the transaction
+      // as rollback-only when a query fails.
+      mockSpanner.setExecuteStreamingSqlExecutionTime(
+          SimulatedExecutionTime.ofException(Status.DEADLINE_EXCEEDED.asRuntimeException()));
+      assertThrows(QueryTimeoutException.class, singers::next);
+      transaction.rollback();
+    }
+
+    List<ExecuteSqlRequest> requests = mockSpanner.getRequestsOfType(ExecuteSqlRequest.class);
+    assertEquals(1L, requests.stream().filter(r -> r.getSql().equals(nextBatchSql)).count());
+  }
+
+  private static ResultSet createProductResultSet(Object[]... rows) {
+    StructType.Builder rowType = StructType.newBuilder();
+    for (String name : new String[] {"id", "description", "name"}) {
+      rowType.addFields(
+          Field.newBuilder()
+              .setName(name)
+              .setType(
+                  Type.newBuilder()
+                      .setCode(name.equals("id") ? TypeCode.INT64 : TypeCode.STRING)
+                      .build())
+              .build());
+    }
+    ResultSet.Builder resultSet =
+        ResultSet.newBuilder()
+            .setMetadata(ResultSetMetadata.newBuilder().setRowType(rowType.build()).build());
+    for (Object[] row : rows) {
+      resultSet.addRows(
+          ListValue.newBuilder()
+              .addValues(Value.newBuilder().setStringValue(String.valueOf(row[0])))
+              .addValues(Value.newBuilder().setStringValue("description"))
+              .addValues(Value.newBuilder().setStringValue((String) row[1]))
+              .build());
+    }
+    return resultSet.build();
+  }
+
+  @Test
+  public void testKeysetPage() {
+    String firstPageSql =
+        "select p1_0.id,p1_0.description,p1_0.name from Product p1_0 "
+            + "order by p1_0.name,p1_0.id limit @p1";
+    String nextPageSql =
+        "select p1_0.id,p1_0.description,p1_0.name from Product p1_0 "
+            + "where (p1_0.name>@p1 or (p1_0.name=@p2 and p1_0.id>@p3)) "
+            + "order by p1_0.name,p1_0.id limit @p4";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(firstPageSql).bind("p1").to(3L).build(),
+            createProductResultSet(
+                new Object[] {4L, "a"}, new Object[] {2L, "b"}, new Object[] {3L, "b"})));
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(nextPageSql)
+                .bind("p1").to("b")
+                .bind("p2").to("b")
+                .bind("p3").to(2L)
+                .bind("p4").to(3L)
+                .build(),
+            createProductResultSet(new Object[] {3L, "b"}, new Object[] {1L, "c"})));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ImmutableList.of(Product.class)).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      SpannerKeysetPage<Product> firstPage =
+          SpannerQueries.keysetPage(session, Product.class, "name", false, null, 2);
+      assertEquals(
+          ImmutableList.of(4L, 2L),
+          firstPage.getContent().stream().map(p -> p.id).collect(Collectors.toList()));
+      assertTrue(firstPage.hasNext());
+      assertEquals(SpannerKeysetCursor.of("b", 2L), firstPage.getNextCursor());
+
+      SpannerKeysetPage<Product> nextPage =
+          SpannerQueries.keysetPage(
+              session, Product.class, "name", false, firstPage.getNextCursor(), 2);
+      assertEquals(
+          ImmutableList.of(3L, 1L),
+          nextPage.getContent().stream().map(p -> p.id).collect(Collectors.toList()));
+      assertFalse(nextPage.hasNext());
+    }
+  }
+
+  @Test
+  public void testKeysetPageCompositeSortKey() {
+    String firstPageSql =
+        "select p1_0.id,p1_0.description,p1_0.name from Product p1_0 "
+            + "order by p1_0.name desc,p1_0.description desc,p1_0.id desc limit @p1";
+    String nextPageSql =
+        "select p1_0.id,p1_0.description,p1_0.name from Product p1_0 "
+            + "where (p1_0.name<@p1 or (p1_0.name=@p2 and (p1_0.description<@p3 "
+            + "or (p1_0.description=@p4 and p1_0.id<@p5)))) "
+            + "order by p1_0.name desc,p1_0.description desc,p1_0.id desc limit @p6";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(firstPageSql).bind("p1").to(2L).build(),
+            createProductResultSet(new Object[] {3L, "b"}, new Object[] {2L, "b"})));
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(nextPageSql)
+                .bind("p1").to("b")
+                .bind("p2").to("b")
+                .bind("p3").to("description")
+                .bind("p4").to("description")
+                .bind("p5").to(3L)
+                .bind("p6").to(2L)
+                .build(),
+            createProductResultSet(new Object[] {2L, "b"})));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ImmutableList.of(Product.class)).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      SpannerKeysetPage<Product> firstPage =
+          SpannerQueries.keysetPage(
+              session, Product.class, ImmutableList.of("name", "description"), true, null, 1);
+      assertEquals(1, firstPage.getContent().size());
+      assertEquals(3L, firstPage.getContent().get(0).id);
+      assertEquals(
+          SpannerKeysetCursor.ofSortValues(ImmutableList.of("b", "description"), 3L),
+          firstPage.getNextCursor());
+
+      SpannerKeysetPage<Product> nextPage =
+          SpannerQueries.keysetPage(
+              session,
+              Product.class,
+              ImmutableList.of("name", "description"),
+              true,
+              firstPage.getNextCursor(),
+              1);
+      assertEquals(1, nextPage.getContent().size());
+      assertEquals(2L, nextPage.getContent().get(0).id);
+      assertFalse(nextPage.hasNext());
+
+      // The cursor must have a value for each sort attribute.
+      assertThrows(
+          IllegalArgumentException.class,
+          () ->
+              SpannerQueries.keysetPage(
+                  session, Product.class, "name", true, firstPage.getNextCursor(), 1));
+    }
+  }
+
+  @Test
+  public void testInListAsArray() {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id in unnest(@p1)";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").toInt64Array(new long[] {1L, 2L, 3L}).build(),
+            createSingerResultSet(1L, 2L, 3L)));
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").toInt64Array(new long[] {1L, 2L}).build(),
+            createSingerResultSet(1L, 2L)));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(
+            ENTITY_CLASSES,
+            ImmutableMap.of(SpannerDialect.SPANNER_IN_LIST_AS_ARRAY_PROPERTY, "true"))
+            .buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      assertEquals(3, session.createSelectionQuery("from Singer where id in :ids", Singer.class)
+          .setParameter("ids", ImmutableList.of(1L, 2L, 3L))
+          .list()
+          .size());
+      assertEquals(2, session.createSelectionQuery("from Singer where id in :ids", Singer.class)
+          .setParameter("ids", ImmutableList.of(1L, 2L))
+          .list()
+          .size());
+    }
+
+    // Both queries use the same SQL string with one array parameter.
+    List<ExecuteSqlRequest> requests = mockSpanner.getRequestsOfType(ExecuteSqlRequest.class);
+    assertEquals(2L, requests.stream().filter(request -> request.getSql().equals(sql)).count());
+  }
+
+  @Test
+  public void testMultiLoadAsArray() {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id in unnest(@p1)";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").toInt64Array(new long[] {1L, 2L}).build(),
+            createSingerResultSet(1L, 2L)));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ENTITY_CLASSES).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      List<Singer> singers = session.byMultipleIds(Singer.class).multiLoad(1L, 2L);
+      assertEquals(2, singers.size());
+    }
+  }
+
+  @Test
+  public void testWarmupQueries() {
+    String namedQuerySql = "select s1_0.id from Singer s1_0 where s1_0.id=@p1";
+    String querySql = "select s1_0.id from Singer s1_0 order by s1_0.id";
+    mockSpanner.putStatementResult(
+        StatementResult.query(Statement.of(namedQuerySql), createSingerResultSet()));
+    mockSpanner.putStatementResult(
+        StatementResult.query(Statement.of(querySql), createSingerResultSet()));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(
+            ENTITY_CLASSES, ImmutableMap.of(SpannerQueryWarmup.WARMUP_NAMED_QUERIES, "true"))
+            .buildSessionFactory()) {
+      assertEquals(
+          ImmutableList.of(namedQuerySql),
+          mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).stream()
+              .filter(request -> request.getQueryMode() == QueryMode.PLAN)
+              .map(ExecuteSqlRequest::getSql)
+              .collect(Collectors.toList()));
+
+      mockSpanner.clearRequests();
+      assertEquals(
+          1,
+          SpannerQueryWarmup.warmup(
+              sessionFactory,
+              ImmutableList.of("from Singer order by id", "delete from Singer")));
+      assertEquals(
+          ImmutableList.of(querySql),
+          mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).stream()
+              .filter(request -> request.getQueryMode() == QueryMode.PLAN)
+              .map(ExecuteSqlRequest::getSql)
+              .collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void testPartitionedUpdate() {
+    String sql = "delete from Product where name=@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.update(Statement.newBuilder(sql).bind("p1").to("old").build(), 100L));
+    mockSpanner.putStatementResult(
+        StatementResult.update(Statement.of("update Product set description=name"), 10L));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ImmutableList.of(Product.class)).buildSessionFactory()) {
+      assertEquals(
+          100L,
+          SpannerQueries.executePartitionedUpdate(
+              sessionFactory,
+              "delete from Product p where p.name = :name",
+              ImmutableMap.of("name", "old")));
+      HibernateException exception = assertThrows(HibernateException.class,
+          () -> SpannerQueries.executePartitionedUpdate(
+              sessionFactory,
+              "update Product p set p.name = concat(p.name, '_old')",
+              ImmutableMap.of()));
+      assertTrue(exception.getMessage(), exception.getMessage().contains("idempotent"));
+      for (String hql : ImmutableList.of(
+          "update Product p set p.name = p.description, p.description = p.name",
+          "update Product p set p.name = case when p.id > 0 then p.name else 'new' end",
+          "update Product p set p.name = (select max(o.name) from Product o where o.id = p.id)")) {
+        exception = assertThrows(HibernateException.class,
+            () -> SpannerQueries.executePartitionedUpdate(sessionFactory, hql, ImmutableMap.of()));
+        assertTrue(exception.getMessage(), exception.getMessage().contains("idempotent"));
+      }
+      assertEquals(
+          10L,
+          SpannerQueries.executePartitionedUpdate(
+              sessionFactory, "update Product p set p.description = p.name", ImmutableMap.of()));
+    }
+
+    assertEquals(2, mockSpanner.countRequestsOfType(BeginTransactionRequest.class));
+    assertTrue(
+        mockSpanner.getRequestsOfType(BeginTransactionRequest.class).stream()
+            .allMatch(request -> request.getOptions().hasPartitionedDml()));
+    assertEquals(0, mockSpanner.countRequestsOfType(CommitRequest.class));
+  }
+
+  @Test
+  public void testBulkDeleteJoinedInheritance() {
+    String selectSql = "select v1_0.id from Vehicle v1_0 where v1_0.name=@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(selectSql).bind("p1").to("old").build(),
+            createSingerResultSet(1L, 2L)));
+    for (String table : new String[] {"Truck", "Vehicle"}) {
+      mockSpanner.putStatementResult(
+          StatementResult.update(
+              Statement.newBuilder("delete from " + table + " where id in unnest(@p1)")
+                  .bind("p1").toInt64Array(new long[] {1L, 2L})
+                  .build(),
+              2L));
+    }
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ImmutableList.of(Vehicle.class, Truck.class))
+            .buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      Transaction transaction = session.beginTransaction();
+      assertEquals(
+          2,
+          session.createMutationQuery("delete from Vehicle v where v.name = :name")
+              .setParameter("name", "old")
+              .executeUpdate());
+      transaction.commit();
+    }
+
+    assertEquals(1, mockSpanner.countRequestsOfType(ExecuteBatchDmlRequest.class));
+    ExecuteBatchDmlRequest request =
+        mockSpanner.getRequestsOfType(ExecuteBatchDmlRequest.class).get(0);
+    assertEquals(
+        ImmutableList.of(
+            "delete from Truck where id in unnest(@p1)",
+            "delete from Vehicle where id in unnest(@p1)"),
+        request.getStatementsList().stream()
+            .map(ExecuteBatchDmlRequest.Statement::getSql)
+            .collect(Collectors.toList()));
+    assertEquals(1, mockSpanner.countRequestsOfType(CommitRequest.class));
+  }
+
+  @Test
+  public void testBulkUpdateJoinedInheritance() {
+    String selectSql = "select t1_0.id from Truck t1_0 where t1_0.payload<@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(selectSql).bind("p1").to(10L).build(),
+            createSingerResultSet(1L, 2L)));
+    String updateVehicleSql = "update Vehicle set name=@p1 where id in unnest(@p2)";
+    String updateTruckSql = "update Truck set payload=@p1 where id in unnest(@p2)";
+    mockSpanner.putStatementResult(
+        StatementResult.update(
+            Statement.newBuilder(updateVehicleSql)
+                .bind("p1").to("small")
+                .bind("p2").toInt64Array(new long[] {1L, 2L})
+                .build(),
+            2L));
+    mockSpanner.putStatementResult(
+        StatementResult.update(
+            Statement.newBuilder(updateTruckSql)
+                .bind("p1").to(10L)
+                .bind("p2").toInt64Array(new long[] {1L, 2L})
+                .build(),
+            2L));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ImmutableList.of(Vehicle.class, Truck.class))
+            .buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      Transaction transaction = session.beginTransaction();
+      assertEquals(
+          2,
+          session.createMutationQuery(
+                  "update Truck t set t.name = :name, t.payload = :payload "
+                      + "where t.payload < :payload")
+              .setParameter("name", "small")
+              .setParameter("payload", 10L)
+              .executeUpdate());
+      transaction.commit();
+    }
+
+    assertEquals(1, mockSpanner.countRequestsOfType(ExecuteBatchDmlRequest.class));
+    ExecuteBatchDmlRequest request =
+        mockSpanner.getRequestsOfType(ExecuteBatchDmlRequest.class).get(0);
+    assertEquals(
+        ImmutableList.of(updateTruckSql, updateVehicleSql),
+        request.getStatementsList().stream()
+            .map(ExecuteBatchDmlRequest.Statement::getSql)
+            .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testBulkInsertJoinedInheritance() {
+    String insertVehicleSql = "insert into Vehicle (name,id) values (@p1,@p2)";
+    String insertTruckSql = "insert into Truck (payload,id) values (@p1,@p2)";
+    for (long id : new long[] {1L, 2L}) {
+      mockSpanner.putStatementResult(
+          StatementResult.update(
+              Statement.newBuilder(insertVehicleSql)
+                  .bind("p1").to("truck" + id)
+                  .bind("p2").to(id)
+                  .build(),
+              1L));
+      mockSpanner.putStatementResult(
+          StatementResult.update(
+              Statement.newBuilder(insertTruckSql)
+                  .bind("p1").to(10L * id)
+                  .bind("p2").to(id)
+                  .build(),
+              1L));
+    }
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ImmutableList.of(Vehicle.class, Truck.class))
+            .buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      Transaction transaction = session.beginTransaction();
+      assertEquals(
+          2,
+          session.createMutationQuery(
+                  "insert into Truck (id, name, payload) "
+                      + "values (1, 'truck1', 10), (:id, :name, :payload)")
+              .setParameter("id", 2L)
+              .setParameter("name", "truck2")
+              .setParameter("payload", 20L)
+              .executeUpdate());
+      transaction.commit();
+    }
+
+    // The inserts are sent as one batch per table.
+    List<ExecuteBatchDmlRequest> requests =
+        mockSpanner.getRequestsOfType(ExecuteBatchDmlRequest.class);
+    assertEquals(2, requests.size());
+    assertEquals(
+        ImmutableList.of(insertVehicleSql, insertVehicleSql),
+        requests.get(0).getStatementsList().stream()
+            .map(ExecuteBatchDmlRequest.Statement::getSql)
+            .collect(Collectors.toList()));
+    assertEquals(
+        ImmutableList.of(insertTruckSql, insertTruckSql),
+        requests.get(1).getStatementsList().stream()
+            .map(ExecuteBatchDmlRequest.Statement::getSql)
+            .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testBulkInsertSelectJoinedInheritance() {
+    String selectSql =
+        "select (v1_0.id+cast(@p1 as int64)) from Vehicle v1_0 where v1_0.name=@p2";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(selectSql).bind("p1").to(100L).bind("p2").to("old").build(),
+            createSingerResultSet(101L)));
+    String insertVehicleSql = "insert into Vehicle (name,id) values (@p1,@p2)";
+    String insertTruckSql = "insert into Truck (payload,id) values (@p1,@p2)";
+    mockSpanner.putStatementResult(
+        StatementResult.update(
+            Statement.newBuilder(insertVehicleSql)
+                .bind("p1").to((String) null)
+                .bind("p2").to(101L)
+                .build(),
+            1L));
+    mockSpanner.putStatementResult(
+        StatementResult.update(
+            Statement.newBuilder(insertTruckSql)
+                .bind("p1").to((Long) null)
+                .bind("p2").to(101L)
+                .build(),
+            1L));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ImmutableList.of(Vehicle.class, Truck.class))
+            .buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      Transaction transaction = session.beginTransaction();
+      assertEquals(
+          1,
+          session.createMutationQuery(
+                  "insert into Truck (id) "
+                      + "select v.id + :offset from Vehicle v where v.name = :name")
+              .setParameter("offset", 100L)
+              .setParameter("name", "old")
+              .executeUpdate());
+      transaction.commit();
+    }
+
+    List<ExecuteSqlRequest> requests = mockSpanner.getRequestsOfType(ExecuteSqlRequest.class);
+    assertTrue(requests.stream().anyMatch(request -> request.getSql().equals(selectSql)));
+    assertTrue(requests.stream().anyMatch(request -> request.getSql().equals(insertVehicleSql)));
+    assertTrue(requests.stream().anyMatch(request -> request.getSql().equals(insertTruckSql)));
+  }
+
+  @Test
+  public void testUpsert() {
+    String sql = "insert or update into Product (id,description,name) values (@p1,@p2,@p3)";
+    String insertSql = "insert into Product (description,name,id) values (@p1,@p2,@p3)";
+    mockSpanner.putStatementResult(
+        StatementResult.update(
+            Statement.newBuilder(insertSql)
+                .bind("p1").to((String) null)
+                .bind("p2").to("Product 2")
+                .bind("p3").to(2L)
+                .build(),
+            1L));
+    mockSpanner.putStatementResult(
+        StatementResult.update(
+            Statement.newBuilder(sql)
+                .bind("p1").to(1L)
+                .bind("p2").to((String) null)
+                .bind("p3").to("Product 1")
+                .build(),
+            1L));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ImmutableList.of(Product.class)).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      Product product = new Product();
+      product.id = 1L;
+      product.name = "Product 1";
+      Product other = new Product();
+      other.id = 2L;
+      other.name = "Product 2";
+      Transaction transaction = session.beginTransaction();
+      // The pending insert of the other product is flushed before the upsert.
+      session.persist(other);
+      SpannerQueries.upsert(session, product);
+      transaction.commit();
+    }
+
+    assertEquals(
+        ImmutableList.of(insertSql, sql),
+        mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).stream()
+            .map(ExecuteSqlRequest::getSql)
+            .collect(Collectors.toList()));
+    assertEquals(1, mockSpanner.countRequestsOfType(CommitRequest.class));
+  }
+
+  @Test
+  public void testReadOnlyStalenessHint() {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id=@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").to(1L).build(), createSingerResultSet(1L)));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ENTITY_CLASSES).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      for (boolean stale : new boolean[] {true, true, false}) {
+        Query<Singer> query =
+            session.createQuery("from Singer where id = :id", Singer.class).setParameter("id", 1L);
+        if (stale) {
+          query.setComment(
+              SpannerQueryHints.readOnlyStaleness(TimestampBound.ofMaxStaleness(10L, SECONDS)));
+        }
+        assertEquals(1, query.list().size());
+        session.clear();
+      }
+    }
+
+    List<ExecuteSqlRequest> requests = mockSpanner.getRequestsOfType(ExecuteSqlRequest.class);
+    assertEquals(3, requests.size());
+    for (int i = 0; i < 2; i++) {
+      assertEquals(
+          10L,
+          requests.get(i).getTransaction().getSingleUse().getReadOnly().getMaxStaleness()
+              .getSeconds());
+    }
+    // The query without the hint uses the default transaction of the session.
+    assertTrue(requests.get(2).getTransaction().hasBegin());
+  }
+
+  @Test
+  public void testReadOnlyStalenessHint_restoresConnectionAfterError() {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id=@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").to(1L).build(), createSingerResultSet(1L)));
+    mockSpanner.putStatementResult(
+        StatementResult.exception(
+            Statement.newBuilder(sql).bind("p1").to(2L).build(),
+            Status.INVALID_ARGUMENT.withDescription("test").asRuntimeException()));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ENTITY_CLASSES).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      assertThrows(
+          HibernateException.class,
+          () -> session.createQuery("from Singer where id = :id", Singer.class)
+              .setParameter("id", 2L)
+              .setComment(
+                  SpannerQueryHints.readOnlyStaleness(TimestampBound.ofMaxStaleness(10L, SECONDS)))
+              .list());
+      assertEquals(
+          1,
+          session.createQuery("from Singer where id = :id", Singer.class)
+              .setParameter("id", 1L)
+              .list()
+              .size());
+      assertTrue(session.getProperties().keySet().stream()
+          .noneMatch(key -> key.startsWith(SpannerReadOnlyStalenessBinder.class.getName())));
+    }
+
+    List<ExecuteSqlRequest> requests = mockSpanner.getRequestsOfType(ExecuteSqlRequest.class);
+    assertEquals(2, requests.size());
+    assertEquals(
+        10L,
+        requests.get(0).getTransaction().getSingleUse().getReadOnly().getMaxStaleness()
+            .getSeconds());
+    // The failed query did not leave the staleness or autocommit mode on the connection.
+    assertTrue(requests.get(1).getTransaction().hasBegin());
+  }
+
+  @Test
+  public void testReadOnlyStalenessHint_statelessSession() {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id=@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").to(1L).build(), createSingerResultSet(1L)));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ENTITY_CLASSES).buildSessionFactory();
+        StatelessSession session = sessionFactory.openStatelessSession()) {
+      assertEquals(
+          1,
+          session.createQuery("from Singer where id = :id", Singer.class)
+              .setParameter("id", 1L)
+              .setComment(
+                  SpannerQueryHints.readOnlyStaleness(TimestampBound.ofMaxStaleness(10L, SECONDS)))
+              .list()
+              .size());
+    }
+
+    List<ExecuteSqlRequest> requests = mockSpanner.getRequestsOfType(ExecuteSqlRequest.class);
+    assertEquals(1, requests.size());
+    assertEquals(
+        10L,
+        requests.get(0).getTransaction().getSingleUse().getReadOnly().getMaxStaleness()
+            .getSeconds());
+  }
+
+  @Test
+  public void testReadOnlyStalenessHintInTransaction() {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id=@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").to(1L).build(), createSingerResultSet(1L)));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ENTITY_CLASSES).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      Transaction transaction = session.beginTransaction();
+      assertEquals(
+          1,
+          session.createQuery("from Singer where id = :id", Singer.class)
+              .setParameter("id", 1L)
+              .setComment(
+                  SpannerQueryHints.readOnlyStaleness(TimestampBound.ofMaxStaleness(10L, SECONDS)))
+              .list()
+              .size());
+      transaction.commit();
+    }
+
+    // The hint is ignored, and the query is executed in the transaction of the session.
+    List<ExecuteSqlRequest> requests = mockSpanner.getRequestsOfType(ExecuteSqlRequest.class);
+    assertEquals(1, requests.size());
+    assertTrue(requests.get(0).getTransaction().hasBegin());
+    assertEquals(1, mockSpanner.countRequestsOfType(CommitRequest.class));
+  }
+
+  @Test
+  public void testAutoTags() {
+    String selectSql =
+        "select p1_0.id,p1_0.description,p1_0.name from Product p1_0 where p1_0.id=@p1";
+    String insertSql = "insert into Product (description,name,id) values (@p1,@p2,@p3)";
+    String updateSql = "update Product set description=@p1,name=@p2 where id=@p3";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(selectSql).bind("p1").to(1L).build(),
+            createProductResultSet(new Object[] {1L, "a"})));
+    mockSpanner.putStatementResult(
+        StatementResult.update(
+            Statement.newBuilder(insertSql)
+                .bind("p1").to((String) null)
+                .bind("p2").to("b")
+                .bind("p3").to(2L)
+                .build(),
+            1L));
+    mockSpanner.putStatementResult(
+        StatementResult.update(
+            Statement.newBuilder(updateSql)
+                .bind("p1").to("description")
+                .bind("p2").to("c")
+                .bind("p3").to(1L)
+                .build(),
+            1L));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(
+            ImmutableList.of(Product.class),
+            ImmutableMap.of(SpannerDialect.SPANNER_AUTO_TAGS_PROPERTY, "true"))
+            .buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      Product newProduct = new Product();
+      newProduct.id = 2L;
+      newProduct.name = "b";
+      Transaction transaction = session.beginTransaction();
+      Product product = session.get(Product.class, 1L);
+      product.name = "c";
+      session.persist(newProduct);
+      transaction.commit();
+    }
+
+    List<ExecuteSqlRequest> requests = mockSpanner.getRequestsOfType(ExecuteSqlRequest.class);
+    assertEquals(
+        ImmutableList.of(selectSql, insertSql, updateSql),
+        requests.stream().map(ExecuteSqlRequest::getSql).collect(Collectors.toList()));
+    // The tag is the hash of the SQL string that Hibernate generates with JDBC parameters.
+    String queryTag = "query_" + Integer.toHexString(selectSql.replace("@p1", "?").hashCode());
+    assertEquals(queryTag, requests.get(0).getRequestOptions().getRequestTag());
+    assertEquals("insert_Product", requests.get(1).getRequestOptions().getRequestTag());
+    assertEquals("update_Product", requests.get(2).getRequestOptions().getRequestTag());
+    // The transaction is tagged with the tag of its first statement.
+    for (ExecuteSqlRequest request : requests) {
+      assertEquals(queryTag, request.getRequestOptions().getTransactionTag());
+    }
+    assertEquals(
+        queryTag,
+        mockSpanner.getRequestsOfType(CommitRequest.class).get(0)
+            .getRequestOptions().getTransactionTag());
+  }
+
+  @Test
+  public void testRpcPriority() {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id=@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").to(1L).build(), createSingerResultSet(1L)));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ENTITY_CLASSES).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      String hql = "from Singer where id = :id";
+      SpannerRpcPriority.setSessionPriority(session, RpcPriority.LOW);
+      Transaction transaction = session.beginTransaction();
+      session.createQuery(hql, Singer.class).setParameter("id", 1L).list();
+      session.createQuery(hql, Singer.class)
+          .setParameter("id", 1L)
+          .setComment(SpannerQueryHints.rpcPriority(RpcPriority.HIGH))
+          .list();
+      transaction.commit();
+
+      SpannerRpcPriority.setTransactionPriority(session, RpcPriority.MEDIUM);
+      transaction = session.beginTransaction();
+      session.createQuery(hql, Singer.class).setParameter("id", 1L).list();
+      transaction.commit();
+
+      transaction = session.beginTransaction();
+      session.createQuery(hql, Singer.class).setParameter("id", 1L).list();
+      transaction.commit();
+    }
+
+    assertEquals(
+        ImmutableList.of(
+            Priority.PRIORITY_LOW,
+            Priority.PRIORITY_HIGH,
+            Priority.PRIORITY_MEDIUM,
+            Priority.PRIORITY_LOW),
+        mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).stream()
+            .map(request -> request.getRequestOptions().getPriority())
+            .collect(Collectors.toList()));
+    assertEquals(
+        ImmutableList.of(Priority.PRIORITY_LOW, Priority.PRIORITY_MEDIUM, Priority.PRIORITY_LOW),
+        mockSpanner.getRequestsOfType(CommitRequest.class).stream()
+            .map(request -> request.getRequestOptions().getPriority())
+            .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testRpcPriority_queryHintAfterError() {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id=@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").to(1L).build(), createSingerResultSet(1L)));
+    mockSpanner.putStatementResult(
+        StatementResult.exception(
+            Statement.newBuilder(sql).bind("p1").to(2L).build(),
+            Status.INVALID_ARGUMENT.withDescription("test").asRuntimeException()));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ENTITY_CLASSES).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      String hql = "from Singer where id = :id";
+      assertThrows(
+          HibernateException.class,
+          () -> session.createQuery(hql, Singer.class)
+              .setParameter("id", 2L)
+              .setComment(SpannerQueryHints.rpcPriority(RpcPriority.HIGH))
+              .list());
+      session.createQuery(hql, Singer.class).setParameter("id", 1L).list();
+    }
+
+    // The failed query is retried with an explicit BeginTransaction by the JDBC driver, and all
+    // attempts use the priority of the query. The failed query did not leave its priority on the
+    // connection.
+    List<Priority> priorities =
+        mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).stream()
+            .map(request -> request.getRequestOptions().getPriority())
+            .collect(Collectors.toList());
+    assertEquals(Priority.PRIORITY_UNSPECIFIED, priorities.get(priorities.size() - 1));
+    assertTrue(
+        priorities.subList(0, priorities.size() - 1).stream()
+            .allMatch(priority -> priority == Priority.PRIORITY_HIGH));
+  }
+
+  @Test
+  public void testRpcPriority_statelessSession() {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id=@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").to(1L).build(), createSingerResultSet(1L)));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ENTITY_CLASSES).buildSessionFactory();
+        StatelessSession session = sessionFactory.openStatelessSession()) {
+      String hql = "from Singer where id = :id";
+      session.createQuery(hql, Singer.class)
+          .setParameter("id", 1L)
+          .setComment(SpannerQueryHints.rpcPriority(RpcPriority.LOW))
+          .list();
+      session.createQuery(hql, Singer.class).setParameter("id", 1L).list();
+    }
+
+    assertEquals(
+        ImmutableList.of(Priority.PRIORITY_LOW, Priority.PRIORITY_UNSPECIFIED),
+        mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).stream()
+            .map(request -> request.getRequestOptions().getPriority())
+            .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testRpcPriority_sessionFactoryProperty() {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id=@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").to(1L).build(), createSingerResultSet(1L)));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(
+            ENTITY_CLASSES, ImmutableMap.of(SpannerDialect.SPANNER_RPC_PRIORITY_PROPERTY, "low"))
+            .buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      String hql = "from Singer where id = :id";
+      Transaction transaction = session.beginTransaction();
+      session.createQuery(hql, Singer.class).setParameter("id", 1L).list();
+      session.createQuery(hql, Singer.class)
+          .setParameter("id", 1L)
+          .setComment(SpannerQueryHints.rpcPriority(RpcPriority.HIGH))
+          .list();
+      transaction.commit();
+    }
+
+    assertEquals(
+        ImmutableList.of(Priority.PRIORITY_LOW, Priority.PRIORITY_HIGH),
+        mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).stream()
+            .map(request -> request.getRequestOptions().getPriority())
+            .collect(Collectors.toList()));
+    assertEquals(
+        Priority.PRIORITY_LOW,
+        mockSpanner.getRequestsOfType(CommitRequest.class).get(0)
+            .getRequestOptions().getPriority());
+  }
+
+  @Test
+  public void testExplainQuery() {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id=@p1";
+    ResultSetStats stats = ResultSetStats.newBuilder()
+        .setQueryPlan(QueryPlan.newBuilder()
+            .addPlanNodes(PlanNode.newBuilder()
+                .setIndex(0)
+                .setKind(PlanNode.Kind.RELATIONAL)
+                .setDisplayName("Distributed Union")
+                .setExecutionStats(Struct.newBuilder()
+                    .putFields("rows", Value.newBuilder()
+                        .setStructValue(Struct.newBuilder()
+                            .putFields("total", Value.newBuilder().setStringValue("1").build())
+                            .putFields("unit", Value.newBuilder().setStringValue("rows").build()))
+                        .build()))
+                .addChildLinks(PlanNode.ChildLink.newBuilder().setChildIndex(1)))
+            .addPlanNodes(PlanNode.newBuilder()
+                .setIndex(1)
+                .setKind(PlanNode.Kind.RELATIONAL)
+                .setDisplayName("Scan")
+                .setMetadata(Struct.newBuilder()
+                    .putFields(
+                        "scan_target", Value.newBuilder().setStringValue("Singer").build()))))
+        .setQueryStats(Struct.newBuilder()
+            .putFields("elapsed_time", Value.newBuilder().setStringValue("1.5 msecs").build()))
+        .build();
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").to(1L).build(),
+            createSingerResultSet(1L).toBuilder().setStats(stats).build()));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ENTITY_CLASSES).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      ResultSetStats result = SpannerQueryInspector.explain(
+          session.createQuery("from Singer where id = :id", Singer.class).setParameter("id", 1L),
+          QueryAnalyzeMode.PROFILE);
+
+      assertEquals(
+          "Distributed Union (rows: 1 rows)\n"
+              + "  Scan: Singer\n"
+              + "elapsed_time: 1.5 msecs\n",
+          SpannerQueryInspector.format(result));
+    }
+    List<ExecuteSqlRequest> requests = mockSpanner.getRequestsOfType(ExecuteSqlRequest.class);
+    assertEquals(1, requests.size());
+    assertEquals(QueryMode.PROFILE, requests.get(0).getQueryMode());
+    assertEquals(sql, requests.get(0).getSql());
+    assertEquals("1", requests.get(0).getParams().getFieldsOrThrow("p1").getStringValue());
+  }
+
+  @Test
+  public void testSlowQueryLog() throws InterruptedException {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id=@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").to(1L).build(), createSingerResultSet(1L)));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(
+            ENTITY_CLASSES,
+            ImmutableMap.of(
+                SpannerQueryInspector.SLOW_QUERY_THRESHOLD, "0",
+                SpannerQueryInspector.SLOW_QUERY_SAMPLE_RATE, "1"))
+            .buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      Transaction transaction = session.beginTransaction();
+      assertEquals(
+          1,
+          session.createQuery("from Singer where id = :id", Singer.class)
+              .setParameter("id", 1L)
+              .list()
+              .size());
+      transaction.commit();
+
+      // All queries are slow with a threshold of 0 ms, so the query is also executed in PROFILE
+      // mode in the background.
+      long deadline = System.currentTimeMillis() + 5000L;
+      while ((mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).size() < 2
+          || !SpannerQueryInspector.isProfilerIdle())
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10L);
+      }
+    }
+
+    assertEquals(
+        ImmutableList.of(QueryMode.NORMAL, QueryMode.PROFILE),
+        mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).stream()
+            .map(ExecuteSqlRequest::getQueryMode)
+            .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testSlowQueryLogStatelessSession() throws InterruptedException {
+    String sql = "select s1_0.id from Singer s1_0 where s1_0.id=@p1";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.newBuilder(sql).bind("p1").to(1L).build(), createSingerResultSet(1L)));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(
+            ENTITY_CLASSES,
+            ImmutableMap.of(
+                SpannerQueryInspector.SLOW_QUERY_THRESHOLD, "0",
+                SpannerQueryInspector.SLOW_QUERY_SAMPLE_RATE, "1"))
+            .buildSessionFactory();
+        StatelessSession session = sessionFactory.openStatelessSession()) {
+      assertEquals(
+          1,
+          session.createQuery("from Singer where id = :id", Singer.class)
+              .setParameter("id", 1L)
+              .list()
+              .size());
+
+      long deadline = System.currentTimeMillis() + 5000L;
+      while ((mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).size() < 2
+          || !SpannerQueryInspector.isProfilerIdle())
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10L);
+      }
+    }
+
+    assertEquals(
+        ImmutableList.of(QueryMode.NORMAL, QueryMode.PROFILE),
+        mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).stream()
+            .map(ExecuteSqlRequest::getQueryMode)
+            .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testQueryInspectorDriverVersion() {
+    // The inspector uses methods of the JDBC driver that are not public. These must exist in the
+    // version of the driver that the dialect is built with.
+    assertEquals(
+        SpannerQueryInspector.VERIFIED_DRIVER_VERSION, SpannerQueryInspector.getDriverVersion());
+    assertNotNull(
+        SpannerQueryInspector.findDriverMethod(
+            "com.google.cloud.spanner.jdbc.JdbcPreparedStatement", "createStatement"));
+    assertNotNull(
+        SpannerQueryInspector.findDriverMethod(
+            "com.google.cloud.spanner.jdbc.AbstractJdbcConnection", "getSpannerConnection"));
+  }
+
+  @Test
+  public void testPartitionedQuery() {
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.of("select s1_0.id from Singer s1_0"),
+            ResultSet.newBuilder()
+                .setMetadata(
+                    ResultSetMetadata.newBuilder()
+                        .setRowType(
+                            StructType.newBuilder()
+                                .addFields(
+                                    Field.newBuilder()
+                                        .setName("id")
+                                        .setType(Type.newBuilder().setCode(TypeCode.INT64).build())
+                                        .build())
+                                .build())
+                        .build())
+                .addAllRows(
+                    LongStream.rangeClosed(1L, 3L)
+                        .mapToObj(id -> ListValue.newBuilder()
+                            .addValues(Value.newBuilder().setStringValue(String.valueOf(id)))
+                            .build())
+                        .collect(Collectors.toList()))
+                .build()));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ENTITY_CLASSES).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      // Partitioned queries can only be executed in a read-only transaction or in autocommit mode.
+      session.doWork(connection -> connection.setReadOnly(true));
+      SelectionQuery<Singer> query = session.createSelectionQuery("from Singer", Singer.class);
+      String comment = query.getComment();
+      final int maxParallelism = session.doReturningWork(connection ->
+          connection.unwrap(CloudSpannerJdbcConnection.class).getMaxPartitionedParallelism());
+      List<Long> ids;
+      try (Stream<Singer> singers = SpannerQueries.partitioned(session, query, true, 2)) {
+        // The query and the connection are restored before the stream is returned.
+        assertEquals(comment, query.getComment());
+        session.doWork(connection -> {
+          CloudSpannerJdbcConnection spannerConnection =
+              connection.unwrap(CloudSpannerJdbcConnection.class);
+          assertFalse(spannerConnection.isDataBoostEnabled());
+          assertEquals(maxParallelism, spannerConnection.getMaxPartitionedParallelism());
+        });
+        ids = singers.map(Singer::getId).sorted().collect(Collectors.toList());
+      }
+      assertEquals(ImmutableList.of(1L, 2L, 3L), ids);
+    }
+
+    assertEquals(1, mockSpanner.countRequestsOfType(PartitionQueryRequest.class));
+    PartitionQueryRequest partitionRequest =
+        mockSpanner.getRequestsOfType(PartitionQueryRequest.class).get(0);
+    assertEquals("select s1_0.id from Singer s1_0", partitionRequest.getSql());
+    List<ExecuteSqlRequest> partitionExecutions =
+        mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).stream()
+            .filter(request -> !request.getPartitionToken().isEmpty())
+            .collect(Collectors.toList());
+    assertFalse(partitionExecutions.isEmpty());
+    assertTrue(partitionExecutions.stream().allMatch(ExecuteSqlRequest::getDataBoostEnabled));
+  }
+
   @Test
   public void testHibernateSaveSinger() {
     mockSpanner.putStatementResult(
@@ -421,6 +1577,84 @@ public class HibernateMockSpannerServerTest extends AbstractMockSpannerServerTes
     assertTrue(insertRequest.getTransaction().getBegin().hasReadWrite());
   }
 
+  @Test
+  public void testHibernatePooledSequenceEntity_usesRpcPriorityOfSession() {
+    String getSequenceValuesSql = "/* spanner.force_read_write_transaction=true */ "
+        + "/* spanner.ignore_during_internal_retry=true */ "
+        + " select get_next_sequence_value(sequence pooled_sequence) AS n "
+        + "from unnest(generate_array(1, 5))";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.of(getSequenceValuesSql),
+            createBitReversedSequenceResultSet(20001L, 20005L)));
+    String insertSql = "insert into `test-entity` (name,id) values (@p1,@p2)";
+    mockSpanner.putStatementResult(StatementResult.update(Statement.newBuilder(insertSql)
+        .bind("p1").to((String) null)
+        .bind("p2").to(reverse(20001L))
+        .build(), 1L));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ImmutableList.of(TestSequenceEntity.class)).buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      SpannerRpcPriority.setSessionPriority(session, RpcPriority.LOW);
+      Transaction transaction = session.beginTransaction();
+      session.persist(new TestSequenceEntity());
+      transaction.commit();
+    }
+
+    // The separate transaction that fetches the sequence values uses the priority of the session.
+    assertEquals(
+        ImmutableList.of(Priority.PRIORITY_LOW, Priority.PRIORITY_LOW),
+        mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).stream()
+            .map(request -> request.getRequestOptions().getPriority())
+            .collect(Collectors.toList()));
+    assertEquals(
+        ImmutableList.of(Priority.PRIORITY_LOW, Priority.PRIORITY_LOW),
+        mockSpanner.getRequestsOfType(CommitRequest.class).stream()
+            .map(request -> request.getRequestOptions().getPriority())
+            .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testHibernatePooledSequenceEntity_usesRpcPriorityParam() {
+    String getSequenceValuesSql = "/* spanner.force_read_write_transaction=true */ "
+        + "/* spanner.ignore_during_internal_retry=true */ "
+        + " select get_next_sequence_value(sequence priority_sequence) AS n "
+        + "from unnest(generate_array(1, 5))";
+    mockSpanner.putStatementResult(
+        StatementResult.query(
+            Statement.of(getSequenceValuesSql),
+            createBitReversedSequenceResultSet(20001L, 20005L)));
+    String insertSql = "insert into `test-entity` (name,id) values (@p1,@p2)";
+    mockSpanner.putStatementResult(StatementResult.update(Statement.newBuilder(insertSql)
+        .bind("p1").to((String) null)
+        .bind("p2").to(reverse(20001L))
+        .build(), 1L));
+
+    try (SessionFactory sessionFactory =
+        createTestHibernateConfig(ImmutableList.of(HighPrioritySequenceEntity.class))
+            .buildSessionFactory();
+        Session session = sessionFactory.openSession()) {
+      SpannerRpcPriority.setSessionPriority(session, RpcPriority.LOW);
+      Transaction transaction = session.beginTransaction();
+      session.persist(new HighPrioritySequenceEntity());
+      transaction.commit();
+    }
+
+    // The sequence values are fetched with the priority of the generator, and the insert uses the
+    // priority of the session.
+    assertEquals(
+        ImmutableList.of(Priority.PRIORITY_HIGH, Priority.PRIORITY_LOW),
+        mockSpanner.getRequestsOfType(ExecuteSqlRequest.class).stream()
+            .map(request -> request.getRequestOptions().getPriority())
+            .collect(Collectors.toList()));
+    assertEquals(
+        ImmutableList.of(Priority.PRIORITY_HIGH, Priority.PRIORITY_LOW),
+        mockSpanner.getRequestsOfType(CommitRequest.class).stream()
+            .map(request -> request.getRequestOptions().getPriority())
+            .collect(Collectors.toList()));
+  }
+
   @Test
   public void testHibernatePooledSequenceEntity_abortedErrorRetriesSequence() {
     String getSequenceValuesSql = "/* spanner.force_read_write_transaction=true */ "
@@ -488,6 +1722,28 @@ public class HibernateMockSpannerServerTest extends AbstractMockSpannerServerTes
     private String name;
   }
 
+  @Table(name = "test-entity")
+  @Entity
+  static class HighPrioritySequenceEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "high_priority_generator")
+    @GenericGenerator(name = "high_priority_generator",
+        type = PooledBitReversedSequenceStyleGenerator.class,
+        parameters = {
+            @Parameter(name = "sequence_name", value = "priority_sequence"),
+            @Parameter(name = "increment_size", value = "5"),
+            @Parameter(name = "initial_value", value = "500"),
+            @Parameter(name = "exclude_ranges", value = "[1,1000] [10000,20000]"),
+            @Parameter(
+                name = PooledBitReversedSequenceStyleGenerator.RPC_PRIORITY_PARAM,
+                value = "HIGH")})
+    private long id;
+
+    @Column
+    private String name;
+  }
+
   @Table(name = "test-entity")
   @Entity
   static class NonPooledSequenceEntity {
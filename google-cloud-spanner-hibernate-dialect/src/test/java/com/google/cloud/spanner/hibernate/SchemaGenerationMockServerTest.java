@@ -19,6 +19,7 @@
 package com.google.cloud.spanner.hibernate;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import com.google.cloud.spanner.MockSpannerServiceImpl.StatementResult;
@@ -30,6 +31,7 @@ import com.google.cloud.spanner.hibernate.entities.AutoIdEntity;
 import com.google.cloud.spanner.hibernate.entities.Child;
 import com.google.cloud.spanner.hibernate.entities.Customer;
 import com.google.cloud.spanner.hibernate.entities.Employee;
+import com.google.cloud.spanner.hibernate.entities.Event;
 import com.google.cloud.spanner.hibernate.entities.GrandParent;
 import com.google.cloud.spanner.hibernate.entities.Invoice;
 import com.google.cloud.spanner.hibernate.entities.LegacySequenceEntity;
@@ -40,10 +42,22 @@ import com.google.cloud.spanner.hibernate.entities.SequenceEntity;
 import com.google.cloud.spanner.hibernate.entities.Singer;
 import com.google.cloud.spanner.hibernate.entities.SubTestEntity;
 import com.google.cloud.spanner.hibernate.entities.TestEntity;
+import com.google.cloud.spanner.hibernate.schema.SpannerDdlOperation;
+import com.google.cloud.spanner.hibernate.schema.SpannerDdlOperationListener;
+import com.google.cloud.spanner.hibernate.schema.SpannerDdlStatementProgress;
+import com.google.cloud.spanner.hibernate.schema.SpannerSchemaManagementTool;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.longrunning.Operation;
+import com.google.protobuf.Any;
+import com.google.protobuf.Empty;
 import com.google.protobuf.ListValue;
+import com.google.protobuf.Timestamp;
 import com.google.protobuf.Value;
+import com.google.spanner.admin.database.v1.ListDatabaseOperationsRequest;
+import com.google.spanner.admin.database.v1.ListDatabaseOperationsResponse;
+import com.google.spanner.admin.database.v1.OperationProgress;
+import com.google.spanner.admin.database.v1.UpdateDatabaseDdlMetadata;
 import com.google.spanner.admin.database.v1.UpdateDatabaseDdlRequest;
 import com.google.spanner.v1.CommitRequest;
 import com.google.spanner.v1.ExecuteBatchDmlRequest;
@@ -55,7 +69,11 @@ import com.google.spanner.v1.StructType.Field;
 import com.google.spanner.v1.Type;
 import com.google.spanner.v1.TypeCode;
 import java.sql.Types;
+import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 import org.hibernate.Session;
@@ -99,6 +117,18 @@ public class SchemaGenerationMockServerTest extends AbstractSchemaGenerationMock
         .newBuilder()
         .setMetadata(GET_COLUMNS_METADATA)
         .build()));
+    // Hibernate initializes table-backed sequences directly after the DDL batch.
+    for (String sql : new String[] {
+        "insert into AutoIdEntity_SEQ values ( 1 )",
+        "insert into pooled_sequence values ( 1 )",
+        "insert into test_sequence values ( 1 )",
+        "insert into Employee_Sequence values ( 1 )",
+        "insert into GrandParent_Sequence values ( 1 )",
+        "insert into customerId (next_val) values ( 50000 )",
+        "insert into invoiceId (next_val) values ( 1 )",
+        "insert into singerId (next_val) values ( 50000 )"}) {
+      mockSpanner.putStatementResult(StatementResult.update(Statement.of(sql), 1L));
+    }
   }
 
   @Test
@@ -799,4 +829,249 @@ public class SchemaGenerationMockServerTest extends AbstractSchemaGenerationMock
             .collect(Collectors.toList());
     assertEquals(0, requests.size());
   }  
+
+  @Test
+  public void testRowDeletionPolicy_Update() {
+    String getRowDeletionPolicies = "SELECT TABLE_NAME, ROW_DELETION_POLICY_EXPRESSION "
+        + "FROM INFORMATION_SCHEMA.TABLES "
+        + "WHERE TABLE_SCHEMA = '' AND ROW_DELETION_POLICY_EXPRESSION IS NOT NULL";
+    ResultSetMetadata rowDeletionPoliciesMetadata = ResultSetMetadata.newBuilder()
+        .setRowType(StructType.newBuilder()
+            .addFields(Field.newBuilder().setName("TABLE_NAME")
+                .setType(Type.newBuilder().setCode(TypeCode.STRING).build()).build())
+            .addFields(Field.newBuilder().setName("ROW_DELETION_POLICY_EXPRESSION")
+                .setType(Type.newBuilder().setCode(TypeCode.STRING).build()).build())
+            .build())
+        .build();
+    mockSpanner.putStatementResult(
+        StatementResult.query(GET_TABLES_STATEMENT, ResultSet.newBuilder()
+            .setMetadata(GET_TABLES_METADATA)
+            .addRows(createTableRow("Event"))
+            .build()));
+    mockSpanner.putStatementResult(
+        StatementResult.query(GET_COLUMNS_STATEMENT, ResultSet.newBuilder()
+            .setMetadata(GET_COLUMNS_METADATA)
+            .addRows(createColumnRow("Event", "id", Types.BIGINT, "INT64", 1))
+            .addRows(createColumnRow("Event", "createdAt", Types.TIMESTAMP, "TIMESTAMP", 2))
+            .build()));
+    mockSpanner.putStatementResult(
+        StatementResult.query(GET_INDEXES_STATEMENT, ResultSet.newBuilder()
+            .setMetadata(
+                ResultSetMetadata.newBuilder()
+                    .setRowType(StructType.newBuilder().build())
+                    .build())
+            .build()));
+
+    // The expected statement for each existing row deletion policy. A null value means that no
+    // statement should be generated.
+    Map<String, String> expectedStatements = new LinkedHashMap<>();
+    expectedStatements.put(null,
+        "alter table Event ADD ROW DELETION POLICY (OLDER_THAN(createdAt, INTERVAL 30 DAY))");
+    expectedStatements.put("OLDER_THAN(createdAt, INTERVAL 7 DAY)",
+        "alter table Event REPLACE ROW DELETION POLICY (OLDER_THAN(createdAt, INTERVAL 30 DAY))");
+    expectedStatements.put("OLDER_THAN(createdAt,  INTERVAL 30 DAY)", null);
+    for (Map.Entry<String, String> entry : expectedStatements.entrySet()) {
+      mockDatabaseAdmin.getRequests().clear();
+      addDdlResponseToSpannerAdmin();
+      ResultSet.Builder rowDeletionPolicies =
+          ResultSet.newBuilder().setMetadata(rowDeletionPoliciesMetadata);
+      if (entry.getKey() != null) {
+        rowDeletionPolicies.addRows(ListValue.newBuilder()
+            .addValues(Value.newBuilder().setStringValue("Event").build())
+            .addValues(Value.newBuilder().setStringValue(entry.getKey()).build())
+            .build());
+      }
+      mockSpanner.putStatementResult(StatementResult.query(
+          Statement.of(getRowDeletionPolicies), rowDeletionPolicies.build()));
+
+      //noinspection EmptyTryBlock
+      try (SessionFactory ignore =
+          createTestHibernateConfig(
+              ImmutableList.of(Event.class),
+              ImmutableMap.of(Environment.HBM2DDL_AUTO, "update"))
+              .buildSessionFactory()) {
+        // do nothing, just update the schema.
+      }
+
+      List<UpdateDatabaseDdlRequest> requests =
+          mockDatabaseAdmin.getRequests().stream()
+              .filter(request -> request instanceof UpdateDatabaseDdlRequest)
+              .map(request -> (UpdateDatabaseDdlRequest) request)
+              .collect(Collectors.toList());
+      if (entry.getValue() == null) {
+        assertEquals(0, requests.size());
+      } else {
+        assertEquals(1, requests.size());
+        assertEquals(1, requests.get(0).getStatementsCount());
+        assertEquals(entry.getValue(), requests.get(0).getStatements(0));
+      }
+    }
+  }
+
+  @Test
+  public void testDdlOperationListener() {
+    addDdlResponseToSpannerAdmin();
+    RecordingDdlOperationListener.OPERATIONS.clear();
+
+    //noinspection EmptyTryBlock
+    try (SessionFactory ignore =
+        createTestHibernateConfig(
+            ImmutableList.of(Singer.class, Invoice.class, Customer.class, Account.class),
+            ImmutableMap.of(
+                "hibernate.hbm2ddl.auto", "create-only",
+                SpannerSchemaManagementTool.DDL_OPERATION_LISTENER,
+                RecordingDdlOperationListener.class.getName()))
+            .buildSessionFactory()) {
+      // do nothing, just generate the schema.
+    }
+
+    assertEquals(1, RecordingDdlOperationListener.OPERATIONS.size());
+    SpannerDdlOperation operation = RecordingDdlOperationListener.OPERATIONS.get(0);
+    assertTrue(operation.isSuccessful());
+    assertEquals(8, operation.getStatements().size());
+    assertEquals(8, operation.getCompletedStatementCount());
+  }
+
+  @Test
+  public void testDdlOperationListenerStatementProgress() {
+    // Generate the schema once to get the statements in the DDL operation.
+    mockDatabaseAdmin.getRequests().clear();
+    addDdlResponseToSpannerAdmin();
+    //noinspection EmptyTryBlock
+    try (SessionFactory ignore =
+        createTestHibernateConfig(
+            ImmutableList.of(Singer.class, Invoice.class, Customer.class, Account.class),
+            ImmutableMap.of("hibernate.hbm2ddl.auto", "create-only"))
+            .buildSessionFactory()) {
+      // do nothing, just generate the schema.
+    }
+    List<String> statements =
+        mockDatabaseAdmin.getRequests().stream()
+            .filter(request -> request instanceof UpdateDatabaseDdlRequest)
+            .map(request -> (UpdateDatabaseDdlRequest) request)
+            .findFirst()
+            .orElseThrow(IllegalStateException::new)
+            .getStatementsList();
+
+    // Return the metadata of the operation when the schema is generated with a listener.
+    long startSeconds = Instant.now().getEpochSecond();
+    UpdateDatabaseDdlMetadata.Builder metadata =
+        UpdateDatabaseDdlMetadata.newBuilder()
+            .setDatabase("projects/my-project/instances/my-instance/databases/my-database")
+            .addAllStatements(statements);
+    for (int i = 0; i < statements.size(); i++) {
+      metadata.addProgress(
+          OperationProgress.newBuilder()
+              .setProgressPercent(100)
+              .setStartTime(Timestamp.newBuilder().setSeconds(startSeconds + i))
+              .setEndTime(Timestamp.newBuilder().setSeconds(startSeconds + i + 1)));
+      metadata.addCommitTimestamps(Timestamp.newBuilder().setSeconds(startSeconds + i + 1));
+    }
+    mockDatabaseAdmin.getRequests().clear();
+    addDdlResponseToSpannerAdmin();
+    mockDatabaseAdmin.addResponse(
+        ListDatabaseOperationsResponse.newBuilder()
+            .addOperations(
+                Operation.newBuilder()
+                    .setName("projects/my-project/instances/my-instance/databases/my-database"
+                        + "/operations/1")
+                    .setDone(true)
+                    .setResponse(Any.pack(Empty.getDefaultInstance()))
+                    .setMetadata(Any.pack(metadata.build())))
+            .build());
+    RecordingDdlOperationListener.OPERATIONS.clear();
+    RecordingDdlOperationListener.STATEMENTS.clear();
+
+    //noinspection EmptyTryBlock
+    try (SessionFactory ignore =
+        createTestHibernateConfig(
+            ImmutableList.of(Singer.class, Invoice.class, Customer.class, Account.class),
+            ImmutableMap.of(
+                "hibernate.hbm2ddl.auto", "create-only",
+                SpannerSchemaManagementTool.DDL_OPERATION_LISTENER,
+                RecordingDdlOperationListener.class.getName()))
+            .buildSessionFactory()) {
+      // do nothing, just generate the schema.
+    }
+
+    List<ListDatabaseOperationsRequest> listRequests =
+        mockDatabaseAdmin.getRequests().stream()
+            .filter(request -> request instanceof ListDatabaseOperationsRequest)
+            .map(request -> (ListDatabaseOperationsRequest) request)
+            .collect(Collectors.toList());
+    assertEquals(1, listRequests.size());
+    assertEquals("projects/my-project/instances/my-instance", listRequests.get(0).getParent());
+
+    // Each statement is reported when it has been committed.
+    assertEquals(statements.size(), RecordingDdlOperationListener.STATEMENTS.size());
+    for (int i = 0; i < statements.size(); i++) {
+      SpannerDdlStatementProgress progress = RecordingDdlOperationListener.STATEMENTS.get(i);
+      assertEquals(i, progress.getIndex());
+      assertEquals(statements.get(i), progress.getStatement());
+      assertTrue(progress.isCompleted());
+      assertEquals(100, progress.getProgressPercentage());
+      assertEquals(
+          Instant.ofEpochSecond(startSeconds + i + 1), progress.getCommitTimestamp());
+    }
+    assertEquals(1, RecordingDdlOperationListener.OPERATIONS.size());
+    SpannerDdlOperation operation = RecordingDdlOperationListener.OPERATIONS.get(0);
+    assertEquals(statements.size(), operation.getStatementProgress().size());
+    assertNotNull(operation.getStatementProgress().get(0).getStartTime());
+    assertEquals(
+        Instant.ofEpochSecond(startSeconds + 1),
+        operation.getStatementProgress().get(0).getEndTime());
+  }
+
+  @Test
+  public void testDmlAfterDdlBatchIsBatched() {
+    addDdlResponseToSpannerAdmin();
+    mockSpanner.putStatementResult(
+        StatementResult.update(
+            Statement.of("insert into singerId (next_val) values ( 50000 )"), 1L));
+    for (long id = 1L; id <= 3L; id++) {
+      mockSpanner.putStatementResult(
+          StatementResult.update(Statement.of("insert into Singer (id) values (" + id + ")"), 1L));
+    }
+
+    //noinspection EmptyTryBlock
+    try (SessionFactory ignore =
+        createTestHibernateConfig(
+            ImmutableList.of(Singer.class),
+            ImmutableMap.of(
+                "hibernate.hbm2ddl.auto", "create-only",
+                "hibernate.hbm2ddl.import_files", "/import-singers.sql"))
+            .buildSessionFactory()) {
+      // do nothing, just generate the schema.
+    }
+
+    // The initial value of the table-backed sequence and the statements in the import file should
+    // all be executed as one DML batch in one transaction.
+    assertEquals(1, mockSpanner.countRequestsOfType(ExecuteBatchDmlRequest.class));
+    ExecuteBatchDmlRequest request =
+        mockSpanner.getRequestsOfType(ExecuteBatchDmlRequest.class).get(0);
+    assertEquals(4, request.getStatementsCount());
+    assertEquals(
+        "insert into singerId (next_val) values ( 50000 )", request.getStatements(0).getSql());
+    assertEquals("insert into Singer (id) values (1)", request.getStatements(1).getSql());
+    assertEquals("insert into Singer (id) values (2)", request.getStatements(2).getSql());
+    assertEquals("insert into Singer (id) values (3)", request.getStatements(3).getSql());
+    assertEquals(1, mockSpanner.countRequestsOfType(CommitRequest.class));
+  }
+
+  /** {@link SpannerDdlOperationListener} that records all operations in a static list. */
+  public static class RecordingDdlOperationListener implements SpannerDdlOperationListener {
+    static final List<SpannerDdlOperation> OPERATIONS = new CopyOnWriteArrayList<>();
+
+    static final List<SpannerDdlStatementProgress> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void onDdlStatementProgress(SpannerDdlStatementProgress progress) {
+      STATEMENTS.add(progress);
+    }
+
+    @Override
+    public void onDdlOperationFinished(SpannerDdlOperation operation) {
+      OPERATIONS.add(operation);
+    }
+  }
 }
@@ -56,6 +56,12 @@ public class SpannerDialectTests {
 
   /* DDL-related function tests */
 
+  @Test
+  public void generatedAsTest() {
+    assertThat(this.spannerDialect.generatedAs("LOWER(email)"))
+        .isEqualTo(" as (LOWER(email)) stored");
+  }
+
   @Test
   public void canCreateCatalogTest() {
     assertThat(this.spannerDialect.canCreateCatalog()).isFalse();
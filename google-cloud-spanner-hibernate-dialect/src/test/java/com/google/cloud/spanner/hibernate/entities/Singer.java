@@ -24,6 +24,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.NamedQuery;
 import org.hibernate.annotations.Check;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Parameter;
@@ -32,6 +33,7 @@ import org.hibernate.id.enhanced.SequenceStyleGenerator;
 /** Test entity using a bit-reversed sequence generator for ID generation. */
 @Entity
 @Check(constraints = "first_name is not null or last_name is not null")
+@NamedQuery(name = "Singer.findById", query = "from Singer where id = :id")
 public class Singer {
   
   @Id
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate.entities;
+
+import com.google.cloud.spanner.hibernate.Interleaved;
+import com.google.cloud.spanner.hibernate.SpannerIndex;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import java.io.Serializable;
+
+/**
+ * Hibernate entity used in tests for Cloud Spanner specific index options.
+ */
+@Entity
+@Table(
+    indexes = {
+        @Index(name = "idx_track_title", columnList = "grandParentId, parentId, title"),
+        @Index(name = "idx_track_duration", columnList = "duration")
+    },
+    uniqueConstraints = @UniqueConstraint(name = "uq_track_code", columnNames = "code"))
+@Interleaved(parentEntity = Parent.class)
+@SpannerIndex(
+    name = "idx_track_title",
+    storing = {"duration", "code"},
+    nullFiltered = true,
+    interleaveIn = Parent.class)
+@SpannerIndex(name = "uq_track_code", nullFiltered = true)
+public class Track {
+
+  @EmbeddedId
+  public TrackId trackId;
+
+  public String title;
+
+  public Long duration;
+
+  public String code;
+
+  /**
+   * Embedded ID containing the interleaved parents' fields.
+   */
+  @Embeddable
+  public static class TrackId implements Serializable {
+
+    public long grandParentId;
+
+    public long parentId;
+
+    public long trackId;
+  }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright 2019-2023 Google LLC
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.google.cloud.spanner.hibernate.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.spanner.SpannerException;
+import com.google.cloud.spanner.hibernate.schema.SpannerSchemaManagementTool.SpannerDdlTransactionIsolator;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.resource.transaction.spi.DdlTransactionIsolator;
+import org.hibernate.tool.schema.internal.ExceptionHandlerCollectingImpl;
+import org.hibernate.tool.schema.internal.ExceptionHandlerHaltImpl;
+import org.hibernate.tool.schema.internal.ExceptionHandlerLoggedImpl;
+import org.hibernate.tool.schema.spi.SchemaManagementException;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+/** Tests for {@link SpannerDdlTransactionIsolator}. */
+public class SpannerDdlTransactionIsolatorTest {
+
+  @Test
+  public void testIsBatchControlStatement() {
+    assertTrue(SpannerDdlStatement.isBatchControlStatement("START BATCH DDL"));
+    assertTrue(SpannerDdlStatement.isBatchControlStatement("start batch ddl"));
+    assertTrue(SpannerDdlStatement.isBatchControlStatement("  Start  Batch\nDDL ;"));
+    assertTrue(SpannerDdlStatement.isBatchControlStatement("RUN BATCH"));
+    assertTrue(SpannerDdlStatement.isBatchControlStatement("run batch;"));
+    assertTrue(SpannerDdlStatement.isBatchControlStatement("\trun\tbatch\n"));
+
+    assertFalse(SpannerDdlStatement.isBatchControlStatement(null));
+    assertFalse(SpannerDdlStatement.isBatchControlStatement(""));
+    assertFalse(SpannerDdlStatement.isBatchControlStatement("START BATCH DML"));
+    assertFalse(SpannerDdlStatement.isBatchControlStatement("START BATCH DDLX"));
+    assertFalse(SpannerDdlStatement.isBatchControlStatement("START BATCH"));
+    assertFalse(SpannerDdlStatement.isBatchControlStatement("RUN BATCH foo"));
+    assertFalse(SpannerDdlStatement.isBatchControlStatement("RUNBATCH"));
+    assertFalse(SpannerDdlStatement.isBatchControlStatement("ABORT BATCH"));
+    assertFalse(
+        SpannerDdlStatement.isBatchControlStatement(
+            "create table Singer (id int64 not null) PRIMARY KEY (id)"));
+    assertFalse(SpannerDdlStatement.isBatchControlStatement("select 1"));
+  }
+
+  @Test
+  public void testBatchControlStatementErrorIsConverted() throws SQLException {
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.execute("RUN BATCH")).thenThrow(new SQLException("test"));
+    when(statement.execute("create index foo on bar (baz)")).thenThrow(new SQLException("test"));
+
+    Connection ddlConnection = createIsolator(connection).getIsolatedConnection();
+    Statement ddlStatement = ddlConnection.createStatement();
+
+    assertThrows(SpannerException.class, () -> ddlStatement.execute("RUN BATCH"));
+    assertThrows(SQLException.class, () -> ddlStatement.execute("create index foo on bar (baz)"));
+    assertSame(ddlConnection, ddlStatement.getConnection());
+  }
+
+  @Test
+  public void testCloseIsIgnored() throws SQLException {
+    Connection connection = mock(Connection.class);
+    DdlTransactionIsolator delegate = mock(DdlTransactionIsolator.class);
+    when(delegate.getIsolatedConnection(true)).thenReturn(connection);
+    SpannerDdlTransactionIsolator isolator =
+        new SpannerDdlTransactionIsolator(delegate, null, ExceptionHandlerLoggedImpl.INSTANCE);
+
+    isolator.getIsolatedConnection().close();
+    verify(connection, never()).close();
+
+    isolator.release();
+    verify(delegate).release();
+  }
+
+  @Test
+  public void testLargeSchema() throws SQLException {
+    // Runs a 5,000 statement schema migration through the isolator. All statements should be passed
+    // through to the underlying statement, without any additional calls on the connection. This is
+    // a functional check, and does not measure the time that the isolator adds per statement.
+    int numStatements = 5000;
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.execute(anyString())).thenReturn(false);
+
+    Connection ddlConnection = createIsolator(connection).getIsolatedConnection();
+    try (Statement ddlStatement = ddlConnection.createStatement()) {
+      ddlStatement.execute("START BATCH DDL");
+      for (int i = 0; i < numStatements; i++) {
+        ddlStatement.execute(
+            String.format(
+                "create table Table%d (id int64 not null,name string(255)) PRIMARY KEY (id)", i));
+      }
+      ddlStatement.execute("RUN BATCH");
+    }
+    verify(statement, times(numStatements + 2)).execute(anyString());
+    assertEquals(1, mockingDetails(connection).getInvocations().size());
+  }
+
+  @Test
+  public void testDdlOperationListener() throws SQLException {
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(statement);
+    List<SpannerDdlOperation> operations = new ArrayList<>();
+    SpannerDdlOperationListener listener = operations::add;
+
+    Connection ddlConnection = createIsolator(connection, listener).getIsolatedConnection();
+    try (Statement ddlStatement = ddlConnection.createStatement()) {
+      ddlStatement.execute("START BATCH DDL");
+      ddlStatement.execute("create table Foo (id int64) PRIMARY KEY (id)");
+      ddlStatement.execute("create index idx_foo on Foo (id)");
+      ddlStatement.execute("RUN BATCH");
+      // Statements outside a batch are not reported.
+      ddlStatement.execute("drop index idx_foo");
+    }
+
+    assertEquals(1, operations.size());
+    SpannerDdlOperation operation = operations.get(0);
+    assertTrue(operation.isSuccessful());
+    assertEquals(
+        Arrays.asList(
+            "create table Foo (id int64) PRIMARY KEY (id)", "create index idx_foo on Foo (id)"),
+        operation.getStatements());
+    assertEquals(2, operation.getCompletedStatementCount());
+    assertEquals(100, operation.getProgressPercentage());
+    assertFalse(operation.getEndTime().isBefore(operation.getStartTime()));
+  }
+
+  @Test
+  public void testDdlOperationListener_failedBatch() throws SQLException {
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.execute("RUN BATCH"))
+        .thenThrow(new BatchUpdateException("test", new int[] {0}));
+    List<SpannerDdlOperation> operations = new ArrayList<>();
+    SpannerDdlOperationListener listener = operations::add;
+
+    Connection ddlConnection = createIsolator(connection, listener).getIsolatedConnection();
+    try (Statement ddlStatement = ddlConnection.createStatement()) {
+      ddlStatement.execute("START BATCH DDL");
+      ddlStatement.execute("create table Foo (id int64) PRIMARY KEY (id)");
+      ddlStatement.execute("create index idx_foo on Foo (id)");
+      assertThrows(SpannerException.class, () -> ddlStatement.execute("RUN BATCH"));
+    }
+
+    assertEquals(1, operations.size());
+    SpannerDdlOperation operation = operations.get(0);
+    assertFalse(operation.isSuccessful());
+    assertEquals(1, operation.getCompletedStatementCount());
+    assertTrue(operation.isStatementCompleted(0));
+    assertFalse(operation.isStatementCompleted(1));
+    assertEquals(50, operation.getProgressPercentage());
+  }
+
+  @Test
+  public void testDdlStatementProgress() throws SQLException {
+    List<String> statements =
+        Arrays.asList(
+            "create table Foo (id int64) PRIMARY KEY (id)", "create index idx_foo on Foo (id)");
+    Instant startTime = Instant.now();
+    SpannerDdlOperationMonitor monitor = mock(SpannerDdlOperationMonitor.class);
+    when(monitor.getProgress(eq(statements), any(Instant.class)))
+        .thenReturn(
+            Arrays.asList(
+                new SpannerDdlStatementProgress(
+                    statements.get(0), 0, 100, startTime, startTime, startTime),
+                new SpannerDdlStatementProgress(statements.get(1), 1, 40, startTime, null, null)))
+        .thenReturn(
+            Arrays.asList(
+                new SpannerDdlStatementProgress(
+                    statements.get(0), 0, 100, startTime, startTime, startTime),
+                new SpannerDdlStatementProgress(
+                    statements.get(1), 1, 100, startTime, startTime, startTime)));
+    List<SpannerDdlStatementProgress> reported = new CopyOnWriteArrayList<>();
+    CountDownLatch running = new CountDownLatch(1);
+    SpannerDdlOperationListener listener =
+        new SpannerDdlOperationListener() {
+          @Override
+          public void onDdlStatementProgress(SpannerDdlStatementProgress progress) {
+            reported.add(progress);
+            if (!progress.isCompleted()) {
+              running.countDown();
+            }
+          }
+
+          @Override
+          public void onDdlOperationFinished(SpannerDdlOperation operation) {}
+        };
+    SpannerDdlOperationTracker tracker =
+        new SpannerDdlOperationTracker(listener, connection -> monitor, Duration.ofMillis(10L));
+
+    tracker.batchStarted();
+    statements.forEach(tracker::statementExecuted);
+    // The progress of the running operation is reported before `RUN BATCH` returns.
+    assertTrue(
+        tracker.runBatch(
+            mock(Connection.class),
+            () -> {
+              try {
+                return running.await(30L, TimeUnit.SECONDS);
+              } catch (InterruptedException exception) {
+                throw new SQLException(exception);
+              }
+            }));
+    tracker.close();
+
+    assertEquals(3, reported.size());
+    assertTrue(reported.get(0).isCompleted());
+    assertEquals(0, reported.get(0).getIndex());
+    assertFalse(reported.get(1).isCompleted());
+    assertEquals(40, reported.get(1).getProgressPercentage());
+    assertTrue(reported.get(2).isCompleted());
+    assertEquals(1, reported.get(2).getIndex());
+    verify(monitor).close();
+  }
+
+  @Test
+  public void testDmlAfterDdlBatchIsBatched() throws SQLException {
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(statement);
+    DdlTransactionIsolator delegate = mock(DdlTransactionIsolator.class);
+    when(delegate.getIsolatedConnection(true)).thenReturn(connection);
+    when(delegate.getIsolatedConnection()).thenReturn(connection);
+    SpannerDdlTransactionIsolator isolator =
+        new SpannerDdlTransactionIsolator(delegate, null, ExceptionHandlerLoggedImpl.INSTANCE);
+
+    try (Statement ddlStatement = isolator.getIsolatedConnection().createStatement()) {
+      // DML statements before a DDL batch are not batched.
+      ddlStatement.execute("delete from Foo where true");
+      ddlStatement.execute("START BATCH DDL");
+      ddlStatement.execute("create table Foo (id int64) PRIMARY KEY (id)");
+      ddlStatement.execute("RUN BATCH");
+      ddlStatement.execute("insert into Foo (id) values (1)");
+      ddlStatement.execute("insert into Foo (id) values (2)");
+    }
+    isolator.release();
+
+    InOrder inOrder = inOrder(statement, delegate);
+    inOrder.verify(statement).execute("delete from Foo where true");
+    inOrder.verify(statement).execute("START BATCH DDL");
+    inOrder.verify(statement).execute("create table Foo (id int64) PRIMARY KEY (id)");
+    inOrder.verify(statement).execute("RUN BATCH");
+    inOrder.verify(statement).execute("START BATCH DML");
+    inOrder.verify(statement).execute("insert into Foo (id) values (1)");
+    inOrder.verify(statement).execute("insert into Foo (id) values (2)");
+    inOrder.verify(statement).execute("RUN BATCH");
+    inOrder.verify(delegate).release();
+  }
+
+  @Test
+  public void testDmlBatchIsExecutedBeforeOtherStatements() throws SQLException {
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(statement);
+
+    SpannerDdlTransactionIsolator isolator = createIsolator(connection);
+    try (Statement ddlStatement = isolator.getIsolatedConnection().createStatement()) {
+      ddlStatement.execute("START BATCH DDL");
+      ddlStatement.execute("create table Foo (id int64) PRIMARY KEY (id)");
+      ddlStatement.execute("RUN BATCH");
+      ddlStatement.execute("insert into Foo (id) values (1)");
+      ddlStatement.execute("create index idx_foo on Foo (id)");
+    }
+    isolator.release();
+
+    InOrder inOrder = inOrder(statement);
+    inOrder.verify(statement).execute("START BATCH DML");
+    inOrder.verify(statement).execute("insert into Foo (id) values (1)");
+    inOrder.verify(statement).execute("RUN BATCH");
+    inOrder.verify(statement).execute("create index idx_foo on Foo (id)");
+    verify(statement, times(1)).execute("START BATCH DML");
+  }
+
+  @Test
+  public void testIsBatchable() {
+    SpannerDmlBatch dmlBatch = new SpannerDmlBatch(ExceptionHandlerLoggedImpl.INSTANCE);
+    assertFalse(dmlBatch.isBatchable("insert into Foo (id) values (1)"));
+
+    dmlBatch.ddlBatchCompleted();
+    assertTrue(dmlBatch.isBatchable("insert into Foo (id) values (1)"));
+    assertTrue(dmlBatch.isBatchable("  UPDATE Foo set id=2 where id=1"));
+    assertTrue(dmlBatch.isBatchable("\ndelete\nfrom Foo where true"));
+    assertFalse(dmlBatch.isBatchable("create table Foo (id int64) PRIMARY KEY (id)"));
+    assertFalse(dmlBatch.isBatchable("select * from Foo"));
+    assertFalse(dmlBatch.isBatchable("inserted"));
+    assertFalse(dmlBatch.isBatchable(null));
+  }
+
+  @Test
+  public void testFailedDmlBatchBeforeOtherStatement() throws SQLException {
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.execute("RUN BATCH"))
+        .thenReturn(false)
+        .thenThrow(new BatchUpdateException("test", new int[0]));
+    DdlTransactionIsolator delegate = mock(DdlTransactionIsolator.class);
+    when(delegate.getIsolatedConnection(true)).thenReturn(connection);
+    ExceptionHandlerCollectingImpl exceptionHandler = new ExceptionHandlerCollectingImpl();
+    SpannerDdlTransactionIsolator isolator =
+        new SpannerDdlTransactionIsolator(delegate, null, exceptionHandler);
+
+    try (Statement ddlStatement = isolator.getIsolatedConnection().createStatement()) {
+      ddlStatement.execute("START BATCH DDL");
+      ddlStatement.execute("create table Foo (id int64) PRIMARY KEY (id)");
+      ddlStatement.execute("RUN BATCH");
+      ddlStatement.execute("insert into Foo (id) values (1)");
+      // The failed DML batch is reported separately, and does not prevent the DDL statement from
+      // being executed.
+      ddlStatement.execute("create index idx_foo on Foo (id)");
+    }
+    verify(statement).execute("create index idx_foo on Foo (id)");
+    assertEquals(1, exceptionHandler.getExceptions().size());
+    String message = exceptionHandler.getExceptions().get(0).getMessage();
+    assertTrue(message, message.contains("insert into Foo (id) values (1)"));
+    assertFalse(message, message.contains("create index"));
+  }
+
+  @Test
+  public void testFailedDmlBatchBeforeOtherStatement_haltOnError() throws SQLException {
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.execute("RUN BATCH"))
+        .thenReturn(false)
+        .thenThrow(new BatchUpdateException("test", new int[0]));
+    DdlTransactionIsolator delegate = mock(DdlTransactionIsolator.class);
+    when(delegate.getIsolatedConnection(true)).thenReturn(connection);
+    SpannerDdlTransactionIsolator isolator =
+        new SpannerDdlTransactionIsolator(delegate, null, ExceptionHandlerHaltImpl.INSTANCE);
+
+    try (Statement ddlStatement = isolator.getIsolatedConnection().createStatement()) {
+      ddlStatement.execute("START BATCH DDL");
+      ddlStatement.execute("create table Foo (id int64) PRIMARY KEY (id)");
+      ddlStatement.execute("RUN BATCH");
+      ddlStatement.execute("insert into Foo (id) values (1)");
+      SchemaManagementException exception = assertThrows(
+          SchemaManagementException.class,
+          () -> ddlStatement.execute("create index idx_foo on Foo (id)"));
+      assertTrue(exception.getMessage(), exception.getMessage().contains(
+          "insert into Foo (id) values (1)"));
+    }
+    verify(statement).execute("create index idx_foo on Foo (id)");
+  }
+
+  @Test
+  public void testFailedDmlBatchOnRelease() throws SQLException {
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.execute("RUN BATCH"))
+        .thenReturn(false)
+        .thenThrow(new BatchUpdateException("test", new int[0]));
+    DdlTransactionIsolator delegate = mock(DdlTransactionIsolator.class);
+    when(delegate.getIsolatedConnection(true)).thenReturn(connection);
+    when(delegate.getIsolatedConnection()).thenReturn(connection);
+    ExceptionHandlerCollectingImpl exceptionHandler = new ExceptionHandlerCollectingImpl();
+    SpannerDdlTransactionIsolator isolator =
+        new SpannerDdlTransactionIsolator(delegate, null, exceptionHandler);
+
+    try (Statement ddlStatement = isolator.getIsolatedConnection().createStatement()) {
+      ddlStatement.execute("START BATCH DDL");
+      ddlStatement.execute("create table Foo (id int64) PRIMARY KEY (id)");
+      ddlStatement.execute("RUN BATCH");
+      ddlStatement.execute("insert into Foo (id) values (1)");
+    }
+    // The failure is only logged if halt_on_error is not enabled.
+    isolator.release();
+    assertEquals(1, exceptionHandler.getExceptions().size());
+    String message = exceptionHandler.getExceptions().get(0).getMessage();
+    assertTrue(message, message.contains("insert into Foo (id) values (1)"));
+    verify(delegate).release();
+  }
+
+  @Test
+  public void testFailedDmlBatchOnRelease_haltOnError() throws SQLException {
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.execute("RUN BATCH"))
+        .thenReturn(false)
+        .thenThrow(new BatchUpdateException("test", new int[0]));
+    DdlTransactionIsolator delegate = mock(DdlTransactionIsolator.class);
+    when(delegate.getIsolatedConnection(true)).thenReturn(connection);
+    when(delegate.getIsolatedConnection()).thenReturn(connection);
+    SpannerDdlTransactionIsolator isolator =
+        new SpannerDdlTransactionIsolator(delegate, null, ExceptionHandlerHaltImpl.INSTANCE);
+
+    try (Statement ddlStatement = isolator.getIsolatedConnection().createStatement()) {
+      ddlStatement.execute("START BATCH DDL");
+      ddlStatement.execute("create table Foo (id int64) PRIMARY KEY (id)");
+      ddlStatement.execute("RUN BATCH");
+      ddlStatement.execute("insert into Foo (id) values (1)");
+    }
+    assertThrows(SchemaManagementException.class, isolator::release);
+    verify(delegate).release();
+  }
+
+  private static SpannerDdlTransactionIsolator createIsolator(Connection connection) {
+    return createIsolator(connection, null);
+  }
+
+  private static SpannerDdlTransactionIsolator createIsolator(
+      Connection connection, SpannerDdlOperationListener listener) {
+    DdlTransactionIsolator delegate = mock(DdlTransactionIsolator.class);
+    when(delegate.getIsolatedConnection(true)).thenReturn(connection);
+    return new SpannerDdlTransactionIsolator(
+        delegate, listener, ExceptionHandlerLoggedImpl.INSTANCE);
+  }
+}
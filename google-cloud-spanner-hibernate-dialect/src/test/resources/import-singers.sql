@@ -0,0 +1,3 @@
+insert into Singer (id) values (1)
+insert into Singer (id) values (2)
+insert into Singer (id) values (3)
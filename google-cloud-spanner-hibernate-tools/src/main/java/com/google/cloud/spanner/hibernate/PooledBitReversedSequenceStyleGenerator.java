@@ -33,6 +33,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -60,6 +61,7 @@ import org.hibernate.id.enhanced.Optimizer;
 import org.hibernate.id.enhanced.SequenceStructure;
 import org.hibernate.id.enhanced.SequenceStyleGenerator;
 import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.resource.jdbc.spi.LogicalConnectionImplementor;
 import org.hibernate.service.ServiceRegistry;
 import org.hibernate.type.Type;
 
@@ -77,6 +79,11 @@ import org.hibernate.type.Type;
  * the generator if your entity table already contains data. The excluded values should be given as
  * closed range. E.g. "[1,1000]" to skip all values between 1 and 1000 (inclusive).
  *
+ * <p>New sequence values are fetched with a separate connection. Use the {@link
+ * #RPC_PRIORITY_PARAM} to set the RPC priority of these requests. The generator otherwise uses the
+ * RPC priority of the connection of the session that requests the values, so the sequence values
+ * of a low-priority batch job are also fetched with low priority.
+ *
  * <p>It is recommended to use a separate sequence for each entity. Set the sequence name to use
  * for a generator with the SequenceStyleGenerator.SEQUENCE_PARAM parameter (see example below).
  *
@@ -112,6 +119,12 @@ public class PooledBitReversedSequenceStyleGenerator implements
    */
   public static final String EXCLUDE_RANGE_PARAM = "exclude_range";
 
+  /**
+   * Configuration property for the RPC priority ({@code HIGH}, {@code MEDIUM} or {@code LOW}) that
+   * is used to fetch new sequence values.
+   */
+  public static final String RPC_PRIORITY_PARAM = "rpc_priority";
+
   /**
    * Legacy parameter name.
    */
@@ -122,6 +135,8 @@ public class PooledBitReversedSequenceStyleGenerator implements
    * will be lifted in the future.
    */
   private static final int POSTGRES_MAX_INCREMENT_SIZE = 1000;
+  private static final List<String> RPC_PRIORITIES = ImmutableList.of("HIGH", "MEDIUM", "LOW");
+  private static final String UNSPECIFIED_RPC_PRIORITY = "NULL";
   private static final Iterator<Long> EMPTY_ITERATOR = Collections.emptyIterator();
   private final Lock lock = new ReentrantLock();
   private final Optimizer optimizer = new NoopOptimizer(Long.class, 1);
@@ -130,6 +145,7 @@ public class PooledBitReversedSequenceStyleGenerator implements
   private QualifiedSequenceName sequenceName;
   private String select;
   private int fetchSize;
+  private String rpcPriority;
   private Iterator<Long> identifiers = EMPTY_ITERATOR;
   private DatabaseStructure databaseStructure;
 
@@ -248,6 +264,7 @@ public class PooledBitReversedSequenceStyleGenerator implements
     this.dialect = jdbcEnvironment.getDialect();
     this.sequenceName = determineSequenceName(jdbcEnvironment, params);
     this.fetchSize = determineFetchSize(params);
+    this.rpcPriority = determineRpcPriority(params);
     int initialValue = determineInitialValue(params);
     this.select = buildSelect(sequenceName, fetchSize);
     List<Range<Long>> excludeRanges = parseExcludedRanges(sequenceName.getObjectName().getText(),
@@ -278,6 +295,18 @@ public class PooledBitReversedSequenceStyleGenerator implements
     return fetchSize;
   }
 
+  private static String determineRpcPriority(Properties params) {
+    String rpcPriority = ConfigurationHelper.getString(RPC_PRIORITY_PARAM, params);
+    if (rpcPriority == null) {
+      return null;
+    }
+    rpcPriority = rpcPriority.trim().toUpperCase(Locale.ENGLISH);
+    if (!RPC_PRIORITIES.contains(rpcPriority)) {
+      throw new MappingException("rpc priority must be one of " + RPC_PRIORITIES);
+    }
+    return rpcPriority;
+  }
+
   private int getMaxIncrementSize() {
     return isPostgres() ? POSTGRES_MAX_INCREMENT_SIZE : Integer.MAX_VALUE;
   }
@@ -380,8 +409,10 @@ public class PooledBitReversedSequenceStyleGenerator implements
     // Prefix all 'set ...' statements with 'spanner.' if the dialect is PostgreSQL.
     // The safest way to determine that is by looking at the quote character for identifiers.
     String extensionPrefix = dialect.openQuote() == '"' ? "spanner." : "";
+    String rpcPriority = resolveRpcPriority(session);
     Connection connection = null;
     Boolean retryAbortsInternally = null;
+    String previousRpcPriority = null;
     try {
       // Use a separate connection to get new sequence values. This ensures that it also uses a
       // separate read/write transaction, which again means that it will not interfere with any
@@ -394,6 +425,12 @@ public class PooledBitReversedSequenceStyleGenerator implements
         retryAbortsInternally = isRetryAbortsInternally(statement);
         connection.commit();
         statement.execute(String.format("set %sretry_aborts_internally=false", extensionPrefix));
+        if (rpcPriority != null) {
+          String currentRpcPriority = getRpcPriority(statement);
+          previousRpcPriority =
+              currentRpcPriority == null ? UNSPECIFIED_RPC_PRIORITY : currentRpcPriority;
+          setRpcPriority(statement, rpcPriority);
+        }
         List<Long> identifiers = new ArrayList<>(this.fetchSize);
         try (ResultSet resultSet = statement.executeQuery(this.select)) {
           while (resultSet.next()) {
@@ -431,6 +468,15 @@ public class PooledBitReversedSequenceStyleGenerator implements
                               finalRetryAbortsInternally)));
           ignoreSqlException(connection::commit);
         }
+        if (previousRpcPriority != null) {
+          String finalPreviousRpcPriority = previousRpcPriority;
+          ignoreSqlException(
+              () -> {
+                try (Statement statement = finalConnection.createStatement()) {
+                  setRpcPriority(statement, finalPreviousRpcPriority);
+                }
+              });
+        }
         ignoreSqlException(
             () -> session.getJdbcConnectionAccess().releaseConnection(finalConnection));
       }
@@ -450,6 +496,51 @@ public class PooledBitReversedSequenceStyleGenerator implements
     }
   }
 
+  /**
+   * Returns the RPC priority that should be used to fetch new sequence values. This is either the
+   * configured priority of the generator, or the priority of the connection of the session if the
+   * session currently holds a connection.
+   */
+  private String resolveRpcPriority(SharedSessionContractImplementor session) {
+    if (this.rpcPriority != null) {
+      return this.rpcPriority;
+    }
+    LogicalConnectionImplementor logicalConnection =
+        session.getJdbcCoordinator().getLogicalConnection();
+    if (!logicalConnection.isPhysicallyConnected()) {
+      return null;
+    }
+    try (Statement statement = logicalConnection.getPhysicalConnection().createStatement()) {
+      return getRpcPriority(statement);
+    } catch (SQLException ignore) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the RPC priority of the connection of the given statement, or null if the connection
+   * has no RPC priority.
+   */
+  private String getRpcPriority(Statement statement) throws SQLException {
+    String prefix = dialect.openQuote() == '"' ? "spanner." : "variable ";
+    try (ResultSet resultSet = statement.executeQuery(
+        String.format("show %srpc_priority", prefix))) {
+      if (resultSet.next()) {
+        // The value is returned as PRIORITY_HIGH, PRIORITY_MEDIUM, PRIORITY_LOW or
+        // PRIORITY_UNSPECIFIED.
+        String value = resultSet.getString(1);
+        String priority = value == null ? null : value.substring(value.indexOf('_') + 1);
+        return RPC_PRIORITIES.contains(priority) ? priority : null;
+      }
+      return null;
+    }
+  }
+
+  private void setRpcPriority(Statement statement, String rpcPriority) throws SQLException {
+    String prefix = dialect.openQuote() == '"' ? "spanner." : "";
+    statement.execute(String.format("set %srpc_priority='%s'", prefix, rpcPriority));
+  }
+
   private boolean isAbortedError(SQLException exception) {
     // '40001' == serialization_failure
     if ("40001".equals(exception.getSQLState())) {